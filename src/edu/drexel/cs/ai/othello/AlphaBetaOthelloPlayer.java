@@ -0,0 +1,97 @@
+package edu.drexel.cs.ai.othello;
+
+import java.util.Date;
+
+/**
+ * An othello-playing agent that searches with iterative-deepening
+ * {@link AlphaBetaSearch alpha-beta}, pruned by ProbCut if {@link
+ * ProbCutParameters#setDefault(ProbCutParameters) default parameters}
+ * have been loaded (<i>e.g.</i> with the <code>-probcut</code> command
+ * line option).  Once few enough squares are empty, it tries to solve
+ * the rest of the game exactly with an {@link EndgameSolver}.
+ *
+ * <p>The search deepens until shortly before the deadline (or to a
+ * fixed depth if there is none), registering the best move of each
+ * completed depth.</p>
+ */
+public class AlphaBetaOthelloPlayer extends OthelloPlayer {
+	/**
+	 * The endgame is solved exactly from this many empty squares on.
+	 */
+	public static final int ENDGAME_EMPTIES = 16;
+	/* the search depth if there is no deadline (and no node budget) */
+	private static final int DEPTH_WITHOUT_DEADLINE = 8;
+	/* the endgame is only solved after a search of this depth has found a move */
+	private static final int ENDGAME_PRESEARCH_DEPTH = 4;
+	/* the search stops this long before the deadline */
+	private static final long SAFETY_MARGIN_MILLIS = 50;
+
+	private final AlphaBetaSearch search;
+	private final EndgameSolver solver;
+
+	/**
+	 * Creates a new agent that uses the default ProbCut parameters.
+	 */
+	public AlphaBetaOthelloPlayer(String name) {
+		this(name, ProbCutParameters.getDefault());
+	}
+
+	/**
+	 * Creates a new agent that prunes with <code>probCut</code> (or
+	 * does not prune, if it is <code>null</code>).
+	 */
+	public AlphaBetaOthelloPlayer(String name, ProbCutParameters probCut) {
+		super(name);
+		search = new AlphaBetaSearch(probCut);
+		solver = new EndgameSolver();
+	}
+
+	/**
+	 * Returns the best move found by the deepest search that finished
+	 * before the deadline, or the exact best move if the endgame was
+	 * solved.
+	 */
+	public Square getMove(GameState currentState, Date deadline) {
+		long valid = currentState.getValidMoveSquares(currentState.getCurrentPlayer());
+		if(Long.bitCount(valid) <= 1) {
+			int square = Long.numberOfTrailingZeros(valid);
+			return (valid == 0 ? null : new Square(square / 8, square % 8));
+		}
+
+		Date stop = null;
+		if(deadline != null)
+			stop = new Date(System.currentTimeMillis() + Math.max(1, getMillisUntilDeadline() - SAFETY_MARGIN_MILLIS));
+		boolean unlimited = (deadline == null && getNodeBudget() < 0);
+		search.setDeadline(stop);
+		solver.setDeadline(stop);
+		long searchNodes = search.getNodes();
+		long solverNodes = solver.getNodes();
+		long hits = search.getTranspositionHits();
+		Square move = null;
+		try {
+			int empties = currentState.getEmptyCount();
+			int maxDepth = (empties <= ENDGAME_EMPTIES ? ENDGAME_PRESEARCH_DEPTH : (unlimited ? DEPTH_WITHOUT_DEADLINE : empties));
+			for(int depth=1; depth<=maxDepth; depth++) {
+				int score = search.search(currentState, depth);
+				if(score == AlphaBetaSearch.UNKNOWN)
+					break;
+				move = search.getBestMove();
+				registerCurrentBestMove(move);
+				reportSearchDepth(depth);
+			}
+			if(empties <= ENDGAME_EMPTIES) {
+				int score = solver.solve(currentState);
+				if(score != EndgameSolver.UNKNOWN) {
+					move = solver.getBestMove();
+					registerCurrentBestMove(move);
+					reportSearchDepth(empties);
+					log("Solved the endgame: " + (score > 0 ? "win" : (score < 0 ? "loss" : "draw")) + " by " + Math.abs(score));
+				}
+			}
+		} finally {
+			countNodes(search.getNodes() - searchNodes + solver.getNodes() - solverNodes);
+			countTranspositionHits(search.getTranspositionHits() - hits);
+		}
+		return move;
+	}
+}
@@ -0,0 +1,350 @@
+package edu.drexel.cs.ai.othello;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * A depth-limited negamax alpha-beta search on bitboards, with a
+ * transposition table, {@link MoveOrdering move ordering} and optional
+ * (Multi-)ProbCut selective pruning.
+ * Positions at the depth limit are scored by a static evaluation in
+ * which one disc is worth {@link #DISC}; positions at the end of the
+ * game are scored exactly, as their final disc differential times
+ * {@link #DISC}.
+ *
+ * <p>With {@link ProbCutParameters}, a node of sufficient depth is
+ * first searched to a shallow depth with a null window around the
+ * value its fit predicts to be needed for a cut; if that shallow
+ * search confirms the cut, the deep search is skipped.  Calibrated
+ * parameters prune most of the hopeless lines early, which typically
+ * buys several plies of depth in the same time.</p>
+ *
+ * <p>A search is not thread-safe; the nodes it searches count toward
+ * the agent's {@link OthelloPlayer#getNodeBudget() node budget}.</p>
+ */
+public final class AlphaBetaSearch {
+	/**
+	 * Returned by {@link #search(GameState, int)} if the deadline
+	 * passed before the search finished.
+	 */
+	public static final int UNKNOWN = Integer.MIN_VALUE;
+	/**
+	 * The value of a one-disc advantage.
+	 */
+	public static final int DISC = 100;
+	/* above the value of any position */
+	private static final int INFINITY = 65 * DISC;
+	/* heuristic evaluations stay below the value of the largest win */
+	private static final int MAX_EVALUATION = 63 * DISC;
+	/* searches at least this deep are candidates for ProbCut */
+	private static final int MIN_PROBCUT_DEPTH = 3;
+	/* the deadline and the node budget are checked every so many nodes */
+	private static final int CHECK_INTERVAL = 1024;
+
+	private static final byte EXACT = 0;
+	private static final byte LOWER = 1;
+	private static final byte UPPER = 2;
+
+	private static final long CORNERS = 0x8100000000000081L;
+	/* the squares diagonally adjacent to each corner, and orthogonally adjacent to it, in the order of CORNER_SQUARES */
+	private static final int CORNER_SQUARES[] = {0, 7, 56, 63};
+	private static final long X_SQUARES[] = {1L << 9, 1L << 14, 1L << 49, 1L << 54};
+	private static final long C_SQUARES[] = {(1L << 1) | (1L << 8), (1L << 6) | (1L << 15), (1L << 48) | (1L << 57), (1L << 55) | (1L << 62)};
+
+	/* thrown (without a stack trace) to abandon the search when the deadline passes */
+	private static final class Timeout extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Timeout() {
+			super(null, null, false, false);
+		}
+	}
+	private static final Timeout TIMEOUT = new Timeout();
+
+	private ProbCutParameters probCut;
+	/* the transposition table, in parallel arrays; pairs of slots form a bucket */
+	private final long keys[];
+	private final short scores[];
+	private final byte depths[];
+	private final byte bounds[];
+	private final byte bestMoves[];
+	private final byte generations[];
+	private final int mask;
+	private byte generation;
+	private final MoveOrdering ordering;
+	private boolean inProbCut;
+	private long deadlineNanos;
+	private boolean hasDeadline;
+	private long nodes;
+	private long transpositionHits;
+	private long probCuts;
+	private int bestMove;
+
+	/**
+	 * Creates a search with a 16MB transposition table that prunes with
+	 * <code>probCut</code> (or does not prune, if it is
+	 * <code>null</code>).
+	 */
+	public AlphaBetaSearch(ProbCutParameters probCut) {
+		this(probCut, 16);
+	}
+
+	/**
+	 * Creates a search whose transposition table uses at most
+	 * <code>megabytes</code> megabytes of memory.
+	 */
+	public AlphaBetaSearch(ProbCutParameters probCut, int megabytes) {
+		this.probCut = probCut;
+		long slots = Math.max(2, ((long)megabytes << 20) / (8 + 2 + 1 + 1 + 1 + 1));
+		int capacity = Integer.highestOneBit((int)Math.min(slots, 1 << 30));
+		keys = new long[capacity];
+		scores = new short[capacity];
+		depths = new byte[capacity];
+		bounds = new byte[capacity];
+		bestMoves = new byte[capacity];
+		generations = new byte[capacity];
+		mask = capacity - 1;
+		generation = 1;
+		ordering = new MoveOrdering();
+		hasDeadline = false;
+		bestMove = -1;
+	}
+
+	/**
+	 * Sets the ProbCut parameters (or <code>null</code> to search
+	 * without ProbCut).
+	 */
+	public void setProbCut(ProbCutParameters probCut) {
+		this.probCut = probCut;
+	}
+
+	/**
+	 * Abandons any search that is still running at
+	 * <code>deadline</code> (or never, if it is <code>null</code>).
+	 */
+	public void setDeadline(Date deadline) {
+		hasDeadline = (deadline != null);
+		if(hasDeadline)
+			deadlineNanos = System.nanoTime() + (deadline.getTime() - System.currentTimeMillis()) * 1000000L;
+	}
+
+	/**
+	 * Forgets every position in the transposition table.
+	 */
+	public void clear() {
+		ordering.clear();
+		if(++generation == 0) {
+			/* the generations have wrapped around, so old entries could appear current */
+			Arrays.fill(generations, (byte)0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Returns the total number of nodes this search has visited.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the total number of nodes whose value was taken from the
+	 * transposition table.
+	 */
+	public long getTranspositionHits() {
+		return transpositionHits;
+	}
+
+	/**
+	 * Returns the total number of nodes cut by ProbCut.
+	 */
+	public long getProbCuts() {
+		return probCuts;
+	}
+
+	/**
+	 * Searches <code>state</code> to <code>depth</code> plies and
+	 * returns its value for the player to move, or {@link #UNKNOWN} if
+	 * the deadline passed first.  Searching the same position to
+	 * increasing depths (iterative deepening) is efficient, since each
+	 * search orders its moves by the results of the last.
+	 *
+	 * @throws NodeBudgetExceededError if the agent that is moving has exhausted its node budget.
+	 */
+	public int search(GameState state, int depth) {
+		GameState.Player player = state.getCurrentPlayer();
+		return search(state.getDiscs(player), state.getDiscs(state.getOpponent(player)), depth);
+	}
+
+	int search(long own, long opponent, int depth) {
+		bestMove = -1;
+		inProbCut = false;
+		ordering.age();
+		try {
+			return search(own, opponent, Math.max(1, depth), -INFINITY, INFINITY, 0);
+		} catch(Timeout t) {
+			bestMove = -1;
+			return UNKNOWN;
+		}
+	}
+
+	/**
+	 * Returns the best move found by the last {@link #search(GameState,
+	 * int)}, or <code>null</code> if the player to move had no valid
+	 * moves or the search did not finish.
+	 */
+	public Square getBestMove() {
+		return (bestMove < 0 ? null : new Square(bestMove / 8, bestMove % 8));
+	}
+
+	/**
+	 * Returns the static evaluation of <code>state</code> for the player
+	 * to move, based on mobility, potential mobility and the corners.
+	 */
+	public static int evaluate(GameState state) {
+		GameState.Player player = state.getCurrentPlayer();
+		return evaluate(state.getDiscs(player), state.getDiscs(state.getOpponent(player)));
+	}
+
+	static int evaluate(long own, long opponent) {
+		long empty = ~(own | opponent);
+		int score = 60 * (Long.bitCount(BitBoard.moves(own, opponent)) - Long.bitCount(BitBoard.moves(opponent, own)));
+		/* potential mobility: the empty squares next to the opponent's discs */
+		score += 20 * (Long.bitCount(BitBoard.neighbors(opponent) & empty) - Long.bitCount(BitBoard.neighbors(own) & empty));
+		score += 800 * (Long.bitCount(own & CORNERS) - Long.bitCount(opponent & CORNERS));
+		/* the squares next to an empty corner give it away */
+		for(int c=0; c<CORNER_SQUARES.length; c++) {
+			if((empty & (1L << CORNER_SQUARES[c])) == 0)
+				continue;
+			score -= 250 * (Long.bitCount(own & X_SQUARES[c]) - Long.bitCount(opponent & X_SQUARES[c]));
+			score -= 80 * (Long.bitCount(own & C_SQUARES[c]) - Long.bitCount(opponent & C_SQUARES[c]));
+		}
+		/* the discs themselves count as the end approaches */
+		int empties = Long.bitCount(empty);
+		if(empties < 20)
+			score += (20 - empties) * 5 * (Long.bitCount(own) - Long.bitCount(opponent));
+		return Math.max(-MAX_EVALUATION, Math.min(MAX_EVALUATION, score));
+	}
+
+	private static int finalScore(long own, long opponent) {
+		return (Long.bitCount(own) - Long.bitCount(opponent)) * DISC;
+	}
+
+	private void countNode() {
+		if((++nodes & (CHECK_INTERVAL - 1)) != 0)
+			return;
+		NodeBudget.charge(CHECK_INTERVAL);
+		if(hasDeadline && System.nanoTime() - deadlineNanos > 0)
+			throw TIMEOUT;
+	}
+
+	/* returns the slot holding the position with hash key, or -1 */
+	private int probe(long key) {
+		int slot = (int)key & mask;
+		if(keys[slot] == key && generations[slot] == generation)
+			return slot;
+		slot ^= 1;
+		if(keys[slot] == key && generations[slot] == generation)
+			return slot;
+		return -1;
+	}
+
+	private void store(long key, int depth, int score, byte bound, int move) {
+		int slot = (int)key & mask;
+		/* the first slot of a bucket keeps the deepest result, the second the latest */
+		if(keys[slot] != key && generations[slot] == generation && depths[slot] > depth)
+			slot ^= 1;
+		keys[slot] = key;
+		scores[slot] = (short)score;
+		depths[slot] = (byte)depth;
+		bounds[slot] = bound;
+		bestMoves[slot] = (byte)move;
+		generations[slot] = generation;
+	}
+
+	/* tries to prove that a search of depth would fail high or low with shallow null-window searches; returns the bound, or UNKNOWN */
+	private int probCut(long own, long opponent, int depth, int alpha, int beta, int ply) {
+		ProbCutParameters.Check checks[] = probCut.getChecks(ProbCutParameters.getPhase(64 - Long.bitCount(own | opponent)), depth);
+		if(checks.length == 0)
+			return UNKNOWN;
+		double t = probCut.getThreshold();
+		inProbCut = true;
+		try {
+			for(ProbCutParameters.Check check : checks) {
+				double a = check.getSlope();
+				double margin = t * check.getSigma();
+				int high = (int)Math.ceil((beta + margin - check.getIntercept()) / a);
+				if(high < INFINITY && search(own, opponent, check.getShallowDepth(), high - 1, high, ply) >= high)
+					return beta;
+				int low = (int)Math.floor((alpha - margin - check.getIntercept()) / a);
+				if(low > -INFINITY && search(own, opponent, check.getShallowDepth(), low, low + 1, ply) <= low)
+					return alpha;
+			}
+		} finally {
+			inProbCut = false;
+		}
+		return UNKNOWN;
+	}
+
+	/* fail-soft negamax with alpha-beta pruning */
+	private int search(long own, long opponent, int depth, int alpha, int beta, int ply) {
+		countNode();
+		long valid = BitBoard.moves(own, opponent);
+		if(valid == 0 && BitBoard.moves(opponent, own) == 0)
+			return finalScore(own, opponent);
+		if(depth <= 0)
+			return evaluate(own, opponent);
+		if(valid == 0)
+			return -search(opponent, own, depth, -beta, -alpha, ply + 1);
+
+		long key = BitBoard.hash(own, opponent);
+		int slot = probe(key);
+		int hashMove = -1;
+		if(slot >= 0) {
+			hashMove = bestMoves[slot];
+			if(ply > 0 && depths[slot] >= depth) {
+				int score = scores[slot];
+				byte bound = bounds[slot];
+				if(bound == EXACT || (bound == LOWER && score >= beta) || (bound == UPPER && score <= alpha)) {
+					transpositionHits++;
+					return score;
+				}
+			}
+		}
+
+		if(probCut != null && !inProbCut && ply > 0 && depth >= MIN_PROBCUT_DEPTH) {
+			int cut = probCut(own, opponent, depth, alpha, beta, ply);
+			if(cut != UNKNOWN) {
+				probCuts++;
+				return cut;
+			}
+		}
+
+		/* the opponent's mobility is only worth computing where the subtrees are large */
+		int count = ordering.order(own, opponent, ply, hashMove, depth >= 2);
+		int best = -INFINITY;
+		int bestSquare = -1;
+		int a = alpha;
+		for(int i=0; i<count; i++) {
+			int square = ordering.getSquare(ply, i);
+			long move = 1L << square;
+			long flips = BitBoard.flips(own, opponent, move);
+			int score = -search(opponent & ~flips, own | flips | move, depth - 1, -beta, -a, ply + 1);
+			if(score > best) {
+				best = score;
+				bestSquare = square;
+				if(score > a) {
+					a = score;
+					if(a >= beta) {
+						ordering.cutoff(ply, square, depth);
+						break;
+					}
+				}
+			}
+		}
+		if(ply == 0)
+			bestMove = bestSquare;
+		store(key, depth, best, (best >= beta ? LOWER : (best > alpha ? EXACT : UPPER)), bestSquare);
+		return best;
+	}
+}
@@ -0,0 +1,276 @@
+package edu.drexel.cs.ai.othello;
+
+import java.util.SplittableRandom;
+
+/**
+ * Utility functions for operating on bitboards: <code>long</code>
+ * masks of the board in which bit <code>row*8+col</code> represents
+ * the square at (<code>row</code>, <code>col</code>).  Shifting a
+ * mask moves every square one step in a direction, discarding the
+ * squares that would fall off the board (rather than wrapping around
+ * to the next row).
+ */
+final class BitBoard {
+	static final long ALL = 0xFFFFFFFFFFFFFFFFL;
+	static final long COL0 = 0x0101010101010101L;
+	static final long COL7 = 0x8080808080808080L;
+	static final long ROW0 = 0x00000000000000FFL;
+	static final long ROW7 = 0xFF00000000000000L;
+	static final long EDGES = COL0 | COL7 | ROW0 | ROW7;
+
+	/* the shifts of the directions, in the order of GameState.Direction */
+	private static final int SHIFTS[] = {-8, 8, -1, 1, -9, -7, 7, 9};
+	/* the squares that may be shifted into from each direction without wrapping */
+	private static final long MASKS[] = {ALL, ALL, ~COL7, ~COL0, ~COL7, ~COL0, ~COL7, ~COL0};
+	/* Direction.values() returns a new array on every call, which the inner loops must not allocate */
+	private static final GameState.Direction DIRECTIONS[] = GameState.Direction.values();
+	/* the four lines through a square, as pairs of opposite directions, for stable() */
+	private static final GameState.Direction AXES[][] = {
+		{GameState.Direction.LEFT, GameState.Direction.RIGHT},
+		{GameState.Direction.UP, GameState.Direction.DOWN},
+		{GameState.Direction.UPLEFT, GameState.Direction.DOWNRIGHT},
+		{GameState.Direction.UPRIGHT, GameState.Direction.DOWNLEFT}};
+
+	/* random keys for Zobrist hashing, from a fixed seed so that hashes are the same in every run */
+	private static final long ZOBRIST_PLAYER1[] = new long[64];
+	private static final long ZOBRIST_PLAYER2[] = new long[64];
+	private static final long ZOBRIST_PLAYER2_TO_MOVE;
+	static {
+		SplittableRandom random = new SplittableRandom(0x0D0E1105L);
+		for(int i=0; i<64; i++) {
+			ZOBRIST_PLAYER1[i] = random.nextLong();
+			ZOBRIST_PLAYER2[i] = random.nextLong();
+		}
+		ZOBRIST_PLAYER2_TO_MOVE = random.nextLong();
+	}
+
+	private BitBoard() {}
+
+	/**
+	 * Returns the mask of the single square (<code>row</code>,
+	 * <code>col</code>).
+	 */
+	static long square(int row, int col) {
+		return 1L << (row*8 + col);
+	}
+
+	/**
+	 * Moves every square in <code>mask</code> one step in the given
+	 * direction.
+	 */
+	static long shift(long mask, GameState.Direction direction) {
+		int s = SHIFTS[direction.ordinal()];
+		if(s > 0)
+			return (mask << s) & MASKS[direction.ordinal()];
+		else
+			return (mask >>> -s) & MASKS[direction.ordinal()];
+	}
+
+	/**
+	 * Returns the squares adjacent (in any of the eight directions) to
+	 * a square in <code>mask</code>.
+	 */
+	static long neighbors(long mask) {
+		long n = 0;
+		for(GameState.Direction d : DIRECTIONS)
+			n |= shift(mask, d);
+		return n;
+	}
+
+	/**
+	 * Returns the squares that lie on the same line as a square in
+	 * <code>mask</code>, in the given direction (including the
+	 * squares of <code>mask</code> themselves).
+	 */
+	static long fill(long mask, GameState.Direction direction) {
+		long f = mask;
+		for(int i=0; i<7; i++)
+			f |= shift(f, direction);
+		return f;
+	}
+
+	/**
+	 * Returns the squares in <code>mask</code> that are reachable from
+	 * a square in <code>seeds</code> by steps to adjacent squares in
+	 * <code>mask</code>.
+	 */
+	static long floodFill(long seeds, long mask) {
+		long f = seeds & mask;
+		long prev;
+		do {
+			prev = f;
+			f |= neighbors(f) & mask;
+		} while(f != prev);
+		return f;
+	}
+
+	/**
+	 * Returns the empty squares on which the player owning
+	 * <code>own</code> may legally move, <i>i.e.</i> those from which
+	 * a contiguous line of <code>opponent</code> discs is bracketed by
+	 * one of <code>own</code>.
+	 */
+	static long moves(long own, long opponent) {
+		long empty = ~(own | opponent);
+		long moves = 0;
+		for(GameState.Direction d : DIRECTIONS) {
+			long x = shift(own, d) & opponent;
+			for(int i=0; i<5; i++)
+				x |= shift(x, d) & opponent;
+			moves |= shift(x, d) & empty;
+		}
+		return moves;
+	}
+
+	/**
+	 * Returns the discs of <code>opponent</code> that would be flipped
+	 * if the player owning <code>own</code> moved on the square
+	 * <code>move</code> (a mask with a single bit set).
+	 */
+	static long flips(long own, long opponent, long move) {
+		long flips = 0;
+		for(GameState.Direction d : DIRECTIONS) {
+			long line = 0;
+			long x = shift(move, d);
+			while((x & opponent) != 0) {
+				line |= x;
+				x = shift(x, d);
+			}
+			if((x & own) != 0)
+				flips |= line;
+		}
+		return flips;
+	}
+
+	/**
+	 * Returns the 64-bit Zobrist hash of a position: the exclusive or
+	 * of a random key for each disc (per square and player) and,
+	 * if player 2 is to move, a key for the side to move.
+	 */
+	static long zobrist(long player1, long player2, boolean player1ToMove) {
+		long hash = (player1ToMove ? 0 : ZOBRIST_PLAYER2_TO_MOVE);
+		while(player1 != 0) {
+			hash ^= ZOBRIST_PLAYER1[Long.numberOfTrailingZeros(player1)];
+			player1 &= player1 - 1;
+		}
+		while(player2 != 0) {
+			hash ^= ZOBRIST_PLAYER2[Long.numberOfTrailingZeros(player2)];
+			player2 &= player2 - 1;
+		}
+		return hash;
+	}
+
+	/**
+	 * The number of symmetries of the board (its rotations and
+	 * reflections).
+	 */
+	static final int SYMMETRIES = 8;
+
+	/**
+	 * Returns <code>mask</code> transformed by one of the {@link
+	 * #SYMMETRIES} symmetries of the board, numbered from
+	 * <code>0</code> (the identity).  Bit 0 of <code>symmetry</code>
+	 * mirrors the columns, bit 1 mirrors the rows, and bit 2 then
+	 * transposes the board (swapping rows and columns).
+	 */
+	static long transform(long mask, int symmetry) {
+		if((symmetry & 1) != 0) {
+			/* reverse the bits of each row */
+			mask = ((mask >>> 1) & 0x5555555555555555L) | ((mask & 0x5555555555555555L) << 1);
+			mask = ((mask >>> 2) & 0x3333333333333333L) | ((mask & 0x3333333333333333L) << 2);
+			mask = ((mask >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((mask & 0x0F0F0F0F0F0F0F0FL) << 4);
+		}
+		if((symmetry & 2) != 0)
+			mask = Long.reverseBytes(mask);
+		if((symmetry & 4) != 0) {
+			/* swap the off-diagonal blocks of ever smaller size */
+			long t = 0x0F0F0F0F00000000L & (mask ^ (mask << 28));
+			mask ^= t ^ (t >>> 28);
+			t = 0x3333000033330000L & (mask ^ (mask << 14));
+			mask ^= t ^ (t >>> 14);
+			t = 0x5500550055005500L & (mask ^ (mask << 7));
+			mask ^= t ^ (t >>> 7);
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the symmetry that transforms a position into its
+	 * canonical form, the one of its rotations and reflections whose
+	 * <code>own</code> discs, and then <code>opponent</code> discs, are
+	 * smallest (as unsigned numbers).
+	 */
+	static int canonicalSymmetry(long own, long opponent) {
+		int best = 0;
+		long bestOwn = own;
+		long bestOpponent = opponent;
+		for(int s=1; s<SYMMETRIES; s++) {
+			long o = transform(own, s);
+			int c = Long.compareUnsigned(o, bestOwn);
+			if(c > 0)
+				continue;
+			long p = transform(opponent, s);
+			if(c < 0 || Long.compareUnsigned(p, bestOpponent) < 0) {
+				best = s;
+				bestOwn = o;
+				bestOpponent = p;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns a 64-bit hash of a position, given the discs of the
+	 * player to move and of its opponent.  It is cheaper to compute
+	 * than the {@link #zobrist(long, long, boolean) Zobrist hash},
+	 * but cannot be updated incrementally.
+	 */
+	static long hash(long own, long opponent) {
+		long h = own * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(opponent * 0xC2B2AE3D27D4EB4FL, 31);
+		h = (h ^ (h >>> 29)) * 0xBF58476D1CE4E5B9L;
+		return h ^ (h >>> 32);
+	}
+
+	/**
+	 * Returns a 64-bit hash of a position that is the same for all of
+	 * its rotations and reflections: the smallest hash of any of its
+	 * {@link #SYMMETRIES symmetries}.
+	 */
+	static long symmetricHash(long own, long opponent) {
+		long min = -1L;
+		for(int s=0; s<SYMMETRIES; s++) {
+			long h = hash(transform(own, s), transform(opponent, s));
+			if(Long.compareUnsigned(h, min) < 0)
+				min = h;
+		}
+		return min;
+	}
+
+	/**
+	 * Returns the squares of <code>own</code> that can never be
+	 * flipped.  A disc is stable if, along each of the four lines
+	 * through it, either the line is completely filled or the disc is
+	 * anchored on one side by the edge of the board or by another
+	 * stable disc.  This is a conservative approximation: every disc
+	 * returned is stable, but some stable discs may be missed.
+	 */
+	static long stable(long own, long occupied) {
+		long empty = ~occupied;
+		/* the squares anchored along each axis, kept in locals so that nothing is allocated */
+		long horizontal = COL0 | COL7 | ~(fill(empty, AXES[0][0]) | fill(empty, AXES[0][1]));
+		long vertical = ROW0 | ROW7 | ~(fill(empty, AXES[1][0]) | fill(empty, AXES[1][1]));
+		long diagonal = EDGES | ~(fill(empty, AXES[2][0]) | fill(empty, AXES[2][1]));
+		long antidiagonal = EDGES | ~(fill(empty, AXES[3][0]) | fill(empty, AXES[3][1]));
+		long stable = 0;
+		long prev;
+		do {
+			prev = stable;
+			stable = own
+				& (horizontal | shift(stable, AXES[0][0]) | shift(stable, AXES[0][1]))
+				& (vertical | shift(stable, AXES[1][0]) | shift(stable, AXES[1][1]))
+				& (diagonal | shift(stable, AXES[2][0]) | shift(stable, AXES[2][1]))
+				& (antidiagonal | shift(stable, AXES[3][0]) | shift(stable, AXES[3][1]));
+		} while(stable != prev);
+		return stable;
+	}
+}
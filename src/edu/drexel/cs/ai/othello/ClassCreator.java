@@ -100,6 +100,7 @@ class ClassCreator {
 	 * (":").
 	 */
 	public static HashSet<Class<?>> getClasses(String classpath) {
+		FlightRecorderEvents.ClassScan event = FlightRecorderEvents.beginClassScan(classpath);
 		String[] elements;
 		if(!classpath.contains(":") && classpath.contains(";"))
 			elements = classpath.split(";"); /* Windows */
@@ -127,6 +128,10 @@ class ClassCreator {
 				}
 			}
 		}
+		if(event != null) {
+			event.classes = classes.size();
+			FlightRecorderEvents.end(event);
+		}
 		return classes;
 	}
 
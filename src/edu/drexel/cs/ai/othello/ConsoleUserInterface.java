@@ -8,7 +8,7 @@ import java.io.*;
  *
  * @author <a href="http://www.sultanik.com" target="_blank">Evan A. Sultanik</a>
  */
-public class ConsoleUserInterface implements UserInterface {
+public class ConsoleUserInterface implements UserInterface, ResourceUsageListener {
 	private OthelloPlayer player1, player2;
 
 	public void handleStateUpdate(GameState newState) {
@@ -94,4 +94,9 @@ public class ConsoleUserInterface implements UserInterface {
 		if(!(player instanceof HumanOthelloPlayer))
 			System.out.println("Player " + player.getName() + " has used a total of " + millisUsed + "ms thinking thus far.");
 	}
+
+	public void updateResourcesUsed(OthelloPlayer player, long cpuMillisUsed, long bytesAllocated) {
+		if(!(player instanceof HumanOthelloPlayer) && cpuMillisUsed >= 0)
+			System.out.println("Player " + player.getName() + " has used a total of " + cpuMillisUsed + "ms of CPU time" + (bytesAllocated >= 0 ? " and allocated " + bytesAllocated + " bytes" : "") + " thus far.");
+	}
 }
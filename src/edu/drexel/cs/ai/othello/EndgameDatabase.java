@@ -0,0 +1,323 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A persistent cache of the exact scores of endgame positions, as
+ * computed by the {@link EndgameSolver}.  A score is the final disc
+ * differential (the discs of the player to move minus those of its
+ * opponent) if both players play perfectly.
+ *
+ * <p>Positions are <em>canonicalized</em> like those of a {@link
+ * PositionDatabase}, so that all of their rotations and reflections
+ * are stored once, and each is stored in three <code>long</code>s:
+ * the canonical discs of the player to move and of its opponent, and
+ * the number of empty squares and the score, combined with the discs
+ * so that a slot that was torn by concurrent writers is detected.  A
+ * position is only found if its discs match exactly.  The slots are
+ * grouped into buckets of four in a memory-mapped file; when a bucket
+ * is full, the position with the fewest empty squares (the cheapest to
+ * solve again) is replaced.  Like {@link EvaluationCache} the
+ * database is lock-free, and since
+ * the file is mapped, several processes (<i>e.g.</i> the games of a
+ * tournament) can share it.  Changes reach the file as the operating
+ * system writes them back, or when {@link #flush()} is called.</p>
+ *
+ * <p>The {@link #setDefault(EndgameDatabase) default} database is
+ * used by {@link GameState#getSolvedScore()} and by new solvers.  It
+ * is opened with the <code>-endgame</code> command line option.</p>
+ */
+public final class EndgameDatabase {
+	/**
+	 * Returned by {@link #get(GameState)} if a position is not in the
+	 * database.
+	 */
+	public static final int UNKNOWN = Integer.MIN_VALUE;
+	/**
+	 * The maximum number of empty squares a position may have to be
+	 * stored.
+	 */
+	public static final int MAX_EMPTIES = 32;
+	private static final byte MAGIC[] = {'O', 'T', 'H', 'E'};
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 64;
+	private static final int PROBES = 4;
+	/* the canonical discs of the player to move and of its opponent, and the entry */
+	private static final int SLOT_SIZE = 3 * 8;
+
+	private static volatile EndgameDatabase defaultDatabase = null;
+
+	private final File file;
+	private final MappedByteBuffer table;
+	private final int mask;
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder stores;
+
+	/**
+	 * Opens the database in <code>file</code>, creating it with a size
+	 * of <code>megabytes</code> megabytes if it does not exist (the
+	 * size of an existing database never changes).
+	 *
+	 * @throws IOException if the file could not be opened or is not an endgame database.
+	 */
+	public EndgameDatabase(File file, int megabytes) throws IOException {
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+			int capacity;
+			if(channel.size() == 0) {
+				long slots = Math.max(PROBES, ((long)megabytes << 20) / SLOT_SIZE);
+				capacity = Integer.highestOneBit((int)Math.min(slots, 1 << 26));
+				MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+				header.put(MAGIC).putInt(VERSION).putInt(capacity);
+				header.force();
+			} else {
+				MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_SIZE, channel.size()));
+				if(channel.size() < HEADER_SIZE || header.get(0) != MAGIC[0] || header.get(1) != MAGIC[1] || header.get(2) != MAGIC[2] || header.get(3) != MAGIC[3] || header.getInt(4) != VERSION)
+					throw new IOException(file + " is not an endgame database");
+				capacity = header.getInt(8);
+				if(Integer.bitCount(capacity) != 1 || capacity < PROBES || channel.size() != HEADER_SIZE + (long)capacity * SLOT_SIZE)
+					throw new IOException(file + " is corrupt");
+			}
+			table = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, (long)capacity * SLOT_SIZE);
+			mask = capacity - 1;
+		} finally {
+			/* the mapping remains valid after the file is closed */
+			raf.close();
+		}
+		hits = new LongAdder();
+		misses = new LongAdder();
+		stores = new LongAdder();
+	}
+
+	/**
+	 * Sets the database used by {@link GameState#getSolvedScore()} and
+	 * by new {@link EndgameSolver}s (or <code>null</code> for none).
+	 */
+	public static void setDefault(EndgameDatabase database) {
+		defaultDatabase = database;
+	}
+
+	/**
+	 * Returns the default database, or <code>null</code> if there is
+	 * none.
+	 */
+	public static EndgameDatabase getDefault() {
+		return defaultDatabase;
+	}
+
+	/**
+	 * Returns the number of positions the database can hold.
+	 */
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Returns the exact score of a position for the player to move,
+	 * given the discs of that player (<code>own</code>) and of its
+	 * opponent, or {@link #UNKNOWN} if it is not in the database.
+	 */
+	public int get(long own, long opponent) {
+		int symmetry = BitBoard.canonicalSymmetry(own, opponent);
+		own = BitBoard.transform(own, symmetry);
+		opponent = BitBoard.transform(opponent, symmetry);
+		int empties = 64 - Long.bitCount(own | opponent);
+		int bucket = (int)BitBoard.hash(own, opponent) & mask & ~(PROBES - 1);
+		for(int i=bucket; i<bucket + PROBES; i++) {
+			int offset = i * SLOT_SIZE;
+			if(table.getLong(offset) != own || table.getLong(offset + 8) != opponent)
+				continue;
+			long entry = table.getLong(offset + 16) ^ own ^ opponent;
+			/* otherwise another position was being written to the slot */
+			if(entry >>> 16 == 0 && ((int)entry >>> 8) == empties) {
+				hits.increment();
+				return (byte)entry;
+			}
+		}
+		misses.increment();
+		return UNKNOWN;
+	}
+
+	/**
+	 * Returns the exact score of <code>state</code> for the player to
+	 * move, or {@link #UNKNOWN} if it is not in the database.
+	 */
+	public int get(GameState state) {
+		GameState.Player player = state.getCurrentPlayer();
+		return get(state.getDiscs(player), state.getDiscs(state.getOpponent(player)));
+	}
+
+	/**
+	 * Stores the exact score of a position for the player to move,
+	 * given the discs of that player (<code>own</code>) and of its
+	 * opponent.  Positions with no empty squares, or more than {@link
+	 * #MAX_EMPTIES}, are not stored.
+	 */
+	public void put(long own, long opponent, int score) {
+		int empties = 64 - Long.bitCount(own | opponent);
+		if(empties < 1 || empties > MAX_EMPTIES)
+			return;
+		int symmetry = BitBoard.canonicalSymmetry(own, opponent);
+		own = BitBoard.transform(own, symmetry);
+		opponent = BitBoard.transform(opponent, symmetry);
+		long entry = ((long)empties << 8) | (score & 0xFF);
+		int bucket = (int)BitBoard.hash(own, opponent) & mask & ~(PROBES - 1);
+		int victim = -1;
+		int victimEmpties = empties + 1;
+		for(int i=bucket; i<bucket + PROBES; i++) {
+			int offset = i * SLOT_SIZE;
+			long slotOwn = table.getLong(offset);
+			long slotOpponent = table.getLong(offset + 8);
+			if((slotOwn | slotOpponent) == 0 || (slotOwn == own && slotOpponent == opponent)) {
+				victim = i;
+				break;
+			}
+			/* otherwise replace the position that is cheapest to solve again */
+			int e = 64 - Long.bitCount(slotOwn | slotOpponent);
+			if(e < victimEmpties) {
+				victim = i;
+				victimEmpties = e;
+			}
+		}
+		if(victim < 0)
+			return;
+		int offset = victim * SLOT_SIZE;
+		table.putLong(offset, own);
+		table.putLong(offset + 8, opponent);
+		table.putLong(offset + 16, entry ^ own ^ opponent);
+		stores.increment();
+	}
+
+	/**
+	 * Returns the number of lookups that found a position.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that did not find a position.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of positions that have been stored.
+	 */
+	public long getStores() {
+		return stores.sum();
+	}
+
+	/**
+	 * Writes the database to its file.
+	 */
+	public void flush() {
+		table.force();
+	}
+
+	public String toString() {
+		return "EndgameDatabase[" + file + " capacity=" + getCapacity() + " hits=" + getHits() + " misses=" + getMisses() + " stores=" + getStores() + "]";
+	}
+
+	/**
+	 * Prints command line usage information.
+	 */
+	public static void printUsage() {
+		System.err.println(Othello.getVersionInfo());
+		System.err.println("Usage: EndgameDatabase [options] database record ...");
+		System.err.println();
+		System.err.println("  database          The database file, which is created if it does not exist");
+		System.err.println("  record            A game record (see -record) whose endgame to solve, or a");
+		System.err.println("                    directory of them");
+		System.err.println();
+		System.err.println("OPTIONS:");
+		System.err.println("         -e  number Solves the positions with at most this many empty squares");
+		System.err.println("                    (the default is 14).");
+		System.err.println("         -mb number The size of a new database in megabytes (the default is");
+		System.err.println("                    64).");
+	}
+
+	/* solves the endgame of every record in file (or, if it is a directory, below it); returns the number of positions solved */
+	private static long solveRecords(File file, EndgameSolver solver, int empties) {
+		if(file.isDirectory()) {
+			String names[] = file.list();
+			long solved = 0;
+			if(names != null) {
+				Arrays.sort(names);
+				for(String name : names)
+					solved += solveRecords(new File(file, name), solver, empties);
+			}
+			return solved;
+		}
+		GameRecord record;
+		try {
+			record = GameRecord.read(file);
+		} catch(IOException ioe) {
+			System.err.println("Warning: Skipping " + file + ": " + ioe.getMessage());
+			return 0;
+		}
+		long solved = 0;
+		GameState state = new GameState(record.getSeed());
+		try {
+			for(GameRecord.Move move : record.getMoves()) {
+				state = state.applyMove(move.getSquare(), false);
+				if(state.getEmptyCount() <= empties && state.getStatus() == GameState.GameStatus.PLAYING) {
+					solver.solve(state);
+					solved++;
+				}
+			}
+		} catch(InvalidMoveException ime) {
+			System.err.println("Warning: " + file + " contains an invalid move: " + ime.getMessage());
+		}
+		return solved;
+	}
+
+	/**
+	 * Fills a database by solving the endgames of recorded games.
+	 */
+	public static void main(String[] args) {
+		int empties = 14;
+		int megabytes = 64;
+		int i = 0;
+		try {
+			for(; i<args.length && args[i].startsWith("-"); i++) {
+				if(args[i].equals("-e"))
+					empties = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-mb"))
+					megabytes = Integer.parseInt(args[++i]);
+				else
+					throw new IllegalArgumentException("unexpected argument \"" + args[i] + "\"");
+			}
+			if(args.length - i < 2)
+				throw new IllegalArgumentException("expected a database and at least one game record");
+		} catch(RuntimeException re) {
+			System.err.println("Error: " + re.getMessage() + "\n");
+			printUsage();
+			System.exit(1);
+		}
+		try {
+			EndgameDatabase database = new EndgameDatabase(new File(args[i]), megabytes);
+			EndgameSolver solver = new EndgameSolver(database);
+			long start = System.currentTimeMillis();
+			long solved = 0;
+			for(int j=i+1; j<args.length; j++)
+				solved += solveRecords(new File(args[j]), solver, Math.min(empties, MAX_EMPTIES));
+			database.flush();
+			System.out.println("Solved " + solved + " positions in " + (System.currentTimeMillis() - start) + "ms (" + solver.getNodes() + " nodes).");
+			System.out.println(database);
+		} catch(IOException ioe) {
+			System.err.println("Error: " + ioe.getMessage());
+			System.exit(1);
+		}
+	}
+}
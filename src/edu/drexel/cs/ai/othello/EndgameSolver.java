@@ -0,0 +1,197 @@
+package edu.drexel.cs.ai.othello;
+
+import java.util.Date;
+
+/**
+ * Computes the exact score of endgame positions: the final disc
+ * differential (the discs of the player to move minus those of its
+ * opponent) if both players play perfectly.  The search is a
+ * bitboard alpha-beta search that tries the moves leaving the
+ * opponent the fewest replies first.  Exact results for positions with
+ * at least {@link #MIN_STORED_EMPTIES} empty squares are looked up in
+ * and stored to an {@link EndgameDatabase}, so an endgame that has
+ * been solved once (in any game, by any process sharing the database)
+ * does not have to be solved again.
+ *
+ * <p>The time a solve takes grows exponentially with the number of
+ * empty squares: positions with around 14 empty squares take a
+ * fraction of a second, and every two more take roughly ten times as
+ * long.  A solver is not thread-safe; the nodes it searches count
+ * toward the agent's {@link OthelloPlayer#getNodeBudget() node
+ * budget}.</p>
+ */
+public final class EndgameSolver {
+	/**
+	 * Returned by {@link #solve(GameState)} if the deadline passed
+	 * before the position was solved.
+	 */
+	public static final int UNKNOWN = EndgameDatabase.UNKNOWN;
+	/**
+	 * The fewest empty squares a position must have for its result to
+	 * be looked up in and stored to the database; smaller endgames are
+	 * faster to solve than to look up.
+	 */
+	public static final int MIN_STORED_EMPTIES = 7;
+	/* below this many empty squares, the moves are not sorted */
+	private static final int MIN_SORTED_EMPTIES = 7;
+	/* the deadline and the node budget are checked every so many nodes */
+	private static final int CHECK_INTERVAL = 1024;
+
+	/* thrown (without a stack trace) to abandon the search when the deadline passes */
+	private static final class Timeout extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Timeout() {
+			super(null, null, false, false);
+		}
+	}
+	private static final Timeout TIMEOUT = new Timeout();
+
+	private final EndgameDatabase database;
+	/* the moves of each node, and their sort keys, by number of empty squares */
+	private final long moves[][];
+	private final int keys[][];
+	private long deadlineNanos;
+	private boolean hasDeadline;
+	private long nodes;
+	private int bestMove;
+
+	/**
+	 * Creates a solver that uses the {@link EndgameDatabase#getDefault()
+	 * default} database, if there is one.
+	 */
+	public EndgameSolver() {
+		this(EndgameDatabase.getDefault());
+	}
+
+	/**
+	 * Creates a solver that uses <code>database</code> (or no database,
+	 * if it is <code>null</code>).
+	 */
+	public EndgameSolver(EndgameDatabase database) {
+		this.database = database;
+		moves = new long[65][64];
+		keys = new int[65][64];
+		hasDeadline = false;
+		nodes = 0;
+		bestMove = -1;
+	}
+
+	/**
+	 * Abandons any solve that is still running at
+	 * <code>deadline</code> (or never, if it is <code>null</code>).
+	 */
+	public void setDeadline(Date deadline) {
+		hasDeadline = (deadline != null);
+		if(hasDeadline)
+			deadlineNanos = System.nanoTime() + (deadline.getTime() - System.currentTimeMillis()) * 1000000L;
+	}
+
+	/**
+	 * Returns the total number of nodes this solver has searched.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the exact score of <code>state</code> for the player to
+	 * move, or {@link #UNKNOWN} if the deadline passed first.
+	 *
+	 * @throws NodeBudgetExceededError if the agent that is moving has exhausted its node budget.
+	 */
+	public int solve(GameState state) {
+		GameState.Player player = state.getCurrentPlayer();
+		long own = state.getDiscs(player);
+		long opponent = state.getDiscs(state.getOpponent(player));
+		bestMove = -1;
+		try {
+			/* the window is one wider than the scores, so every result is exact */
+			return search(own, opponent, -65, 65, true);
+		} catch(Timeout t) {
+			bestMove = -1;
+			return UNKNOWN;
+		}
+	}
+
+	/**
+	 * Returns the best move found by the last {@link #solve(GameState)},
+	 * or <code>null</code> if the player to move had no valid moves or
+	 * the solve did not finish.
+	 */
+	public Square getBestMove() {
+		return (bestMove < 0 ? null : new Square(bestMove / 8, bestMove % 8));
+	}
+
+	private void countNode() {
+		if((++nodes & (CHECK_INTERVAL - 1)) != 0)
+			return;
+		NodeBudget.charge(CHECK_INTERVAL);
+		if(hasDeadline && System.nanoTime() - deadlineNanos > 0)
+			throw TIMEOUT;
+	}
+
+	private static int finalScore(long own, long opponent) {
+		return Long.bitCount(own) - Long.bitCount(opponent);
+	}
+
+	/* negamax with alpha-beta pruning; returns the exact score if it is strictly between alpha and beta, and otherwise a bound */
+	private int search(long own, long opponent, int alpha, int beta, boolean root) {
+		countNode();
+		long valid = BitBoard.moves(own, opponent);
+		if(valid == 0) {
+			if(BitBoard.moves(opponent, own) == 0)
+				return finalScore(own, opponent);
+			return -search(opponent, own, -beta, -alpha, false);
+		}
+		int empties = 64 - Long.bitCount(own | opponent);
+		boolean stored = (database != null && empties >= MIN_STORED_EMPTIES && empties <= EndgameDatabase.MAX_EMPTIES);
+		if(stored && !root) {
+			int score = database.get(own, opponent);
+			if(score != EndgameDatabase.UNKNOWN)
+				return score;
+		}
+
+		/* collect the moves, sorted by the number of replies they leave the opponent */
+		long list[] = moves[empties];
+		int key[] = keys[empties];
+		int count = 0;
+		for(; valid != 0; valid &= valid - 1) {
+			long move = Long.lowestOneBit(valid);
+			int k = 0;
+			if(empties >= MIN_SORTED_EMPTIES) {
+				long flips = BitBoard.flips(own, opponent, move);
+				k = Long.bitCount(BitBoard.moves(opponent & ~flips, own | flips | move));
+			}
+			int i = count++;
+			while(i > 0 && key[i - 1] > k) {
+				list[i] = list[i - 1];
+				key[i] = key[i - 1];
+				i--;
+			}
+			list[i] = move;
+			key[i] = k;
+		}
+
+		int best = -66;
+		int a = alpha;
+		for(int i=0; i<count; i++) {
+			long move = list[i];
+			long flips = BitBoard.flips(own, opponent, move);
+			int score = -search(opponent & ~flips, own | flips | move, -beta, -a, false);
+			if(score > best) {
+				best = score;
+				if(root)
+					bestMove = Long.numberOfTrailingZeros(move);
+				if(score > a) {
+					a = score;
+					if(a >= beta)
+						break;
+				}
+			}
+		}
+		if(stored && best > alpha && best < beta)
+			database.put(own, opponent, best);
+		return best;
+	}
+}
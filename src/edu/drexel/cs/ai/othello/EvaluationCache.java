@@ -0,0 +1,228 @@
+package edu.drexel.cs.ai.othello;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size cache of position evaluations, keyed by {@link
+ * GameState#getZobristHash() Zobrist hash}.  An agent that keeps a
+ * cache in a field (or obtains a {@link #getShared(String, int)
+ * shared} one) no longer recomputes the evaluations of positions that
+ * recur from one move (or game) to the next.
+ *
+ * <p>The cache is a table of slots grouped into buckets of {@link
+ * #PROBES} consecutive slots; a position may be stored in any slot of
+ * the bucket its hash maps to.  When a bucket is full, the victim is
+ * chosen by the CLOCK algorithm: every slot has a reference bit that
+ * is set when the slot is read, and a store evicts the first slot of
+ * the bucket whose bit is clear, clearing the bits it passes over.
+ * Positions that are looked up often therefore survive, while the
+ * memory used never changes.</p>
+ *
+ * <p>The cache is safe to use from multiple threads without locking.
+ * Each slot stores the hash <code>xor</code> the value alongside the
+ * value, so a slot that is read while another thread is writing it
+ * simply misses.  Values should not depend on which agent stores
+ * them; storing them from the point of view of the player to move
+ * (which is part of the hash) makes them shareable.</p>
+ */
+public final class EvaluationCache {
+	/**
+	 * The number of slots probed for each position.
+	 */
+	public static final int PROBES = 4;
+	/* each slot is a key, a value, and a reference bit */
+	private static final int BYTES_PER_SLOT = 8 + 8 + 1;
+
+	private static final ConcurrentHashMap<String,EvaluationCache> shared = new ConcurrentHashMap<String,EvaluationCache>();
+
+	private final long keys[];
+	private final long values[];
+	private final byte referenced[];
+	private final int mask;
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder stores;
+	private final LongAdder evictions;
+
+	/**
+	 * Creates a new cache that uses at most <code>megabytes</code>
+	 * megabytes of memory.  The number of slots is rounded down to a
+	 * power of two.
+	 */
+	public EvaluationCache(int megabytes) {
+		long slots = Math.max(PROBES, ((long)megabytes << 20) / BYTES_PER_SLOT);
+		int capacity = Integer.highestOneBit((int)Math.min(slots, 1 << 30));
+		keys = new long[capacity];
+		values = new long[capacity];
+		referenced = new byte[capacity];
+		mask = capacity - 1;
+		hits = new LongAdder();
+		misses = new LongAdder();
+		stores = new LongAdder();
+		evictions = new LongAdder();
+	}
+
+	/**
+	 * Returns the cache registered under <code>name</code>, creating
+	 * it with a size of <code>megabytes</code> megabytes if it does
+	 * not yet exist.  Shared caches live as long as the JVM, so they
+	 * survive across the games played in it (<i>e.g.</i> on a {@link
+	 * GameServer} or by a {@link SelfPlayGenerator}), and every agent
+	 * that uses the same name shares the same cache.  They are not
+	 * persisted, so nothing is shared between the games of a
+	 * tournament, each of which runs in its own JVM.  Agents would
+	 * usually use their class name.
+	 */
+	public static EvaluationCache getShared(String name, int megabytes) {
+		EvaluationCache cache = shared.get(name);
+		if(cache == null) {
+			EvaluationCache newCache = new EvaluationCache(megabytes);
+			cache = shared.putIfAbsent(name, newCache);
+			if(cache == null)
+				cache = newCache;
+		}
+		return cache;
+	}
+
+	/**
+	 * Returns the number of positions the cache can hold.
+	 */
+	public int getCapacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns the cached evaluation of the position with the given
+	 * hash, or <code>Double.NaN</code> if it is not cached.
+	 */
+	public double get(long hash) {
+		int bucket = (int)hash & mask & ~(PROBES - 1);
+		for(int i=bucket; i<bucket + PROBES; i++) {
+			long value = values[i];
+			if((keys[i] ^ value) == hash && (value != 0 || keys[i] != 0)) {
+				referenced[i] = 1;
+				hits.increment();
+				return Double.longBitsToDouble(value);
+			}
+		}
+		misses.increment();
+		return Double.NaN;
+	}
+
+	/**
+	 * Returns the cached evaluation of <code>state</code>, or
+	 * <code>Double.NaN</code> if it is not cached.
+	 */
+	public double get(GameState state) {
+		return get(state.getZobristHash());
+	}
+
+	/**
+	 * Caches the evaluation of the position with the given hash.
+	 */
+	public void put(long hash, double evaluation) {
+		long value = Double.doubleToRawLongBits(evaluation);
+		int bucket = (int)hash & mask & ~(PROBES - 1);
+		int victim = -1;
+		int empty = -1;
+		for(int i=bucket; i<bucket + PROBES; i++) {
+			if((keys[i] ^ values[i]) == hash) {
+				/* the position is already cached, so just update it */
+				victim = i;
+				break;
+			} else if(empty < 0 && keys[i] == 0 && values[i] == 0)
+				empty = i;
+		}
+		if(victim < 0)
+			victim = empty;
+		if(victim < 0) {
+			/* the bucket is full, so sweep its reference bits (the CLOCK algorithm) */
+			for(int i=bucket; i<bucket + PROBES; i++) {
+				if(referenced[i] == 0) {
+					victim = i;
+					break;
+				}
+				referenced[i] = 0;
+			}
+			if(victim < 0)
+				victim = bucket;
+			evictions.increment();
+		}
+		referenced[victim] = 0;
+		values[victim] = value;
+		keys[victim] = hash ^ value;
+		stores.increment();
+	}
+
+	/**
+	 * Caches the evaluation of <code>state</code>.
+	 */
+	public void put(GameState state, double evaluation) {
+		put(state.getZobristHash(), evaluation);
+	}
+
+	/**
+	 * Removes every position from the cache (but does not reset the
+	 * statistics).
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, 0);
+		Arrays.fill(referenced, (byte)0);
+	}
+
+	/**
+	 * Returns the number of lookups that found a cached evaluation.
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the number of lookups that did not find a cached
+	 * evaluation.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the number of evaluations that have been stored.
+	 */
+	public long getStores() {
+		return stores.sum();
+	}
+
+	/**
+	 * Returns the number of stores that evicted another position.
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Returns the fraction of lookups that found a cached evaluation
+	 * (or <code>0</code> if there have been none).
+	 */
+	public double getHitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return (total == 0 ? 0.0 : (double)h / (double)total);
+	}
+
+	/**
+	 * Resets the hit, miss, store and eviction counts to zero.
+	 */
+	public void resetStatistics() {
+		hits.reset();
+		misses.reset();
+		stores.reset();
+		evictions.reset();
+	}
+
+	public String toString() {
+		return "EvaluationCache[capacity=" + keys.length + " hits=" + getHits() + " misses=" + getMisses() + " hitRate=" + Math.round(getHitRate() * 1000.0) / 1000.0 + " evictions=" + getEvictions() + "]";
+	}
+}
@@ -0,0 +1,190 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+/**
+ * Custom Java Flight Recorder events for profiling the game engine.
+ *
+ * <p>Events are only ever created if the system property
+ * <code>othello.jfr</code> is <code>true</code> (<i>e.g.</i> by
+ * passing <code>-Dothello.jfr=true</code> to the JVM together with
+ * <code>-XX:StartFlightRecording</code>, or by using the
+ * <code>-jfr</code> command line option).  Since the property is
+ * read into a <code>static final</code> field, the JIT compiler
+ * removes the instrumentation entirely when it is disabled.</p>
+ *
+ * <p>Each <code>begin...</code> method returns <code>null</code>
+ * when recording is disabled; {@link #end(Event)} ignores
+ * <code>null</code> events.</p>
+ */
+final class FlightRecorderEvents {
+	/**
+	 * The name of the system property that enables the events.
+	 */
+	static final String PROPERTY = "othello.jfr";
+
+	static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+	private static Recording recording = null;
+
+	private FlightRecorderEvents() {}
+
+	@Name("edu.drexel.cs.ai.othello.MoveGeneration")
+	@Label("Successor Generation")
+	@Category({"Othello", "Game State"})
+	static class MoveGeneration extends Event {
+		@Label("Successors")
+		int successors;
+	}
+
+	@Name("edu.drexel.cs.ai.othello.AgentMove")
+	@Label("Agent Move")
+	@Category({"Othello", "Agent"})
+	static class AgentMove extends Event {
+		@Label("Player")
+		String player;
+		@Label("Move")
+		String move;
+		@Label("Time Limit (ms)")
+		long timeLimit;
+	}
+
+	@Name("edu.drexel.cs.ai.othello.TimerWait")
+	@Label("Timer Wait")
+	@Category({"Othello", "Driver"})
+	static class TimerWait extends Event {
+		@Label("Player")
+		String player;
+		@Label("Timed Out")
+		boolean timedOut;
+	}
+
+	@Name("edu.drexel.cs.ai.othello.UIUpdate")
+	@Label("User Interface Update")
+	@Category({"Othello", "Driver"})
+	static class UIUpdate extends Event {
+		@Label("Callback")
+		String callback;
+	}
+
+	@Name("edu.drexel.cs.ai.othello.ClassScan")
+	@Label("Classpath Scan")
+	@Category({"Othello", "Driver"})
+	static class ClassScan extends Event {
+		@Label("Classpath")
+		String classpath;
+		@Label("Classes Found")
+		int classes;
+	}
+
+	/**
+	 * Registers the event classes with the flight recorder.  This
+	 * must be called before the game's security manager is
+	 * installed, since registration requires permissions that the
+	 * security manager does not grant.  This does nothing if the
+	 * events are disabled.
+	 */
+	static void register() {
+		if(!ENABLED)
+			return;
+		FlightRecorder.register(MoveGeneration.class);
+		FlightRecorder.register(AgentMove.class);
+		FlightRecorder.register(TimerWait.class);
+		FlightRecorder.register(UIUpdate.class);
+		FlightRecorder.register(ClassScan.class);
+	}
+
+	static MoveGeneration beginMoveGeneration() {
+		if(!ENABLED)
+			return null;
+		MoveGeneration event = new MoveGeneration();
+		event.begin();
+		return event;
+	}
+
+	static AgentMove beginAgentMove(OthelloPlayer player, long timeLimit) {
+		if(!ENABLED)
+			return null;
+		AgentMove event = new AgentMove();
+		event.player = player.getName();
+		event.timeLimit = timeLimit;
+		event.begin();
+		return event;
+	}
+
+	static TimerWait beginTimerWait(OthelloPlayer player) {
+		if(!ENABLED)
+			return null;
+		TimerWait event = new TimerWait();
+		event.player = player.getName();
+		event.begin();
+		return event;
+	}
+
+	static UIUpdate beginUIUpdate(String callback) {
+		if(!ENABLED)
+			return null;
+		UIUpdate event = new UIUpdate();
+		event.callback = callback;
+		event.begin();
+		return event;
+	}
+
+	static ClassScan beginClassScan(String classpath) {
+		if(!ENABLED)
+			return null;
+		ClassScan event = new ClassScan();
+		event.classpath = classpath;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends and commits the given event, if it is not
+	 * <code>null</code>.
+	 */
+	static void end(Event event) {
+		if(event != null)
+			event.commit();
+	}
+
+	/**
+	 * Starts recording all of the events in this class to the file
+	 * <code>filename</code>.  The recording is written when {@link
+	 * #stopRecording()} is called.  Note that this must be called
+	 * after the {@link #PROPERTY} system property has been set.
+	 */
+	static synchronized void startRecording(String filename) throws IOException {
+		if(!ENABLED)
+			throw new IllegalStateException("The " + PROPERTY + " system property must be set before starting a recording!");
+		recording = new Recording();
+		recording.setName("Othello");
+		recording.enable(MoveGeneration.class);
+		recording.enable(AgentMove.class);
+		recording.enable(TimerWait.class);
+		recording.enable(UIUpdate.class);
+		recording.enable(ClassScan.class);
+		recording.setDestination(Paths.get(filename));
+		recording.start();
+	}
+
+	/**
+	 * Stops the recording started by {@link
+	 * #startRecording(String)} (if any) and writes it to disk.
+	 */
+	static synchronized void stopRecording() {
+		if(recording != null) {
+			recording.stop();
+			recording.close();
+			recording = null;
+		}
+	}
+}
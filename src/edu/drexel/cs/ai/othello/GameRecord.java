@@ -0,0 +1,233 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * A record of a game: the seed of the game, the agents that played it,
+ * and every move along with how it was decided and how long it took.
+ * Since the seed determines the initial state and every move is
+ * recorded, a game can be replayed exactly without running the agents
+ * (see {@link Othello#main(String[])}).
+ *
+ * <p>Records are stored as text, one item per line:</p>
+ * <pre>
+ * # a comment
+ * seed 1234
+ * duration 10
+ * player1 edu.drexel.cs.ai.othello.RandomOthelloPlayer Random Agent
+ * player2 students.example.ExampleOthelloPlayer Example
+ * move 1 d2 agent 15 0
+ * move 2 c4 best 10000 182034
+ * result 42 22
+ * </pre>
+ * <p>Each move line contains the player (<code>1</code> or
+ * <code>2</code>), the square, the {@link Decision decision}, the
+ * number of milliseconds the agent used, and the number of nodes the
+ * agent reported searching.</p>
+ */
+public final class GameRecord {
+	/**
+	 * How the move of an agent was decided.
+	 */
+	public enum Decision {
+		/** The agent returned the move before its deadline. */
+		AGENT,
+		/** The agent missed its deadline, so its registered best move was used. */
+		BEST,
+		/** The agent was moved randomly (<i>e.g.</i> it timed out without a best move, or made an invalid move). */
+		RANDOM
+	}
+
+	/**
+	 * A recorded move.
+	 */
+	public static final class Move {
+		private final GameState.Player player;
+		private final Square square;
+		private final Decision decision;
+		private final long millis;
+		private final long nodes;
+
+		Move(GameState.Player player, Square square, Decision decision, long millis, long nodes) {
+			this.player = player;
+			this.square = square;
+			this.decision = decision;
+			this.millis = millis;
+			this.nodes = nodes;
+		}
+
+		public GameState.Player getPlayer() { return player; }
+		public Square getSquare() { return square; }
+		public Decision getDecision() { return decision; }
+		public long getMillis() { return millis; }
+		public long getNodes() { return nodes; }
+
+		public String toString() {
+			return "move " + (player == GameState.Player.PLAYER1 ? "1" : "2") + " " + square + " " + decision.name().toLowerCase() + " " + millis + " " + nodes;
+		}
+	}
+
+	private final long seed;
+	private final int turnDuration;
+	private final String playerClasses[];
+	private final String playerNames[];
+	private final ArrayList<Move> moves;
+	private int scores[];
+
+	/**
+	 * Creates a new, empty record of a game.
+	 *
+	 * @param seed the seed of the game's random number generator.
+	 * @param turnDuration the deadline of each move (in seconds), or <code>&lt;= 0</code> if there was none.
+	 */
+	public GameRecord(long seed, int turnDuration, String player1Class, String player1Name, String player2Class, String player2Name) {
+		this.seed = seed;
+		this.turnDuration = turnDuration;
+		playerClasses = new String[] {player1Class, player2Class};
+		playerNames = new String[] {player1Name, player2Name};
+		moves = new ArrayList<Move>();
+		scores = null;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getTurnDuration() {
+		return turnDuration;
+	}
+
+	/**
+	 * Returns the class name of the agent of player <code>1</code> or
+	 * <code>2</code>.
+	 */
+	public String getPlayerClass(int player) {
+		return playerClasses[player - 1];
+	}
+
+	/**
+	 * Returns the name of player <code>1</code> or <code>2</code>.
+	 */
+	public String getPlayerName(int player) {
+		return playerNames[player - 1];
+	}
+
+	/**
+	 * Returns the moves of the game, in order.
+	 */
+	public List<Move> getMoves() {
+		return Collections.unmodifiableList(moves);
+	}
+
+	void addMove(GameState.Player player, Square square, Decision decision, long millis, long nodes) {
+		moves.add(new Move(player, square, decision, millis, nodes));
+	}
+
+	/**
+	 * Records the final scores of the game.
+	 */
+	void setResult(GameState finalState) {
+		scores = new int[] {finalState.getScore(GameState.Player.PLAYER1), finalState.getScore(GameState.Player.PLAYER2)};
+	}
+
+	void setResult(int player1Score, int player2Score) {
+		scores = new int[] {player1Score, player2Score};
+	}
+
+	/**
+	 * Returns the final score of player <code>1</code> or
+	 * <code>2</code>, or <code>-1</code> if the game did not finish.
+	 */
+	public int getScore(int player) {
+		return (scores == null ? -1 : scores[player - 1]);
+	}
+
+	/**
+	 * Writes the record to a file.
+	 */
+	public void write(File file) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println("# " + Othello.getVersionInfo().trim().replace("\n", "\n# "));
+			out.println("seed " + seed);
+			out.println("duration " + turnDuration);
+			out.println("player1 " + playerClasses[0] + " " + playerNames[0]);
+			out.println("player2 " + playerClasses[1] + " " + playerNames[1]);
+			for(Move move : moves)
+				out.println(move);
+			if(scores != null)
+				out.println("result " + scores[0] + " " + scores[1]);
+		} finally {
+			out.close();
+		}
+		if(out.checkError())
+			throw new IOException("Error writing " + file);
+	}
+
+	/**
+	 * Reads a record from a file.
+	 *
+	 * @throws IOException if the file could not be read or is not properly formatted.
+	 */
+	public static GameRecord read(File file) throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			Long seed = null;
+			int turnDuration = -1;
+			String classes[] = new String[2];
+			String names[] = new String[2];
+			ArrayList<Move> moves = new ArrayList<Move>();
+			int scores[] = null;
+			String line;
+			int lineNumber = 0;
+			while((line = in.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if(line.length() == 0 || line.startsWith("#"))
+					continue;
+				StringTokenizer st = new StringTokenizer(line);
+				String key = st.nextToken();
+				try {
+					if(key.equals("seed"))
+						seed = Long.valueOf(st.nextToken());
+					else if(key.equals("duration"))
+						turnDuration = Integer.parseInt(st.nextToken());
+					else if(key.equals("player1") || key.equals("player2")) {
+						int p = (key.equals("player1") ? 0 : 1);
+						classes[p] = st.nextToken();
+						names[p] = (st.hasMoreTokens() ? st.nextToken("").trim() : classes[p]);
+					} else if(key.equals("move")) {
+						GameState.Player player = (st.nextToken().equals("1") ? GameState.Player.PLAYER1 : GameState.Player.PLAYER2);
+						Square square = new Square(st.nextToken());
+						Decision decision = Decision.valueOf(st.nextToken().toUpperCase());
+						long millis = Long.parseLong(st.nextToken());
+						long nodes = Long.parseLong(st.nextToken());
+						moves.add(new Move(player, square, decision, millis, nodes));
+					} else if(key.equals("result"))
+						scores = new int[] {Integer.parseInt(st.nextToken()), Integer.parseInt(st.nextToken())};
+					else
+						throw new IllegalArgumentException("unknown item \"" + key + "\"");
+				} catch(RuntimeException re) {
+					throw new IOException(file + ":" + lineNumber + ": " + re.toString());
+				}
+			}
+			if(seed == null || classes[0] == null || classes[1] == null)
+				throw new IOException(file + ": the seed and both players must be recorded");
+			GameRecord record = new GameRecord(seed.longValue(), turnDuration, classes[0], names[0], classes[1], names[1]);
+			record.moves.addAll(moves);
+			record.scores = scores;
+			return record;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,443 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many independent {@link Othello} games in a single JVM.
+ *
+ * <p>Each game is played on its own thread.  If the JVM supports
+ * virtual threads they are used, so thousands of concurrent games
+ * cost little more than their game states; otherwise a cached pool
+ * of ordinary daemon threads is used.  Every game has its own {@link
+ * Othello} instance (and therefore its own time accounting) and its
+ * own {@link UserInterface}, which prefixes its log messages with the
+ * game's identifier.</p>
+ *
+ * <p>Games may either be started directly with {@link
+ * #startGame(OthelloPlayer, OthelloPlayer, long)}, or the server can
+ * run a <em>ladder</em>: agents connect through a local socket
+ * ({@link #listen(int)}) or an in-memory loopback connection ({@link
+ * #connectLoopback(OthelloPlayer)}), and every two waiting agents are
+ * paired into a new game.  When a ladder game ends, its agents are
+ * paired again.  See {@link RemoteOthelloPlayer} for the protocol.</p>
+ */
+public class GameServer {
+	private final ThreadFactory threads;
+	private final boolean virtualThreads;
+	private final ExecutorService executor;
+	private final PrintStream log;
+	private final int turnDuration;
+	private final AtomicLong nextGameId;
+	private final AtomicInteger activeGames;
+	private final AtomicLong completedGames;
+	private final LinkedList<RemoteOthelloPlayer> waiting;
+	private long ladderGamesRemaining;
+	private ServerSocket serverSocket;
+	private volatile SpectatorPublisher spectators;
+
+	/**
+	 * The results of a game hosted by a {@link GameServer}.
+	 */
+	public static class Result {
+		private final long gameId;
+		private final OthelloPlayer player1, player2;
+		private final OthelloPlayer winner;
+		private final GameState finalState;
+		private final long p1timeUsed, p2timeUsed;
+
+		Result(long gameId, OthelloPlayer player1, OthelloPlayer player2, OthelloPlayer winner, GameState finalState, long p1timeUsed, long p2timeUsed) {
+			this.gameId = gameId;
+			this.player1 = player1;
+			this.player2 = player2;
+			this.winner = winner;
+			this.finalState = finalState;
+			this.p1timeUsed = p1timeUsed;
+			this.p2timeUsed = p2timeUsed;
+		}
+
+		/**
+		 * Returns the identifier the server assigned to the game.
+		 */
+		public long getGameId() { return gameId; }
+
+		/**
+		 * Returns player 1.
+		 */
+		public OthelloPlayer getPlayer1() { return player1; }
+
+		/**
+		 * Returns player 2.
+		 */
+		public OthelloPlayer getPlayer2() { return player2; }
+
+		/**
+		 * Returns the winner of the game, or <code>null</code> if it
+		 * was a tie.
+		 */
+		public OthelloPlayer getWinner() { return winner; }
+
+		/**
+		 * Returns the final state of the game.
+		 */
+		public GameState getFinalState() { return finalState; }
+
+		/**
+		 * Returns the total amount of time (in milliseconds) the
+		 * given player used during the game.
+		 */
+		public long getTimeUsed(OthelloPlayer player) {
+			return (player == player1 ? p1timeUsed : p2timeUsed);
+		}
+
+		/**
+		 * Returns a one-line summary of the result.
+		 */
+		public String toString() {
+			return player1 + " " + finalState.getScore(GameState.Player.PLAYER1) + " - " + finalState.getScore(GameState.Player.PLAYER2) + " " + player2 + (winner == null ? " (tie)" : " (winner: " + winner + ")");
+		}
+	}
+
+	/**
+	 * Creates a new game server.
+	 *
+	 * @param turnDuration the amount of time (in seconds) each agent has to make its decision each turn; a value <code>&lt;= 0</code> results in an infinite deadline.
+	 * @param log the stream to which the games log, or <code>null</code> if log messages should be discarded.
+	 */
+	public GameServer(int turnDuration, PrintStream log) {
+		ThreadFactory virtual = newVirtualThreadFactory();
+		if(virtual != null) {
+			threads = virtual;
+			virtualThreads = true;
+		} else {
+			threads = new ThreadFactory() {
+				private final AtomicLong count = new AtomicLong(0);
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "GameServer-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			};
+			virtualThreads = false;
+		}
+		executor = Executors.newCachedThreadPool(threads);
+		this.turnDuration = turnDuration;
+		this.log = log;
+		nextGameId = new AtomicLong(0);
+		activeGames = new AtomicInteger(0);
+		completedGames = new AtomicLong(0);
+		waiting = new LinkedList<RemoteOthelloPlayer>();
+		ladderGamesRemaining = Long.MAX_VALUE;
+		serverSocket = null;
+		spectators = null;
+	}
+
+	/**
+	 * Returns a factory for virtual threads, or <code>null</code> if
+	 * the JVM does not support them.  Reflection is used so that the
+	 * code still compiles and runs on older JVMs.
+	 */
+	private static ThreadFactory newVirtualThreadFactory() {
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Object builder = ofVirtual.invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory)factory.invoke(builder);
+		} catch(Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether or not the games are played on virtual threads.
+	 */
+	public boolean usesVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * Returns the number of games that are currently being played.
+	 */
+	public int getActiveGames() {
+		return activeGames.get();
+	}
+
+	/**
+	 * Returns the number of games that have finished.
+	 */
+	public long getCompletedGames() {
+		return completedGames.get();
+	}
+
+	/**
+	 * Starts a new game between the given players, seeding its random
+	 * number generator with <code>seed</code>.  Note that a player
+	 * instance may only take part in one game at a time.  The players
+	 * are not {@link OthelloPlayer#close() closed} when the game ends,
+	 * so that they can play again.
+	 */
+	public Future<Result> startGame(final OthelloPlayer player1, final OthelloPlayer player2, final long seed) {
+		final long gameId = nextGameId.incrementAndGet();
+		activeGames.incrementAndGet();
+		return executor.submit(new Callable<Result>() {
+			public Result call() {
+				try {
+					return play(gameId, player1, player2, seed);
+				} finally {
+					activeGames.decrementAndGet();
+					completedGames.incrementAndGet();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts a new game between the given players with a randomly
+	 * seeded random number generator.
+	 *
+	 * @see #startGame(OthelloPlayer, OthelloPlayer, long)
+	 */
+	public Future<Result> startGame(OthelloPlayer player1, OthelloPlayer player2) {
+		return startGame(player1, player2, System.nanoTime() ^ nextGameId.get());
+	}
+
+	private Result play(long gameId, OthelloPlayer player1, OthelloPlayer player2, long seed) {
+		ServerUserInterface ui = new ServerUserInterface(gameId, player1, player2, log);
+		player1.setLogger(ui);
+		player2.setLogger(ui);
+		Othello othello = new Othello(player1, player2, ui, seed);
+		othello.setTurnDuration(turnDuration);
+		othello.setCollectGarbageBeforeMoves(false);
+		othello.setSpectatorPublisher(spectators, gameId);
+		OthelloPlayer winner = othello.play();
+		Result result = new Result(gameId, player1, player2, winner, othello.getState(), ui.getTimeUsed(player1), ui.getTimeUsed(player2));
+		ui.log(result.toString(), null);
+		return result;
+	}
+
+	/**
+	 * Streams every game started from now on to the spectators of
+	 * <code>publisher</code>, identified by its game identifier.
+	 */
+	public void setSpectatorPublisher(SpectatorPublisher publisher) {
+		spectators = publisher;
+	}
+
+	/**
+	 * Limits the number of ladder games the server will start.  Once
+	 * the limit is reached, waiting agents are no longer paired.
+	 */
+	public void setLadderGameLimit(long games) {
+		synchronized(waiting) {
+			ladderGamesRemaining = games;
+		}
+	}
+
+	private void enqueue(RemoteOthelloPlayer player) {
+		synchronized(waiting) {
+			if(player.getConnection().isClosed())
+				return;
+			waiting.add(player);
+			while(waiting.size() >= 2 && ladderGamesRemaining > 0) {
+				ladderGamesRemaining--;
+				startLadderGame(waiting.removeFirst(), waiting.removeFirst());
+			}
+		}
+	}
+
+	private void startLadderGame(final RemoteOthelloPlayer player1, final RemoteOthelloPlayer player2) {
+		final long gameId = nextGameId.incrementAndGet();
+		activeGames.incrementAndGet();
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					Result result = play(gameId, player1, player2, System.nanoTime() ^ gameId);
+					player1.gameOver(result.getFinalState());
+					player2.gameOver(result.getFinalState());
+				} catch(RuntimeException re) {
+					if(log != null)
+						log.println("[game " + gameId + "] " + re.toString());
+				} finally {
+					activeGames.decrementAndGet();
+					completedGames.incrementAndGet();
+				}
+				enqueue(player1);
+				enqueue(player2);
+			}
+		});
+	}
+
+	/* waits for the HELLO message and then adds the agent to the ladder */
+	private void accept(final LineConnection connection) {
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					String hello = connection.receive(10000);
+					if(hello == null || !hello.startsWith("HELLO ")) {
+						connection.close();
+						return;
+					}
+					enqueue(new RemoteOthelloPlayer(hello.substring(6).trim(), connection));
+				} catch(Exception e) {
+					connection.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Connects an in-process agent to the ladder through an in-memory
+	 * connection that speaks the same protocol as remote agents.
+	 */
+	public void connectLoopback(OthelloPlayer player) {
+		LineConnection pair[] = LineConnection.loopbackPair();
+		threads.newThread(new RemotePlayerClient(player, pair[1])).start();
+		accept(pair[0]);
+	}
+
+	/**
+	 * Starts accepting ladder agents on the given port of the loopback
+	 * interface.
+	 */
+	public synchronized void listen(int port) throws IOException {
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		final ServerSocket ss = serverSocket;
+		threads.newThread(new Runnable() {
+			public void run() {
+				while(!ss.isClosed()) {
+					try {
+						Socket socket = ss.accept();
+						accept(LineConnection.forSocket(socket, threads));
+					} catch(IOException ioe) {}
+				}
+			}
+		}).start();
+	}
+
+	/**
+	 * Stops accepting agents and disconnects all waiting agents.
+	 * Games that are in progress are allowed to finish.
+	 */
+	public synchronized void shutdown() {
+		if(serverSocket != null) {
+			try {
+				serverSocket.close();
+			} catch(IOException ioe) {}
+			serverSocket = null;
+		}
+		synchronized(waiting) {
+			ladderGamesRemaining = 0;
+			for(RemoteOthelloPlayer player : waiting)
+				player.getConnection().close();
+			waiting.clear();
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * Waits up to <code>timeoutMillis</code> milliseconds for all
+	 * games to finish after a {@link #shutdown()}.
+	 */
+	public boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+		return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Prints command line usage information.
+	 */
+	public static void printUsage() {
+		System.err.println(Othello.getVersionInfo());
+		System.err.println("Usage: GameServer [options]");
+		System.err.println();
+		System.err.println("OPTIONS:");
+		System.err.println("         -p  number The local port on which to accept agents");
+		System.err.println("                    (the default is 2380).");
+		System.err.println("         -d  number Sets the amount of time (in seconds) an agent has to make");
+		System.err.println("                    its decision each turn.  A value <= 0 (the default)");
+		System.err.println("                    results in an infinite deadline.");
+		System.err.println("         -l  class  Connects an in-process agent of the given class to the");
+		System.err.println("                    ladder.  May be given more than once.");
+		System.err.println("         -n  number Stops after the given number of ladder games.");
+		System.err.println("         -q         Do not print the games' log messages.");
+		System.err.println("         -s  number Streams the games to spectators that connect to the given");
+		System.err.println("                    local port (see SpectatorClient).");
+	}
+
+	/**
+	 * Runs a game server hosting a ladder.
+	 */
+	public static void main(String[] args) {
+		int port = 2380;
+		int turnDuration = -1;
+		long games = -1;
+		boolean quiet = false;
+		int spectatorPort = -1;
+		LinkedList<String> loopbackAgents = new LinkedList<String>();
+		try {
+			for(int i=0; i<args.length; i++) {
+				if(args[i].equals("-p"))
+					port = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-d"))
+					turnDuration = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-l"))
+					loopbackAgents.add(args[++i]);
+				else if(args[i].equals("-n"))
+					games = Long.parseLong(args[++i]);
+				else if(args[i].equals("-q"))
+					quiet = true;
+				else if(args[i].equals("-s"))
+					spectatorPort = Integer.parseInt(args[++i]);
+				else
+					throw new IllegalArgumentException("unexpected argument \"" + args[i] + "\"");
+			}
+		} catch(RuntimeException re) {
+			System.err.println("Error: " + re.getMessage() + "\n");
+			printUsage();
+			System.exit(1);
+		}
+
+		GameServer server = new GameServer(turnDuration, quiet ? null : System.out);
+		if(games >= 0)
+			server.setLadderGameLimit(games);
+		System.out.println(Othello.getVersionInfo());
+		System.out.println("Hosting games on " + (server.usesVirtualThreads() ? "virtual" : "platform") + " threads.");
+		try {
+			if(spectatorPort >= 0) {
+				server.setSpectatorPublisher(new SpectatorPublisher(spectatorPort));
+				System.out.println("Accepting spectators on port " + spectatorPort + ".");
+			}
+			server.listen(port);
+			System.out.println("Accepting agents on port " + port + ".");
+			int count = 0;
+			for(String agent : loopbackAgents) {
+				String className = Othello.getPlayerClassName(agent);
+				if(className == null)
+					System.exit(1);
+				server.connectLoopback(Othello.instantiatePlayer(className, Othello.getSimplifiedClassName(className) + (++count)));
+			}
+			if(games >= 0) {
+				while(server.getCompletedGames() < games)
+					Thread.sleep(100);
+				server.shutdown();
+				server.awaitTermination(10000);
+				System.exit(0);
+			}
+		} catch(Exception e) {
+			System.err.println("Error: " + e.toString());
+			System.exit(1);
+		}
+	}
+}
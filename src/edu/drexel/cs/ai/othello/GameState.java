@@ -1,9 +1,14 @@
 package edu.drexel.cs.ai.othello;
 
 import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.AbstractSet;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.SplittableRandom;
 
 
 /**
@@ -18,10 +23,23 @@ public class GameState implements Cloneable {
 	private GameState previous;
 	private Square move;
 	private Random random;
+	private SplittableRandom splitter; /* shared by all of the states of a game, like random */
 	private HashSet<Square> validMoves1;
 	private HashSet<Square> validMoves2;
-	private int p1score; /* cache the scores after they're calculated for the first time */
+	private int p1score; /* the disc counts are maintained incrementally by applyMove */
 	private int p2score;
+	private int emptyCount;
+	private long empties; /* bit row*8+col is set iff the square is empty */
+	private long p1discs; /* likewise for the discs of each player */
+	private long p2discs;
+	/* the evaluation features are computed lazily and cached */
+	private long p1stable;
+	private long p2stable;
+	private boolean p1stableKnown;
+	private boolean p2stableKnown;
+	private long emptyRegions[];
+	private long zobrist;
+	private boolean zobristKnown;
 	private BigInteger hash;
 
 	/**
@@ -78,6 +96,7 @@ public class GameState implements Cloneable {
 	 */
 	public GameState() {
 		random = new Random();
+		splitter = new SplittableRandom();
 		init();
 	}
 
@@ -89,9 +108,44 @@ public class GameState implements Cloneable {
 	 */
 	public GameState(long randomNumberGeneratorSeed) {
 		random = new Random(randomNumberGeneratorSeed);
+		splitter = new SplittableRandom(randomNumberGeneratorSeed);
 		init();
 	}
 
+	/**
+	 * Creates a new GameState with the given board configuration and
+	 * current player, without any history.  The board is copied.
+	 */
+	GameState(Player board[][], Player player) {
+		random = new Random();
+		splitter = new SplittableRandom();
+		init();
+		for(int i=0; i<8; i++)
+			for(int j=0; j<8; j++)
+				this.board[i][j] = board[i][j];
+		this.player = player;
+		countDiscs();
+	}
+
+	/**
+	 * Creates a new GameState from the bit masks of the players'
+	 * discs, without any history.
+	 *
+	 * @see #getDiscs(Player)
+	 */
+	static GameState fromDiscs(long player1Discs, long player2Discs, Player player) {
+		Player board[][] = new Player[8][8];
+		for(int i=0; i<64; i++) {
+			if((player1Discs & (1L << i)) != 0)
+				board[i / 8][i % 8] = Player.PLAYER1;
+			else if((player2Discs & (1L << i)) != 0)
+				board[i / 8][i % 8] = Player.PLAYER2;
+			else
+				board[i / 8][i % 8] = Player.EMPTY;
+		}
+		return new GameState(board, player);
+	}
+
 	private void init() {
 		board = new Player[8][8];
 		for(int i=0; i<8; i++)
@@ -113,9 +167,35 @@ public class GameState implements Cloneable {
 		move = null;
 		validMoves1 = null;
 		validMoves2 = null;
-		p1score = -1;
-		p2score = -1;
 		hash = null;
+		countDiscs();
+	}
+
+	/* recounts the discs from scratch; applyMove updates the counts incrementally instead */
+	private void countDiscs() {
+		p1score = 0;
+		p2score = 0;
+		emptyCount = 0;
+		empties = 0;
+		p1discs = 0;
+		p2discs = 0;
+		p1stableKnown = false;
+		p2stableKnown = false;
+		emptyRegions = null;
+		for(int i=0; i<8; i++) {
+			for(int j=0; j<8; j++) {
+				if(board[i][j] == Player.PLAYER1) {
+					p1score++;
+					p1discs |= 1L << (i*8 + j);
+				} else if(board[i][j] == Player.PLAYER2) {
+					p2score++;
+					p2discs |= 1L << (i*8 + j);
+				} else {
+					emptyCount++;
+					empties |= 1L << (i*8 + j);
+				}
+			}
+		}
 	}
 
 	/**
@@ -123,7 +203,13 @@ public class GameState implements Cloneable {
 	 * copy; preceding states are not cloned.
 	 */
 	public Object clone() {
-		GameState gs = new GameState();
+		GameState gs;
+		try {
+			/* avoid the constructors, which create a new random number generator */
+			gs = (GameState)super.clone();
+		} catch(CloneNotSupportedException cnse) {
+			throw new InternalError(cnse.toString());
+		}
 		gs.board = new Player[8][8];
 		for(int i=0; i<8; i++)
 			for(int j=0; j<8; j++)
@@ -132,11 +218,20 @@ public class GameState implements Cloneable {
 		gs.previous = previous;
 		gs.move = move;
 		gs.random = random;
+		gs.splitter = splitter;
 		gs.validMoves1 = null;
 		gs.validMoves2 = null;
-		gs.p1score = -1; /* force a recount of the scores */
-		gs.p2score = -1;
-		gs.hash = hash;
+		gs.p1score = p1score;
+		gs.p2score = p2score;
+		gs.emptyCount = emptyCount;
+		gs.empties = empties;
+		gs.p1discs = p1discs;
+		gs.p2discs = p2discs;
+		gs.p1stableKnown = false;
+		gs.p2stableKnown = false;
+		gs.emptyRegions = null;
+		gs.zobristKnown = false;
+		gs.hash = null; /* the clone's board or player may be changed */
 		return gs;
 	}
 
@@ -154,6 +249,42 @@ public class GameState implements Cloneable {
 		return random;
 	}
 
+	/**
+	 * Returns a new random number generator that is split off from
+	 * this game's splittable generator.  Unlike the generator returned
+	 * by {@link #getRandom()}, which is shared by every state of the
+	 * game and synchronizes on each call, the returned generator is
+	 * owned by the caller and is not thread-safe.  An agent that runs
+	 * simulations on several threads should therefore split one
+	 * generator per thread.
+	 *
+	 * <p>If the game was created with a seed, the sequence of
+	 * generators returned by successive calls is determined by the
+	 * seed, so seeded games remain reproducible as long as the calls
+	 * are made in a deterministic order (<i>e.g.</i> from a single
+	 * thread before the simulation threads are started).</p>
+	 */
+	public SplittableRandom splitRandom() {
+		synchronized(splitter) {
+			return splitter.split();
+		}
+	}
+
+	/**
+	 * Replaces the random number generators of this state and of every
+	 * state that precedes it with generators seeded by <code>seed</code>,
+	 * which they then share.  This is used by a {@link SandboxWorker}
+	 * so that a decoded state is as reproducible as the driver's.
+	 */
+	void setRandomSeed(long seed) {
+		Random r = new Random(seed);
+		SplittableRandom s = new SplittableRandom(seed);
+		for(GameState gs = this; gs != null; gs = gs.previous) {
+			gs.random = r;
+			gs.splitter = s;
+		}
+	}
+
 	/**
 	 * Returns the opponent of a player.
 	 */
@@ -329,12 +460,11 @@ public class GameState implements Cloneable {
 		if(moves != null)
 			return moves;
 		moves = new HashSet<Square>();
-		for(int i=0; i<8; i++) {
-			for(int j=0; j<8; j++) {
-				Square m = new Square(i,j);
-				if(isLegalMove(m, player))
-					moves.add(m);
-			}
+		long valid = getValidMoveSquares(player);
+		while(valid != 0) {
+			int square = Long.numberOfTrailingZeros(valid);
+			valid &= valid - 1;
+			moves.add(new Square(square / 8, square % 8));
 		}
 		if(player == Player.PLAYER1)
 			validMoves1 = moves;
@@ -343,27 +473,161 @@ public class GameState implements Cloneable {
 		return moves;
 	}
 
+	/**
+	 * Returns a bit mask of the valid moves of <code>player</code>
+	 * from this state, in which bit <code>row*8+col</code> is set if
+	 * and only if moving on that square is legal.
+	 *
+	 * @see #getValidMoves(Player)
+	 */
+	public long getValidMoveSquares(Player player) {
+		if(player == Player.PLAYER1)
+			return BitBoard.moves(p1discs, p2discs);
+		else if(player == Player.PLAYER2)
+			return BitBoard.moves(p2discs, p1discs);
+		else
+			return 0;
+	}
+
 	/**
 	 * Returns the number of spaces currently owned by the given
 	 * player.
 	 */
 	public int getScore(Player player) {
-		if(player == Player.PLAYER1 && p1score >= 0)
+		if(player == Player.PLAYER1)
 			return p1score;
-		else if(player == Player.PLAYER2 && p2score >= 0)
+		else if(player == Player.PLAYER2)
 			return p2score;
-		int count = 0;
-		for(int i=0; i<8; i++) {
-			for(int j=0; j<8; j++) {
-				if(board[i][j] == player)
-					count++;
-			}
-		}
+		else
+			return emptyCount;
+	}
+
+	/**
+	 * Returns the number of empty squares on the board.
+	 */
+	public int getEmptyCount() {
+		return emptyCount;
+	}
+
+	/**
+	 * Returns a bit mask of the empty squares on the board, in which
+	 * bit <code>row*8+col</code> is set if and only if that square is
+	 * empty.
+	 */
+	public long getEmptySquares() {
+		return empties;
+	}
+
+	/**
+	 * Returns the number of discs that have been placed on the board
+	 * since the start of the game (<i>i.e.</i> <code>0</code> in the
+	 * initial state).  Passes are not counted.
+	 */
+	public int getMoveNumber() {
+		return 60 - emptyCount;
+	}
+
+	/**
+	 * Returns a bit mask of the discs of the given player, in which
+	 * bit <code>row*8+col</code> is set if and only if the player owns
+	 * that square.
+	 */
+	public long getDiscs(Player player) {
 		if(player == Player.PLAYER1)
-			p1score = count;
+			return p1discs;
 		else if(player == Player.PLAYER2)
-			p2score = count;
-		return count;
+			return p2discs;
+		else
+			return empties;
+	}
+
+	/**
+	 * Returns a bit mask of the discs of the given player that can
+	 * never be flipped for the rest of the game.  A disc is considered
+	 * stable if, along each of the four lines through it, the line is
+	 * full or the disc is anchored by the edge of the board or another
+	 * stable disc of the same player.  This is a conservative
+	 * estimate; some stable discs may be missed.  The result is cached.
+	 *
+	 * @see #getDiscs(Player)
+	 */
+	public long getStableDiscs(Player player) {
+		if(player == Player.PLAYER1) {
+			if(!p1stableKnown) {
+				p1stable = BitBoard.stable(p1discs, ~empties);
+				p1stableKnown = true;
+			}
+			return p1stable;
+		} else if(player == Player.PLAYER2) {
+			if(!p2stableKnown) {
+				p2stable = BitBoard.stable(p2discs, ~empties);
+				p2stableKnown = true;
+			}
+			return p2stable;
+		} else
+			return 0;
+	}
+
+	/**
+	 * Returns a bit mask of the frontier discs of the given player:
+	 * those adjacent to at least one empty square.
+	 *
+	 * @see #getDiscs(Player)
+	 */
+	public long getFrontierDiscs(Player player) {
+		return getDiscs(player) & BitBoard.neighbors(empties);
+	}
+
+	/**
+	 * Returns the potential mobility of the given player: the number
+	 * of empty squares adjacent to at least one of the opponent's
+	 * discs.  These are the squares on which the player might be able
+	 * to move in the future.
+	 */
+	public int getPotentialMobility(Player player) {
+		return Long.bitCount(empties & BitBoard.neighbors(getDiscs(getOpponent(player))));
+	}
+
+	/**
+	 * Returns the regions of empty squares on the board, each as a bit
+	 * mask.  Two empty squares are in the same region if one can be
+	 * reached from the other by steps (in any of the eight
+	 * directions) through empty squares.  In the endgame, the player
+	 * that gets the last move in a region with an odd number of empty
+	 * squares usually gains an advantage (<i>parity</i>).
+	 *
+	 * @see #getOddEmptyRegionCount()
+	 */
+	public long[] getEmptyRegions() {
+		if(emptyRegions == null) {
+			long regions[] = new long[emptyCount];
+			int numRegions = 0;
+			long remaining = empties;
+			while(remaining != 0) {
+				long region = BitBoard.floodFill(Long.lowestOneBit(remaining), remaining);
+				regions[numRegions++] = region;
+				remaining &= ~region;
+			}
+			long r[] = new long[numRegions];
+			System.arraycopy(regions, 0, r, 0, numRegions);
+			emptyRegions = r;
+		}
+		return emptyRegions.clone();
+	}
+
+	/**
+	 * Returns the number of regions of empty squares that contain an
+	 * odd number of squares.
+	 *
+	 * @see #getEmptyRegions()
+	 */
+	public int getOddEmptyRegionCount() {
+		getEmptyRegions();
+		int odd = 0;
+		for(int i=0; i<emptyRegions.length; i++)
+			if((Long.bitCount(emptyRegions[i]) & 1) != 0)
+				odd++;
+		return odd;
 	}
 
 	/**
@@ -422,6 +686,7 @@ public class GameState implements Cloneable {
 	 * @see #applyMove(Square, boolean)
 	 */
 	public AbstractSet<GameState> getSuccessors(boolean includePreviousStateReference) {
+		FlightRecorderEvents.MoveGeneration event = FlightRecorderEvents.beginMoveGeneration();
 		Square moves[] = getValidMoves().toArray(new Square[0]);
 		HashSet<GameState> successors = new HashSet<GameState>(moves.length);
 		for(int i=0; i<moves.length; i++) {
@@ -432,9 +697,27 @@ public class GameState implements Cloneable {
 				System.err.println(ime.toString());
 			}
 		}
+		if(event != null) {
+			event.successors = successors.size();
+			FlightRecorderEvents.end(event);
+		}
 		return successors;
 	}
 
+	/**
+	 * Appends all of the successors of this state to
+	 * <code>arena</code>, in increasing order of their move's square
+	 * index, without creating any objects.  This is much faster than
+	 * {@link #getSuccessors(boolean)} for algorithms that expand many
+	 * states.
+	 *
+	 * @return the number of successors appended.
+	 * @see SuccessorArena
+	 */
+	public int getSuccessors(SuccessorArena arena) {
+		return arena.expand(this);
+	}
+
 	/**
 	 * Equivalent to {@link #applyMove(Square,boolean) applyMove(move, true)}.
 	 *
@@ -463,10 +746,12 @@ public class GameState implements Cloneable {
 	 *
 	 * @param includePreviousStateReference whether or not the returned state should have a back-reference to <code>this</code>.
 	 * @throws InvalidMoveException if <code>move</code> is not a valid move from this state.
+	 * @throws NodeBudgetExceededError if the agent that is moving has exhausted its node budget.
 	 */
 	public GameState applyMove(Square move, boolean includePreviousStateReference) throws InvalidMoveException {
 		Square bracket;
 		boolean found_good_direction = false;
+		long flips = 0;
 		int row;
 		int col;
 		GameState newState = (GameState)clone();
@@ -486,8 +771,10 @@ public class GameState implements Cloneable {
 			found_good_direction = true;
 			row = move.row;
 			col = move.col;
-			while(--row != bracket.row)
+			while(--row != bracket.row) {
 				newState.board[row][col] = player;
+				flips |= 1L << (row*8 + col);
+			}
 		}
 
 		bracket = wouldFlip(move, player, Direction.DOWN);
@@ -495,8 +782,10 @@ public class GameState implements Cloneable {
 			found_good_direction = true;
 			row = move.row;
 			col = move.col;
-			while(++row != bracket.row)
+			while(++row != bracket.row) {
 				newState.board[row][col] = player;
+				flips |= 1L << (row*8 + col);
+			}
 		}
 
 		bracket = wouldFlip(move, player, Direction.LEFT);
@@ -504,8 +793,10 @@ public class GameState implements Cloneable {
 			found_good_direction = true;
 			row = move.row;
 			col = move.col;
-			while(--col != bracket.col)
+			while(--col != bracket.col) {
 				newState.board[row][col] = player;
+				flips |= 1L << (row*8 + col);
+			}
 		}
 
 		bracket = wouldFlip(move, player, Direction.RIGHT);
@@ -513,8 +804,10 @@ public class GameState implements Cloneable {
 			found_good_direction = true;
 			row = move.row;
 			col = move.col;
-			while(++col != bracket.col)
+			while(++col != bracket.col) {
 				newState.board[row][col] = player;
+				flips |= 1L << (row*8 + col);
+			}
 		}
 
 		bracket = wouldFlip(move, player, Direction.UPLEFT);
@@ -522,8 +815,10 @@ public class GameState implements Cloneable {
 			found_good_direction = true;
 			row = move.row;
 			col = move.col;
-			while(--row != bracket.row && --col != bracket.col)
+			while(--row != bracket.row && --col != bracket.col) {
 				newState.board[row][col] = player;
+				flips |= 1L << (row*8 + col);
+			}
 		}
 
 		bracket = wouldFlip(move, player, Direction.UPRIGHT);
@@ -531,8 +826,10 @@ public class GameState implements Cloneable {
 			found_good_direction = true;
 			row = move.row;
 			col = move.col;
-			while(--row != bracket.row && ++col != bracket.col)
+			while(--row != bracket.row && ++col != bracket.col) {
 				newState.board[row][col] = player;
+				flips |= 1L << (row*8 + col);
+			}
 		}
 
 		bracket = wouldFlip(move, player, Direction.DOWNLEFT);
@@ -540,8 +837,10 @@ public class GameState implements Cloneable {
 			found_good_direction = true;
 			row = move.row;
 			col = move.col;
-			while(++row != bracket.row && --col != bracket.col)
+			while(++row != bracket.row && --col != bracket.col) {
 				newState.board[row][col] = player;
+				flips |= 1L << (row*8 + col);
+			}
 		}
 
 		bracket = wouldFlip(move, player, Direction.DOWNRIGHT);
@@ -549,8 +848,10 @@ public class GameState implements Cloneable {
 			found_good_direction = true;
 			row = move.row;
 			col = move.col;
-			while(++row != bracket.row && ++col != bracket.col)
+			while(++row != bracket.row && ++col != bracket.col) {
 				newState.board[row][col] = player;
+				flips |= 1L << (row*8 + col);
+			}
 		}
 
 		if(found_good_direction)
@@ -558,6 +859,25 @@ public class GameState implements Cloneable {
 		else
 			throw new InvalidMoveException(move, player, "This move does not flip any of the opponents' pieces!");
 
+		/* only legal moves generate nodes */
+		NodeBudget.charge(1);
+
+		long placed = 1L << (move.row*8 + move.col);
+		int flipped = Long.bitCount(flips);
+		if(player == Player.PLAYER1) {
+			newState.p1score += flipped + 1;
+			newState.p2score -= flipped;
+			newState.p1discs |= flips | placed;
+			newState.p2discs &= ~flips;
+		} else {
+			newState.p2score += flipped + 1;
+			newState.p1score -= flipped;
+			newState.p2discs |= flips | placed;
+			newState.p1discs &= ~flips;
+		}
+		newState.emptyCount--;
+		newState.empties &= ~placed;
+
 		newState.player = getOpponent(player);
 
 		if(newState.getValidMoves().size() <= 0)
@@ -603,17 +923,247 @@ public class GameState implements Cloneable {
 </pre></p>
 	 */
 	public String toString() {
-		String s = "    a b c d e f g h   [@=" + getScore(Player.PLAYER1) + " O=" + getScore(Player.PLAYER2) + "]\n";
+		StringBuilder sb = new StringBuilder(200);
+		sb.append("    a b c d e f g h   [@=").append(getScore(Player.PLAYER1)).append(" O=").append(getScore(Player.PLAYER2)).append("]\n");
 		for(int i=0; i<8; i++) {
-			s += "  " + i;
+			sb.append("  ").append(i);
 			for(int j=0; j<8; j++) {
-				Player p = getSquare(i, j);
-				s += " " + (p == Player.PLAYER1 ? "@" : (p == Player.PLAYER2 ? "O" : "."));
+				long bit = 1L << (i*8 + j);
+				sb.append(' ').append((p1discs & bit) != 0 ? '@' : ((p2discs & bit) != 0 ? 'O' : '.'));
 			}
 			if(i < 7)
-				s += "\n";
+				sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The version of the binary encoding written by {@link
+	 * #writeTo(ByteBuffer, boolean)}.
+	 */
+	public static final byte ENCODING_VERSION = 1;
+	private static final int ENCODING_PLAYER2 = 1; /* player 2 is to move */
+	private static final int ENCODING_HISTORY = 2; /* the moves leading to the state follow */
+	/* the version and flags, and the discs of each player */
+	private static final int ENCODED_POSITION_SIZE = 1 + 1 + 8 + 8;
+
+	/* returns the earliest state that can be reached through getPreviousState() */
+	private GameState getRoot() {
+		GameState root = this;
+		while(root.previous != null)
+			root = root.previous;
+		return root;
+	}
+
+	/* returns the number of moves between the earliest state that can be reached through getPreviousState() and this state */
+	private int getHistoryLength() {
+		int length = 0;
+		for(GameState s = this; s.previous != null; s = s.previous)
+			length++;
+		return length;
+	}
+
+	/**
+	 * Returns the number of bytes {@link #writeTo(ByteBuffer, boolean)}
+	 * will write.
+	 */
+	public int getEncodedSize(boolean includeHistory) {
+		if(!includeHistory)
+			return ENCODED_POSITION_SIZE;
+		else
+			return 2 * ENCODED_POSITION_SIZE + 1 + getHistoryLength();
+	}
+
+	/* writes the version, the flags, and the discs */
+	private void writePosition(ByteBuffer buffer, int flags) {
+		buffer.put(ENCODING_VERSION);
+		buffer.put((byte)(flags | (player == Player.PLAYER2 ? ENCODING_PLAYER2 : 0)));
+		buffer.putLong(p1discs);
+		buffer.putLong(p2discs);
+	}
+
+	/**
+	 * Writes a compact binary encoding of this state to
+	 * <code>buffer</code>, starting at its position.  The encoding is
+	 * always big-endian, regardless of the order of the buffer, and
+	 * consists of:
+	 * <ol>
+	 * <li>{@link #ENCODING_VERSION} (a <code>byte</code>);</li>
+	 * <li>a <code>byte</code> of flags: bit 0 is set if player 2 is to
+	 * move, and bit 1 is set if the history follows;</li>
+	 * <li>the discs of player 1 and of player 2 (two
+	 * <code>long</code>s, as in {@link #getDiscs(Player)});</li>
+	 * <li>if <code>includeHistory</code> is <code>true</code>, the
+	 * earliest preceding state (encoded in the same way, without its
+	 * own history), the number of moves from it to this state (an
+	 * unsigned <code>byte</code>), and the square index
+	 * (<code>row*8+col</code>) of each of those moves.</li>
+	 * </ol>
+	 *
+	 * <p>Without the history the encoding is 18 bytes.  Nothing is
+	 * allocated; the state is written directly into the buffer.</p>
+	 *
+	 * @throws BufferOverflowException if fewer than {@link #getEncodedSize(boolean) getEncodedSize(includeHistory)} bytes remain in the buffer.
+	 * @see #readFrom(ByteBuffer)
+	 */
+	public void writeTo(ByteBuffer buffer, boolean includeHistory) throws BufferOverflowException {
+		/* nothing is written unless all of it fits */
+		if(buffer.remaining() < getEncodedSize(includeHistory))
+			throw new BufferOverflowException();
+		ByteOrder order = buffer.order();
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		try {
+			if(!includeHistory) {
+				writePosition(buffer, 0);
+				return;
+			}
+			int length = getHistoryLength();
+			writePosition(buffer, ENCODING_HISTORY);
+			getRoot().writePosition(buffer, 0);
+			buffer.put((byte)length);
+			/* the moves are found from last to first, so they are written backwards */
+			int end = buffer.position() + length;
+			int i = end;
+			for(GameState s = this; s.previous != null; s = s.previous)
+				buffer.put(--i, (byte)(s.move.row*8 + s.move.col));
+			buffer.position(end);
+		} finally {
+			buffer.order(order);
+		}
+	}
+
+	/* reads the flags and the discs written by writePosition */
+	private static GameState readPosition(ByteBuffer buffer, int flags[]) {
+		byte version = buffer.get();
+		if(version != ENCODING_VERSION)
+			throw new IllegalArgumentException("unsupported GameState encoding version " + version);
+		flags[0] = buffer.get();
+		long p1 = buffer.getLong();
+		long p2 = buffer.getLong();
+		if((p1 & p2) != 0)
+			throw new IllegalArgumentException("the encoded players' discs overlap");
+		return fromDiscs(p1, p2, ((flags[0] & ENCODING_PLAYER2) != 0 ? Player.PLAYER2 : Player.PLAYER1));
+	}
+
+	/**
+	 * Reads a state written by {@link #writeTo(ByteBuffer, boolean)}
+	 * from <code>buffer</code>, starting at its position.  The state
+	 * is equal to the one that was written and, if the history was
+	 * written, so are all of its preceding states (back to the
+	 * earliest one that was written) and their moves.  The state has
+	 * its own random number generator.
+	 *
+	 * @throws IllegalArgumentException if the encoding is invalid.
+	 * @throws BufferUnderflowException if the buffer ends before the encoding does.
+	 */
+	public static GameState readFrom(ByteBuffer buffer) throws BufferUnderflowException {
+		ByteOrder order = buffer.order();
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		try {
+			int flags[] = new int[1];
+			GameState state = readPosition(buffer, flags);
+			if((flags[0] & ENCODING_HISTORY) == 0)
+				return state;
+			GameState s = readPosition(buffer, new int[1]);
+			int length = buffer.get() & 0xFF;
+			for(int i=0; i<length; i++) {
+				int square = buffer.get();
+				if(square < 0 || square >= 64)
+					throw new IllegalArgumentException("invalid square " + square + " in the encoded history");
+				try {
+					s = s.applyMove(new Square(square / 8, square % 8));
+				} catch(InvalidMoveException ime) {
+					throw new IllegalArgumentException("invalid move in the encoded history: " + ime.getMessage());
+				}
+			}
+			if(s.p1discs != state.p1discs || s.p2discs != state.p2discs || s.player != state.player)
+				throw new IllegalArgumentException("the encoded history does not lead to the encoded state");
+			return s;
+		} finally {
+			buffer.order(order);
+		}
+	}
+
+	/**
+	 * Returns a compact, human-readable representation of this state,
+	 * analogous to the Forsyth-Edwards notation of chess: the rows
+	 * from 0 to 7 are separated by <code>/</code>, and each row lists
+	 * its squares from column <code>a</code> to <code>h</code> with
+	 * <code>@</code> for player 1, <code>O</code> for player 2, and a
+	 * digit for a run of empty squares.  The board is followed by a
+	 * space and the player to move.  For example, the initial state
+	 * in which player 1 moves first is
+	 * <code>8/8/8/3O@3/3@O3/8/8/8 @</code>.
+	 *
+	 * @see #fromFEN(String)
+	 */
+	public String toFEN() {
+		StringBuilder sb = new StringBuilder(72);
+		for(int row=0; row<8; row++) {
+			if(row > 0)
+				sb.append('/');
+			int empty = 0;
+			for(int col=0; col<8; col++) {
+				long bit = 1L << (row*8 + col);
+				if(((p1discs | p2discs) & bit) == 0) {
+					empty++;
+					continue;
+				}
+				if(empty > 0)
+					sb.append((char)('0' + empty));
+				empty = 0;
+				sb.append((p1discs & bit) != 0 ? '@' : 'O');
+			}
+			if(empty > 0)
+				sb.append((char)('0' + empty));
+		}
+		sb.append(' ').append(player == Player.PLAYER1 ? '@' : 'O');
+		return sb.toString();
+	}
+
+	/**
+	 * Parses a state written by {@link #toFEN()}.  The state has no
+	 * history and its own random number generator.
+	 *
+	 * @throws IllegalArgumentException if <code>fen</code> is not a valid state.
+	 */
+	public static GameState fromFEN(String fen) {
+		long p1 = 0;
+		long p2 = 0;
+		int row = 0;
+		int col = 0;
+		int i;
+		for(i=0; i<fen.length() && fen.charAt(i) != ' '; i++) {
+			char c = fen.charAt(i);
+			if(c == '/') {
+				if(col != 8)
+					throw new IllegalArgumentException("row " + row + " of \"" + fen + "\" does not have 8 squares");
+				row++;
+				col = 0;
+				continue;
+			}
+			if(row > 7)
+				throw new IllegalArgumentException("\"" + fen + "\" has more than 8 rows");
+			if(c >= '1' && c <= '8')
+				col += c - '0';
+			else if(c == '@' || c == 'O') {
+				if(col < 8) {
+					if(c == '@')
+						p1 |= 1L << (row*8 + col);
+					else
+						p2 |= 1L << (row*8 + col);
+				}
+				col++;
+			} else
+				throw new IllegalArgumentException("unexpected character '" + c + "' in \"" + fen + "\"");
+			if(col > 8)
+				throw new IllegalArgumentException("row " + row + " of \"" + fen + "\" has more than 8 squares");
 		}
-		return s;
+		if(row != 7 || col != 8)
+			throw new IllegalArgumentException("\"" + fen + "\" does not have 8 rows of 8 squares");
+		if(i != fen.length() - 2 || (fen.charAt(i + 1) != '@' && fen.charAt(i + 1) != 'O'))
+			throw new IllegalArgumentException("\"" + fen + "\" does not end with the player to move");
+		return fromDiscs(p1, p2, (fen.charAt(i + 1) == '@' ? Player.PLAYER1 : Player.PLAYER2));
 	}
 
 	/**
@@ -662,11 +1212,13 @@ public class GameState implements Cloneable {
 			hash = (player == Player.PLAYER1 ? BigInteger.ZERO : BigInteger.ONE);
 			int i, j, idx = 0;
 			if(multiplier == null) {
+				/* fill the table before publishing it, since other threads may be hashing too */
 				BigInteger three = new BigInteger("3");
-				multiplier = new BigInteger[64];
-				multiplier[0] = three;
+				BigInteger m[] = new BigInteger[64];
+				m[0] = three;
 				for(i=1; i<64; i++)
-					multiplier[i] = multiplier[i-1].multiply(three);
+					m[i] = m[i-1].multiply(three);
+				multiplier = m;
 			}
 			for(i=0; i<8; i++) {
 				for(j=0; j<8; j++) {
@@ -674,13 +1226,51 @@ public class GameState implements Cloneable {
 					if(p == Player.EMPTY)
 						idx++;
 					else
-						hash.add(multiplier[idx++].multiply(p == Player.PLAYER1 ? BigInteger.ONE : two));
+						hash = hash.add(multiplier[idx++].multiply(p == Player.PLAYER1 ? BigInteger.ONE : two));
 				}
 			}
 		}
 		return hash;
 	}
 
+	/**
+	 * Returns a 64-bit Zobrist hash of this state's board and current
+	 * player.  Unlike {@link #uniqueHashCode()}, distinct states may
+	 * (very rarely) share a hash, but it is cheap to compute and
+	 * compare, and it is the same in every run of the program.  It is
+	 * the key used by {@link EvaluationCache}.  The result is cached.
+	 *
+	 * @see SuccessorArena#getZobristHash(int)
+	 */
+	public long getZobristHash() {
+		if(!zobristKnown) {
+			zobrist = BitBoard.zobrist(p1discs, p2discs, player == Player.PLAYER1);
+			zobristKnown = true;
+		}
+		return zobrist;
+	}
+
+	/**
+	 * Returns the exact final disc differential (the discs of the
+	 * player to move minus those of its opponent) if both players
+	 * play perfectly from this state, if it is known: either because
+	 * the game is over, or because the position has been solved and
+	 * stored in the {@link EndgameDatabase#getDefault() default}
+	 * endgame database.  Otherwise this returns {@link
+	 * EndgameDatabase#UNKNOWN}.  Agents can call this before searching
+	 * to avoid solving a common endgame again.
+	 *
+	 * @see EndgameSolver
+	 */
+	public int getSolvedScore() {
+		long own = (player == Player.PLAYER1 ? p1discs : p2discs);
+		long opponent = (player == Player.PLAYER1 ? p2discs : p1discs);
+		if(BitBoard.moves(own, opponent) == 0 && BitBoard.moves(opponent, own) == 0)
+			return Long.bitCount(own) - Long.bitCount(opponent);
+		EndgameDatabase database = EndgameDatabase.getDefault();
+		return (database == null ? EndgameDatabase.UNKNOWN : database.get(own, opponent));
+	}
+
 	/**
 	 * Equivalent to calling {@link java.lang.Object#hashCode() hashCode()} on the result of {@link #uniqueHashCode() uniqueHashCode()}.
 	 *
@@ -6,14 +6,19 @@ import java.awt.Dialog;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Frame;
-import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Vector;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
@@ -27,18 +32,55 @@ import javax.swing.JSplitPane;
 import javax.swing.JTextField;
 import javax.swing.JTextPane;
 import javax.swing.SpringLayout;
+import javax.swing.Timer;
 import javax.swing.border.BevelBorder;
 import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Element;
 import javax.swing.text.MutableAttributeSet;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 
 /**
+ * A Swing user interface.  The callbacks of {@link UserInterface} and
+ * {@link Logger} may be called from any thread (usually the game's
+ * thread or its timer); they only record the update, and the Swing
+ * components are updated on the event dispatch thread at most {@link
+ * #FRAMES_PER_SECOND} times per second.  Only the latest state and
+ * times are shown, so the game never waits for the user interface.
+ *
+ * <p>Log messages are added to a lock-free buffer and appended to the
+ * log in batches, which only keeps the last {@link #LOG_LINES}
+ * lines.  Each agent may log at most {@link #LOG_MESSAGES_PER_SECOND}
+ * messages per second; the rest are dropped (and counted).  The log
+ * can also be written to a {@link #setLogFile(File, long, int)
+ * rotating file}.</p>
+ *
  * @author <a href="http://www.sultanik.com" target="_blank">Evan A. Sultanik</a>
  */
-public class GraphicalUserInterface extends JFrame implements UserInterface, Logger {
+public class GraphicalUserInterface extends JFrame implements UserInterface, ResourceUsageListener, Logger {
 	private static final long serialVersionUID = 1L;
+	/**
+	 * The maximum rate at which the components are updated.
+	 */
+	public static final int FRAMES_PER_SECOND = 30;
+	/**
+	 * The number of lines of the log that are kept.
+	 */
+	public static final int LOG_LINES = 1000;
+	/**
+	 * The maximum number of messages each agent may log per second.
+	 */
+	public static final int LOG_MESSAGES_PER_SECOND = 200;
+	/* the number of messages that may wait to be shown */
+	private static final int LOG_BUFFER_CAPACITY = 10000;
+	/* the number of batches of messages that may wait to be written to the log file */
+	private static final int LOG_FILE_QUEUE_CAPACITY = 100;
+	/* how long the JVM may wait at exit for the log file to be written */
+	private static final long LOG_FILE_CLOSE_MILLIS = 5000;
+	/* queued after the last batch to make the log file writer close the file and stop */
+	private static final List<LogBuffer.Entry> LOG_FILE_END = new ArrayList<LogBuffer.Entry>();
 	GameState state;
 	OthelloPanel panel;
 	private OthelloPlayer player1, player2;
@@ -48,17 +90,26 @@ public class GraphicalUserInterface extends JFrame implements UserInterface, Log
 	private JLabel score1, score2;
 	private JLabel timeUsed1, timeUsed2;
 	private JLabel timeRemaining1, timeRemaining2;
+	private JLabel cpuUsed1, cpuUsed2;
 	private JLabel arrow1, arrow2;
-	private LinkedList<MessageSourcePair> logQueue;
-
-	private class MessageSourcePair {
-		public String message;
-		public Object source;
-		public MessageSourcePair(String m, Object s) {
-			message = m;
-			source = s;
-		}
-	}
+
+	/* the updates that have not yet been shown; guarded by pendingLock */
+	private final Object pendingLock;
+	private GameState pendingState;
+	private OthelloPlayer pendingRemainingPlayer;
+	private int pendingSecondsRemaining;
+	private long pendingTimeUsed[];
+	private long pendingCpuUsed[];
+	private long pendingBytesAllocated[];
+	private boolean pendingResources[];
+	private final AtomicBoolean flushScheduled;
+	private final Timer flushTimer;
+	private final LogBuffer logBuffer;
+	/* the log file is written by its own thread, so that a slow disk cannot hold up the event dispatch thread */
+	private RotatingLogFile logFile;
+	private Thread logFileWriter;
+	private final LinkedBlockingQueue<List<LogBuffer.Entry>> logFileQueue;
+	private final AtomicLong logFileDropped;
 
 	/**
 	 * Constructs a new <code>GraphicalUserInterface</code>.
@@ -71,7 +122,82 @@ public class GraphicalUserInterface extends JFrame implements UserInterface, Log
 		setPreferredSize(new Dimension(640,480));
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		getContentPane().setLayout(new BorderLayout());
-		logQueue = new LinkedList<MessageSourcePair>();
+		pendingLock = new Object();
+		pendingState = null;
+		pendingRemainingPlayer = null;
+		pendingTimeUsed = new long[] {-1, -1};
+		pendingCpuUsed = new long[2];
+		pendingBytesAllocated = new long[2];
+		pendingResources = new boolean[2];
+		logBuffer = new LogBuffer(LOG_BUFFER_CAPACITY, LOG_MESSAGES_PER_SECOND);
+		logFile = null;
+		logFileWriter = null;
+		logFileQueue = new LinkedBlockingQueue<List<LogBuffer.Entry>>(LOG_FILE_QUEUE_CAPACITY);
+		logFileDropped = new AtomicLong(0);
+		flushScheduled = new AtomicBoolean(false);
+		flushTimer = new Timer(1000 / FRAMES_PER_SECOND, new ActionListener() {
+			public void actionPerformed(ActionEvent ae) {
+				flushScheduled.set(false);
+				flush();
+			}
+		});
+		flushTimer.setRepeats(false);
+		flushTimer.setCoalesce(true);
+	}
+
+	/* arranges for the pending updates to be shown within a frame */
+	private void scheduleFlush() {
+		if(flushScheduled.compareAndSet(false, true))
+			flushTimer.restart();
+	}
+
+	/* shows the pending updates; this runs on the event dispatch thread */
+	private void flush() {
+		GameState newState;
+		OthelloPlayer remainingPlayer;
+		int secondsRemaining;
+		long timeUsed[], cpuUsed[], bytesAllocated[];
+		boolean resources[];
+		synchronized(pendingLock) {
+			newState = pendingState;
+			pendingState = null;
+			remainingPlayer = pendingRemainingPlayer;
+			pendingRemainingPlayer = null;
+			secondsRemaining = pendingSecondsRemaining;
+			timeUsed = pendingTimeUsed.clone();
+			pendingTimeUsed[0] = pendingTimeUsed[1] = -1;
+			cpuUsed = pendingCpuUsed.clone();
+			bytesAllocated = pendingBytesAllocated.clone();
+			resources = pendingResources.clone();
+			pendingResources[0] = pendingResources[1] = false;
+		}
+		if(newState != null)
+			showState(newState);
+		if(panel == null)
+			return; /* the log messages are kept until the log is created along with the board */
+		if(remainingPlayer != null)
+			showTimeRemaining(remainingPlayer, secondsRemaining);
+		for(int i=0; i<2; i++) {
+			if(timeUsed[i] >= 0)
+				(i == 0 ? timeUsed1 : timeUsed2).setText(Double.toString((double)timeUsed[i] / 1000.0));
+			if(resources[i]) {
+				String cpu = (cpuUsed[i] < 0 ? "-" : Double.toString((double)cpuUsed[i] / 1000.0));
+				if(bytesAllocated[i] >= 0)
+					cpu += " (" + (bytesAllocated[i] >> 20) + "MB)";
+				(i == 0 ? cpuUsed1 : cpuUsed2).setText(cpu);
+			}
+		}
+		ArrayList<LogBuffer.Entry> messages = new ArrayList<LogBuffer.Entry>();
+		logBuffer.drain(messages, LOG_BUFFER_CAPACITY);
+		if(!logBuffer.isEmpty())
+			scheduleFlush();
+		if(!messages.isEmpty()) {
+			writeLogFile(messages);
+			/* only the messages that will remain in the log need to be added to it */
+			logDocument.log(messages.subList(Math.max(0, messages.size() - LOG_LINES), messages.size()));
+			/* scroll to the end once per frame, rather than once per message */
+			logArea.setCaretPosition(logDocument.getLength());
+		}
 	}
 
 	public void setPlayers(OthelloPlayer player1, OthelloPlayer player2) {
@@ -223,39 +349,70 @@ public class GraphicalUserInterface extends JFrame implements UserInterface, Log
 		 */
 		private static final long serialVersionUID = 1L;
 
+		private final MutableAttributeSet normal, p1, p2, err;
+
 		public LogDocument() {
 			super();
-		}
-
-		public void log(String message, Object source) {
-			final MutableAttributeSet normal = new SimpleAttributeSet();
+			normal = new SimpleAttributeSet();
 			StyleConstants.setForeground(normal, Color.BLACK);
 			StyleConstants.setBold(normal, true);
-			final MutableAttributeSet p1 = new SimpleAttributeSet();
+			p1 = new SimpleAttributeSet();
 			StyleConstants.setForeground(p1, Color.BLUE);
 			StyleConstants.setBold(p1, false);
-			final MutableAttributeSet p2 = new SimpleAttributeSet();
+			p2 = new SimpleAttributeSet();
 			StyleConstants.setForeground(p2, Color.GREEN);
 			StyleConstants.setBold(p2, false);
-			final MutableAttributeSet err = new SimpleAttributeSet();
+			err = new SimpleAttributeSet();
 			StyleConstants.setForeground(err, Color.RED);
 			StyleConstants.setBold(err, true);
-			AttributeSet attributes = normal;
+		}
+
+		/* appends the messages (merging consecutive messages of the same source), and then discards the oldest lines */
+		public void log(List<LogBuffer.Entry> messages) {
+			StringBuilder run = new StringBuilder();
+			AttributeSet runAttributes = null;
+			try {
+				for(LogBuffer.Entry entry : messages) {
+					AttributeSet attributes = getAttributes(entry.source);
+					if(attributes != runAttributes && run.length() > 0) {
+						insertString(getLength(), run.toString(), runAttributes);
+						run.setLength(0);
+					}
+					runAttributes = attributes;
+					run.append(entry.message).append('\n');
+				}
+				if(run.length() > 0)
+					insertString(getLength(), run.toString(), runAttributes);
+				Element root = getDefaultRootElement();
+				/* the last element is the empty line after the final newline */
+				int excess = root.getElementCount() - 1 - LOG_LINES;
+				if(excess > 0)
+					remove(0, root.getElement(excess - 1).getEndOffset());
+			} catch(BadLocationException ble) {
+				ble.printStackTrace();
+			}
+		}
+
+		private AttributeSet getAttributes(Object source) {
 			if(source == player1)
-				attributes = p1;
+				return p1;
 			else if(source == player2)
-				attributes = p2;
+				return p2;
 			else if(source instanceof Exception)
-				attributes = err;
-			try {
-				insertString(logArea.getText().length(), message, attributes);
-			} catch(Exception e) {
-				e.printStackTrace();
-			}
+				return err;
+			else
+				return normal;
 		}
 	}
 
 	public void handleStateUpdate(GameState newState) {
+		synchronized(pendingLock) {
+			pendingState = newState;
+		}
+		scheduleFlush();
+	}
+
+	private void showState(GameState newState) {
 		state = newState;
 		if(player1 == null || player2 == null)
 			return; /* the players haven't yet been assigned
@@ -317,7 +474,17 @@ public class GraphicalUserInterface extends JFrame implements UserInterface, Log
 			rem2.add(timeRemaining2);
 			stats.add(rem1);
 			stats.add(rem2);
-			SpringUtilities.makeCompactGrid(stats, 5, 2, 6,6,6,6);
+			JPanel cpu1 = new JPanel();
+			cpu1.add(new JLabel("CPU used:"));
+			cpuUsed1 = new JLabel("0s");
+			cpu1.add(cpuUsed1);
+			JPanel cpu2 = new JPanel();
+			cpu2.add(new JLabel("CPU used:"));
+			cpuUsed2 = new JLabel("0s");
+			cpu2.add(cpuUsed2);
+			stats.add(cpu1);
+			stats.add(cpu2);
+			SpringUtilities.makeCompactGrid(stats, 6, 2, 6,6,6,6);
 
 			horiz_split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, panel, stats);
 			horiz_split.setContinuousLayout(true);
@@ -339,11 +506,6 @@ public class GraphicalUserInterface extends JFrame implements UserInterface, Log
 
 			pack();
 			setVisible(true);
-
-			while(!logQueue.isEmpty()) {
-				MessageSourcePair msp = logQueue.removeFirst();
-				log(msp.message, msp.source);
-			}
 		} else {
 			panel.updateState(state);
 		}
@@ -372,20 +534,135 @@ public class GraphicalUserInterface extends JFrame implements UserInterface, Log
 	}
 
 	public void log(String message, Object source) {
-		if(logDocument == null) {
-			logQueue.add(new MessageSourcePair(message, source));
-		} else {
-			logDocument.log(message + "\n", source);
-			Rectangle bounds = logArea.getAccessibleContext().getAccessibleComponent().getBounds();
+		logBuffer.add(message, source);
+		scheduleFlush();
+	}
+
+	/**
+	 * Also writes the log to <code>file</code> (appending to it).  Once
+	 * the file reaches <code>maxBytes</code> bytes, it is renamed to
+	 * <code>file.1</code> (and any older files to <code>file.2</code>,
+	 * and so on, up to <code>backups</code> of them) and a new file is
+	 * started.  Messages suppressed by the rate limit are not written,
+	 * and neither are messages logged faster than the file can be
+	 * written (the number of them is).
+	 */
+	public void setLogFile(File file, long maxBytes, int backups) throws IOException {
+		RotatingLogFile newLogFile = new RotatingLogFile(file, maxBytes, backups);
+		synchronized(pendingLock) {
+			logFile = newLogFile;
+			if(logFileWriter == null) {
+				logFileWriter = new Thread(new LogFileWriter(), "GUI log file writer");
+				logFileWriter.setDaemon(true);
+				logFileWriter.start();
+				/* the writer is a daemon, so the file must be finished before the JVM exits (which closing the window does) */
+				Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+					public void run() {
+						closeLogFile();
+					}
+				}, "GUI log file closer"));
+			}
+		}
+		/* wake the writer so that it closes the file this one replaces */
+		logFileQueue.offer(new ArrayList<LogBuffer.Entry>());
+	}
+
+	/* writes the messages that have not been shown yet, and waits for the writer to finish and close the file */
+	private void closeLogFile() {
+		ArrayList<LogBuffer.Entry> messages = new ArrayList<LogBuffer.Entry>();
+		logBuffer.drain(messages, Integer.MAX_VALUE);
+		try {
+			if(!messages.isEmpty())
+				logFileQueue.put(messages);
+			logFileQueue.put(LOG_FILE_END);
+			logFileWriter.join(LOG_FILE_CLOSE_MILLIS);
+		} catch(InterruptedException ie) {}
+	}
+
+	/* hands the messages to the log file writer; this runs on the event dispatch thread, so it must not block */
+	private void writeLogFile(List<LogBuffer.Entry> messages) {
+		synchronized(pendingLock) {
+			if(logFile == null)
+				return;
+		}
+		if(!logFileQueue.offer(messages))
+			logFileDropped.addAndGet(messages.size());
+	}
+
+	/**
+	 * Writes the batches of messages queued by
+	 * <code>writeLogFile</code> to the log file, flushing it whenever
+	 * it has caught up.  This is the only thread that touches the
+	 * files, so it also closes a file once it has been replaced, and
+	 * the current one when it is asked to stop.
+	 */
+	private final class LogFileWriter implements Runnable {
+		/* the file that was last written */
+		private RotatingLogFile open = null;
+
+		private void close() {
+			if(open == null)
+				return;
 			try {
-				logArea.scrollRectToVisible(new Rectangle(0, (int)bounds.getHeight(), 1, 1));
-			} catch(Exception e) {} /* this will sometimes throw an array
-			 * index out of bounds error due to a
-			 * race condition */
+				open.close();
+			} catch(IOException ioe) {
+				System.err.println("Error closing the log file: " + ioe);
+			}
+			open = null;
+		}
+
+		public void run() {
+			while(true) {
+				List<LogBuffer.Entry> messages;
+				try {
+					messages = logFileQueue.take();
+				} catch(InterruptedException ie) {
+					close();
+					return;
+				}
+				RotatingLogFile lf;
+				synchronized(pendingLock) {
+					lf = logFile;
+				}
+				if(lf != open) {
+					close();
+					open = lf;
+				}
+				if(lf != null) {
+					try {
+						long dropped = logFileDropped.getAndSet(0);
+						if(dropped > 0)
+							lf.println("(" + dropped + " messages were not written because the log file could not keep up)");
+						for(LogBuffer.Entry entry : messages)
+							lf.println(entry.source instanceof OthelloPlayer ? entry.source + ": " + entry.message : entry.message);
+						if(logFileQueue.isEmpty())
+							lf.flush();
+					} catch(IOException ioe) {
+						System.err.println("Error writing the log file, so it will no longer be written: " + ioe);
+						synchronized(pendingLock) {
+							if(logFile == lf)
+								logFile = null;
+						}
+						logFileQueue.clear();
+					}
+				}
+				if(messages == LOG_FILE_END) {
+					close();
+					return;
+				}
+			}
 		}
 	}
 
 	public void updateTimeRemaining(OthelloPlayer player, int secondsRemaining) {
+		synchronized(pendingLock) {
+			pendingRemainingPlayer = player;
+			pendingSecondsRemaining = secondsRemaining;
+		}
+		scheduleFlush();
+	}
+
+	private void showTimeRemaining(OthelloPlayer player, int secondsRemaining) {
 		String sr;
 		if(player instanceof HumanOthelloPlayer)
 			sr = "\u221e"; /* <-- \221e == the infinity symbol */
@@ -404,10 +681,18 @@ public class GraphicalUserInterface extends JFrame implements UserInterface, Log
 	}
 
 	public void updateTimeUsed(OthelloPlayer player, long millisUsed) {
-		String secondsUsed = Double.toString((double)millisUsed / 1000.0);
-		if(player == player1)
-			timeUsed1.setText(secondsUsed);
-		else
-			timeUsed2.setText(secondsUsed);
+		synchronized(pendingLock) {
+			pendingTimeUsed[player == player1 ? 0 : 1] = millisUsed;
+		}
+		scheduleFlush();
+	}
+
+	public void updateResourcesUsed(OthelloPlayer player, long cpuMillisUsed, long bytesAllocated) {
+		synchronized(pendingLock) {
+			pendingCpuUsed[player == player1 ? 0 : 1] = cpuMillisUsed;
+			pendingBytesAllocated[player == player1 ? 0 : 1] = bytesAllocated;
+			pendingResources[player == player1 ? 0 : 1] = true;
+		}
+		scheduleFlush();
 	}
 }
@@ -1,6 +1,8 @@
 package edu.drexel.cs.ai.othello;
 
 import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * An interface for having a human play othello through the {@link
@@ -9,21 +11,28 @@ import java.util.Date;
  * @author <a href="http://www.sultanik.com" target="_blank">Evan A. Sultanik</a>
  */
 public final class HumanOthelloPlayer extends OthelloPlayer {
-	Square nextMove;
+	/* holds at most one pending move; a newer move from the UI replaces an older one */
+	private final BlockingQueue<Square> nextMove;
 
 	/**
 	 * Creates a new agent that plays according to human input.
 	 */
 	public HumanOthelloPlayer(String name) {
 		super(name);
-		nextMove = null;
+		nextMove = new ArrayBlockingQueue<Square>(1);
 	}
 
 	/**
 	 * Callback function for receiving the next move from the UI.
+	 * This never blocks, so it is safe to call from the event
+	 * dispatch thread.  If a previous move has not yet been consumed
+	 * by {@link #getMove(GameState, Date)}, it is replaced.
 	 */
 	public void handleUIInput(Square square) {
-		nextMove = square;
+		synchronized(nextMove) {
+			nextMove.clear();
+			nextMove.offer(square);
+		}
 	}
 
 	/**
@@ -33,15 +42,19 @@ public final class HumanOthelloPlayer extends OthelloPlayer {
 	 * HumanOthelloPlayer agent will always have an infinite deadline.
 	 */
 	public Square getMove(GameState currentState, Date deadline) {
-		while(nextMove == null) {
-			/* wait for the UI to send us the next move */
-			try {
-				Thread.yield();
-				Thread.sleep(10);
-			} catch(Exception e) { }
+		boolean interrupted = false;
+		try {
+			while(true) {
+				/* wait for the UI to send us the next move */
+				try {
+					return nextMove.take();
+				} catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if(interrupted)
+				Thread.currentThread().interrupt();
 		}
-		Square next = nextMove;
-		nextMove = null;
-		return next;
 	}
 }
@@ -0,0 +1,143 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bidirectional, line-oriented connection used by the {@link
+ * GameServer} to talk to remote agents.  Received lines are queued
+ * so that {@link #receive(long)} can always time out (or be
+ * interrupted), even if the underlying stream blocks.
+ *
+ * <p>Connections are either backed by a socket ({@link
+ * #forSocket(Socket, ThreadFactory)}) or are purely in-memory
+ * ({@link #loopbackPair()}), which is useful for testing the
+ * protocol without any networking.</p>
+ */
+abstract class LineConnection {
+	/* a sentinel placed in the queue when the other end has closed */
+	private static final String EOF = new String("EOF");
+
+	private final BlockingQueue<String> received;
+	private volatile boolean closed;
+
+	LineConnection() {
+		received = new LinkedBlockingQueue<String>();
+		closed = false;
+	}
+
+	/**
+	 * Sends a line (which must not contain a line terminator).
+	 *
+	 * @throws IOException if the connection is closed or the line could not be written.
+	 */
+	abstract void send(String line) throws IOException;
+
+	/**
+	 * Closes the connection.
+	 */
+	void close() {
+		closed = true;
+		received.offer(EOF);
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+
+	void deliver(String line) {
+		received.offer(line == null ? EOF : line);
+	}
+
+	/**
+	 * Returns the next line received from the other end, waiting at
+	 * most <code>timeoutMillis</code> milliseconds (or forever if
+	 * <code>timeoutMillis &lt; 0</code>).  Returns <code>null</code>
+	 * if no line arrived in time.
+	 *
+	 * @throws IOException if the other end closed the connection.
+	 * @throws InterruptedException if the calling thread was interrupted while waiting.
+	 */
+	String receive(long timeoutMillis) throws IOException, InterruptedException {
+		String line;
+		if(timeoutMillis < 0)
+			line = received.take();
+		else
+			line = received.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+		if(line == EOF) {
+			received.offer(EOF); /* so that subsequent calls also fail */
+			closed = true;
+			throw new IOException("The connection was closed.");
+		}
+		return line;
+	}
+
+	/**
+	 * Returns a connection over the given socket.  A thread created
+	 * by <code>threads</code> reads lines from the socket for the
+	 * lifetime of the connection.
+	 */
+	static LineConnection forSocket(final Socket socket, ThreadFactory threads) throws IOException {
+		final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+		final Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+		final LineConnection connection = new LineConnection() {
+			synchronized void send(String line) throws IOException {
+				if(isClosed())
+					throw new IOException("The connection is closed.");
+				out.write(line);
+				out.write('\n');
+				out.flush();
+			}
+			void close() {
+				super.close();
+				try {
+					socket.close();
+				} catch(IOException ioe) {}
+			}
+		};
+		threads.newThread(new Runnable() {
+			public void run() {
+				try {
+					String line;
+					while((line = in.readLine()) != null)
+						connection.deliver(line);
+				} catch(IOException ioe) {
+				} finally {
+					connection.close();
+				}
+			}
+		}).start();
+		return connection;
+	}
+
+	/**
+	 * Returns two connected, in-memory connections: lines sent on
+	 * one are received by the other.
+	 */
+	static LineConnection[] loopbackPair() {
+		final LineConnection pair[] = new LineConnection[2];
+		for(int i=0; i<2; i++) {
+			final int other = 1 - i;
+			pair[i] = new LineConnection() {
+				void send(String line) throws IOException {
+					if(isClosed() || pair[other].isClosed())
+						throw new IOException("The connection is closed.");
+					pair[other].deliver(line);
+				}
+				void close() {
+					super.close();
+					pair[other].deliver(null);
+				}
+			};
+		}
+		return pair;
+	}
+}
@@ -0,0 +1,132 @@
+package edu.drexel.cs.ai.othello;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free buffer of log messages.  Any number of threads
+ * (<i>e.g.</i> agents) may add messages without blocking, and a
+ * single consumer (<i>e.g.</i> a user interface) drains them in
+ * batches.  Each agent may only log a limited number of messages per
+ * second; the excess (and any messages that do not fit in the buffer)
+ * are dropped and reported with a single message once the buffer is
+ * drained.
+ */
+final class LogBuffer {
+	/**
+	 * A logged message.
+	 */
+	static final class Entry {
+		final String message;
+		final Object source;
+
+		Entry(String message, Object source) {
+			this.message = message;
+			this.source = source;
+		}
+	}
+
+	/* the number of messages a source has logged in the current one-second window */
+	private static final class SourceLimit {
+		volatile long windowStart;
+		final AtomicInteger count = new AtomicInteger();
+		final AtomicLong suppressed = new AtomicLong();
+	}
+
+	private final ConcurrentLinkedQueue<Entry> queue;
+	private final AtomicInteger size;
+	private final int capacity;
+	private final int maxPerSecond;
+	private final ConcurrentHashMap<Object,SourceLimit> limits;
+	private final AtomicLong overflowed;
+
+	/**
+	 * Creates a buffer of at most <code>capacity</code> messages in
+	 * which each agent may log at most <code>maxPerSecond</code>
+	 * messages per second.
+	 */
+	LogBuffer(int capacity, int maxPerSecond) {
+		queue = new ConcurrentLinkedQueue<Entry>();
+		size = new AtomicInteger(0);
+		this.capacity = capacity;
+		this.maxPerSecond = maxPerSecond;
+		limits = new ConcurrentHashMap<Object,SourceLimit>();
+		overflowed = new AtomicLong(0);
+	}
+
+	/**
+	 * Adds a message to the buffer.  Only messages from agents are
+	 * rate limited.
+	 *
+	 * @return whether the message was added (rather than dropped).
+	 */
+	boolean add(String message, Object source) {
+		if(source instanceof OthelloPlayer) {
+			SourceLimit limit = limits.get(source);
+			if(limit == null) {
+				SourceLimit newLimit = new SourceLimit();
+				limit = limits.putIfAbsent(source, newLimit);
+				if(limit == null)
+					limit = newLimit;
+			}
+			long now = System.currentTimeMillis();
+			if(now - limit.windowStart >= 1000) {
+				/* a new window; racing threads may each reset it, which only admits a few extra messages */
+				limit.windowStart = now;
+				limit.count.set(0);
+			}
+			if(limit.count.incrementAndGet() > maxPerSecond) {
+				limit.suppressed.incrementAndGet();
+				return false;
+			}
+		}
+		if(size.incrementAndGet() > capacity) {
+			size.decrementAndGet();
+			overflowed.incrementAndGet();
+			return false;
+		}
+		queue.add(new Entry(message, source));
+		return true;
+	}
+
+	/**
+	 * Moves at most <code>max</code> messages from the buffer to
+	 * <code>entries</code>, followed by a message for every source
+	 * whose messages were dropped since the last call.
+	 *
+	 * @return the number of messages moved.
+	 */
+	int drain(List<Entry> entries, int max) {
+		int drained = 0;
+		Entry entry;
+		while(drained < max && (entry = queue.poll()) != null) {
+			size.decrementAndGet();
+			entries.add(entry);
+			drained++;
+		}
+		for(Map.Entry<Object,SourceLimit> e : limits.entrySet()) {
+			long suppressed = e.getValue().suppressed.getAndSet(0);
+			if(suppressed > 0) {
+				entries.add(new Entry("(" + suppressed + " more messages from " + e.getKey() + " were suppressed)", null));
+				drained++;
+			}
+		}
+		long lost = overflowed.getAndSet(0);
+		if(lost > 0) {
+			entries.add(new Entry("(" + lost + " messages were dropped because the log could not keep up)", null));
+			drained++;
+		}
+		return drained;
+	}
+
+	/**
+	 * Returns whether there are messages waiting to be drained.
+	 */
+	boolean isEmpty() {
+		return queue.isEmpty();
+	}
+}
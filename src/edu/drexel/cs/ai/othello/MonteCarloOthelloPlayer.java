@@ -0,0 +1,448 @@
+package edu.drexel.cs.ai.othello;
+
+import java.util.Date;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An othello-playing agent that uses Monte Carlo tree search with the
+ * UCT selection policy.  It is intended as a strong reference
+ * opponent against which other agents can be benchmarked.
+ *
+ * <p>The search runs until shortly before the deadline (or for a fixed
+ * number of playouts if there is none).  If the agent has a {@link
+ * #getNodeBudget() node budget}, every node added to the tree and every
+ * move simulated in a playout counts as a node (as does a final
+ * position reached without either), just as every position does for
+ * the other searches; the threads share the budget, and stop
+ * before an iteration could overrun their share.  Playouts are played directly
+ * on bitboards with a fast, unsynchronized random number generator,
+ * and the nodes of the tree are stored in primitive arrays, so the
+ * search allocates almost nothing once the agent has been created.
+ * The search threads are created by the constructor (in the agent's
+ * {@link #getThreadGroup() thread group}, so the driver charges their
+ * CPU time and memory to the agent) and stopped by {@link #close()}.  They can
+ * either search independent trees whose root statistics are combined
+ * at the end ({@link Parallelism#ROOT root parallelism}), or share a
+ * single tree ({@link Parallelism#TREE tree parallelism}), using a
+ * virtual loss to keep them from all exploring the same line.</p>
+ */
+public class MonteCarloOthelloPlayer extends OthelloPlayer {
+	/**
+	 * How multiple search threads cooperate.
+	 */
+	public enum Parallelism {
+		/**
+		 * Each thread searches its own tree; the visit counts of the
+		 * roots' children are summed to choose the move.
+		 */
+		ROOT,
+		/**
+		 * All of the threads search a single, shared tree.
+		 */
+		TREE
+	}
+
+	/* the total number of tree nodes, shared among the trees */
+	private static final int NODE_CAPACITY = 1 << 19;
+	/* the number of playouts per move if there is no deadline */
+	private static final long PLAYOUTS_WITHOUT_DEADLINE = 200000;
+	/* the search stops this long before the deadline */
+	private static final long SAFETY_MARGIN_MILLIS = 50;
+	/* how often the best move is registered */
+	private static final long REGISTER_INTERVAL_MILLIS = 100;
+	private static final double EXPLORATION = Math.sqrt(2.0);
+
+	private final int numThreads;
+	private final Tree trees[];
+	private final Searcher searchers[];
+	private final ThreadPoolExecutor pool;
+	private volatile boolean stop;
+	private volatile long stopNanos;
+
+	/**
+	 * Creates a new agent that searches with one thread per processor
+	 * using root parallelism.
+	 */
+	public MonteCarloOthelloPlayer(String name) {
+		this(name, Runtime.getRuntime().availableProcessors(), Parallelism.ROOT);
+	}
+
+	/**
+	 * Creates a new agent that searches with <code>numThreads</code>
+	 * threads.
+	 */
+	public MonteCarloOthelloPlayer(String name, int numThreads, Parallelism parallelism) {
+		super(name);
+		if(numThreads < 1)
+			throw new IllegalArgumentException("The number of threads must be positive!");
+		this.numThreads = numThreads;
+		int numTrees = (parallelism == Parallelism.ROOT ? numThreads : 1);
+		trees = new Tree[numTrees];
+		for(int i=0; i<numTrees; i++)
+			trees[i] = new Tree(NODE_CAPACITY / numTrees, numThreads > 1 && parallelism == Parallelism.TREE);
+		searchers = new Searcher[numThreads];
+		for(int i=0; i<numThreads; i++)
+			searchers[i] = new Searcher(trees[parallelism == Parallelism.ROOT ? i : 0]);
+		final String threadName = name;
+		pool = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(getThreadGroup(), r, threadName + " search");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		/* the threads must exist before getMove is called from the agent's (restricted) thread */
+		pool.prestartAllCoreThreads();
+	}
+
+	/**
+	 * A search tree whose nodes are stored in parallel arrays.  Node
+	 * <code>0</code> is the root.  The children of a node are expanded
+	 * one at a time, in random order, and linked through
+	 * <code>nextSibling</code>.
+	 */
+	private static final class Tree {
+		final long player1[];
+		final long player2[];
+		final long untried[]; /* the moves that have not yet been expanded */
+		final int firstChild[];
+		final int nextSibling[];
+		final int visits[];
+		final double rewards[]; /* from the perspective of the player that moved into the node */
+		final byte moves[];
+		final byte toMove[]; /* 1 or 2, or 0 if the game is over */
+		final boolean shared;
+		int size;
+
+		Tree(int capacity, boolean shared) {
+			player1 = new long[capacity];
+			player2 = new long[capacity];
+			untried = new long[capacity];
+			firstChild = new int[capacity];
+			nextSibling = new int[capacity];
+			visits = new int[capacity];
+			rewards = new double[capacity];
+			moves = new byte[capacity];
+			toMove = new byte[capacity];
+			this.shared = shared;
+			size = 0;
+		}
+
+		/* adds a node and returns its index, or -1 if the tree is full */
+		int add(long p1, long p2, int player, int move) {
+			if(size >= player1.length)
+				return -1;
+			int node = size++;
+			player1[node] = p1;
+			player2[node] = p2;
+			/* the opponent moves next, unless it cannot */
+			long opponent1 = BitBoard.moves(p1, p2);
+			long opponent2 = BitBoard.moves(p2, p1);
+			int next = (player == 1 ? 2 : 1);
+			if((next == 1 ? opponent1 : opponent2) == 0)
+				next = player;
+			if((next == 1 ? opponent1 : opponent2) == 0)
+				next = 0;
+			toMove[node] = (byte)next;
+			untried[node] = (next == 0 ? 0 : (next == 1 ? opponent1 : opponent2));
+			firstChild[node] = -1;
+			nextSibling[node] = -1;
+			visits[node] = 0;
+			rewards[node] = 0.0;
+			moves[node] = (byte)move;
+			return node;
+		}
+
+		void reset(GameState state) {
+			size = 0;
+			int player = (state.getCurrentPlayer() == GameState.Player.PLAYER1 ? 1 : 2);
+			/* add() computes the player to move after the "previous" player, so pretend the opponent moved last */
+			add(state.getDiscs(GameState.Player.PLAYER1), state.getDiscs(GameState.Player.PLAYER2), player == 1 ? 2 : 1, -1);
+			toMove[0] = (byte)player;
+			untried[0] = state.getValidMoveSquares(state.getCurrentPlayer());
+		}
+	}
+
+	/**
+	 * Runs iterations of the search on one thread.
+	 */
+	private final class Searcher implements Runnable {
+		final Tree tree;
+		final int path[] = new int[128];
+		long random;
+		long maxPlayouts;
+		long maxNodes;
+		/* an upper bound on the nodes of an iteration: each move fills a square */
+		long iterationNodes;
+		long playouts;
+		long nodes;
+		int maxDepth;
+
+		Searcher(Tree tree) {
+			this.tree = tree;
+		}
+
+		/* xorshift64* */
+		long nextLong() {
+			random ^= random >>> 12;
+			random ^= random << 25;
+			random ^= random >>> 27;
+			return random * 0x2545F4914F6CDD1DL;
+		}
+
+		/* returns a uniformly random set bit of the (non-zero) mask */
+		long randomBit(long mask) {
+			int n = (int)((((nextLong() >>> 32) * Long.bitCount(mask))) >>> 32);
+			for(int i=0; i<n; i++)
+				mask &= mask - 1;
+			return Long.lowestOneBit(mask);
+		}
+
+		public void run() {
+			playouts = 0;
+			nodes = 0;
+			maxDepth = 0;
+			while(!stop && playouts < maxPlayouts && nodes <= maxNodes - iterationNodes) {
+				long before = nodes;
+				iterate();
+				/* an iteration that reaches the end of the game generates nothing, but it still evaluates the final position */
+				if(nodes == before)
+					nodes++;
+				if((++playouts & 63) == 0 && System.nanoTime() - stopNanos >= 0)
+					break;
+			}
+		}
+
+		/* selects and expands a leaf, plays out from it, and backs up the result */
+		void iterate() {
+			int depth;
+			if(tree.shared) {
+				synchronized(tree) {
+					depth = select();
+				}
+			} else
+				depth = select();
+			int leaf = path[depth - 1];
+			double result = playout(tree.player1[leaf], tree.player2[leaf], tree.toMove[leaf]);
+			if(tree.shared) {
+				synchronized(tree) {
+					backup(depth, result);
+				}
+			} else
+				backup(depth, result);
+			if(depth > maxDepth)
+				maxDepth = depth;
+		}
+
+		/*
+		 * Walks down the tree, expanding one new node if possible, and
+		 * records the path.  The visits are counted on the way down, so
+		 * that other threads sharing the tree see a virtual loss.
+		 */
+		int select() {
+			int node = 0;
+			int depth = 0;
+			path[depth++] = node;
+			tree.visits[node]++;
+			while(tree.toMove[node] != 0) {
+				if(tree.untried[node] != 0) {
+					long move = randomBit(tree.untried[node]);
+					int player = tree.toMove[node];
+					long own = (player == 1 ? tree.player1[node] : tree.player2[node]);
+					long opponent = (player == 1 ? tree.player2[node] : tree.player1[node]);
+					long flips = BitBoard.flips(own, opponent, move);
+					own |= flips | move;
+					opponent &= ~flips;
+					int child = tree.add(player == 1 ? own : opponent, player == 1 ? opponent : own, player, Long.numberOfTrailingZeros(move));
+					if(child < 0)
+						break; /* the tree is full, so play out from here */
+					nodes++;
+					tree.untried[node] ^= move;
+					tree.nextSibling[child] = tree.firstChild[node];
+					tree.firstChild[node] = child;
+					tree.visits[child]++;
+					path[depth++] = child;
+					break;
+				}
+				/* every move has been expanded, so descend to the child with the highest upper confidence bound */
+				double logVisits = Math.log(tree.visits[node]);
+				int best = -1;
+				double bestValue = Double.NEGATIVE_INFINITY;
+				for(int child = tree.firstChild[node]; child >= 0; child = tree.nextSibling[child]) {
+					int v = tree.visits[child];
+					double value = (v == 0 ? Double.POSITIVE_INFINITY : tree.rewards[child] / v + EXPLORATION * Math.sqrt(logVisits / v));
+					if(value > bestValue) {
+						bestValue = value;
+						best = child;
+					}
+				}
+				if(best < 0)
+					break;
+				node = best;
+				tree.visits[node]++;
+				path[depth++] = node;
+			}
+			return depth;
+		}
+
+		/* plays random moves until the game is over and returns player 1's reward */
+		double playout(long p1, long p2, int player) {
+			int passes = 0;
+			while(player != 0 && passes < 2) {
+				long own = (player == 1 ? p1 : p2);
+				long opponent = (player == 1 ? p2 : p1);
+				long valid = BitBoard.moves(own, opponent);
+				if(valid == 0) {
+					passes++;
+				} else {
+					passes = 0;
+					nodes++;
+					long move = randomBit(valid);
+					long flips = BitBoard.flips(own, opponent, move);
+					own |= flips | move;
+					opponent &= ~flips;
+					if(player == 1) {
+						p1 = own;
+						p2 = opponent;
+					} else {
+						p2 = own;
+						p1 = opponent;
+					}
+				}
+				player = (player == 1 ? 2 : 1);
+			}
+			int score = Long.bitCount(p1) - Long.bitCount(p2);
+			return (score > 0 ? 1.0 : (score < 0 ? 0.0 : 0.5));
+		}
+
+		void backup(int depth, double player1Reward) {
+			/* the reward of a node belongs to the player that moved into it, i.e. the player to move at its parent */
+			for(int i=1; i<depth; i++) {
+				int parent = path[i - 1];
+				tree.rewards[path[i]] += (tree.toMove[parent] == 1 ? player1Reward : 1.0 - player1Reward);
+			}
+		}
+	}
+
+	/* sums the visits of the root's children over all of the trees, indexed by square */
+	private int[] getRootVisits() {
+		int visits[] = new int[64];
+		for(int i=0; i<trees.length; i++) {
+			Tree tree = trees[i];
+			for(int child = tree.firstChild[0]; child >= 0; child = tree.nextSibling[child])
+				visits[tree.moves[child]] += tree.visits[child];
+		}
+		return visits;
+	}
+
+	private Square getBestMove(long valid) {
+		int visits[] = getRootVisits();
+		int best = Long.numberOfTrailingZeros(valid);
+		for(int i=0; i<64; i++)
+			if(visits[i] > visits[best])
+				best = i;
+		return new Square(best / 8, best % 8);
+	}
+
+	/* waits for the (stopped) searchers to finish, so that the trees may be reused */
+	private static void awaitSearchers(Future<?> futures[]) {
+		boolean interrupted = false;
+		for(int i=0; i<futures.length; i++) {
+			while(true) {
+				try {
+					futures[i].get();
+					break;
+				} catch(InterruptedException ie) {
+					interrupted = true;
+				} catch(ExecutionException ee) {
+					break;
+				}
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Stops the search threads.
+	 */
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Searches for the best move until shortly before the deadline.
+	 */
+	public Square getMove(GameState currentState, Date deadline) {
+		long valid = currentState.getValidMoveSquares(currentState.getCurrentPlayer());
+		if(Long.bitCount(valid) <= 1) {
+			int square = Long.numberOfTrailingZeros(valid);
+			return (valid == 0 ? null : new Square(square / 8, square % 8));
+		}
+
+		long now = System.nanoTime();
+		if(deadline == null)
+			stopNanos = now + TimeUnit.DAYS.toNanos(1);
+		else
+			stopNanos = now + TimeUnit.MILLISECONDS.toNanos(Math.max(1, getMillisUntilDeadline() - SAFETY_MARGIN_MILLIS));
+		stop = false;
+		for(int i=0; i<trees.length; i++)
+			trees[i].reset(currentState);
+		Future<?> futures[] = new Future<?>[numThreads];
+		SplittableRandom random = currentState.splitRandom();
+		long nodeBudget = getNodeBudget();
+		long maxNodes = (nodeBudget >= 0 ? nodeBudget / numThreads : Long.MAX_VALUE);
+		long maxPlayouts = (deadline == null && nodeBudget < 0 ? (PLAYOUTS_WITHOUT_DEADLINE + numThreads - 1) / numThreads : Long.MAX_VALUE);
+		for(int i=0; i<numThreads; i++) {
+			Searcher s = searchers[i];
+			s.random = random.split().nextLong() | 1; /* xorshift must not be seeded with zero */
+			s.maxPlayouts = maxPlayouts;
+			s.maxNodes = maxNodes;
+			s.iterationNodes = currentState.getEmptyCount();
+			futures[i] = pool.submit(s);
+		}
+
+		try {
+			for(int i=0; i<numThreads; i++) {
+				while(true) {
+					try {
+						futures[i].get(REGISTER_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+						break;
+					} catch(TimeoutException te) {
+						if(deadline != null)
+							registerCurrentBestMove(getBestMove(valid));
+					}
+				}
+			}
+		} catch(InterruptedException ie) {
+			/* we ran out of time */
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException ee) {
+			log("The search failed: " + ee.getCause());
+		}
+		stop = true;
+		awaitSearchers(futures);
+
+		long nodes = 0;
+		int depth = 0;
+		for(int i=0; i<numThreads; i++) {
+			nodes += searchers[i].nodes;
+			depth = Math.max(depth, searchers[i].maxDepth);
+		}
+		countNodes(nodes);
+		reportSearchDepth(depth);
+		Square move = getBestMove(valid);
+		if(deadline != null && getMillisUntilDeadline() >= 0)
+			registerCurrentBestMove(move);
+		/* the searchers count their nodes locally, rather than contending for the shared budget, so the total is charged here */
+		NodeBudget.charge(nodes);
+		return move;
+	}
+}
@@ -0,0 +1,189 @@
+package edu.drexel.cs.ai.othello;
+
+import java.util.Arrays;
+
+/**
+ * Orders the moves of the positions of a search so that the best are
+ * likely to be searched first, which lets alpha-beta prune far more
+ * of the tree.  First comes the hash move (<i>e.g.</i> the best move a
+ * transposition table remembers from an earlier search of the
+ * position), then the killer moves of the ply (the last moves that
+ * caused a cutoff in a sibling position), and then the other moves by
+ * a score that adds up:
+ * <ul>
+ * <li>the history heuristic: how often (weighted by depth) the square
+ * has caused a cutoff anywhere in the search;</li>
+ * <li>the static value of the square (corners are good, the squares
+ * next to them are bad); and</li>
+ * <li>optionally, a penalty for each reply the move leaves the
+ * opponent, which is the most accurate and the most costly.</li>
+ * </ul>
+ *
+ * <p>Unlike {@link GameState#getValidMoves()}, whose iteration order is
+ * arbitrary, the ordering is deterministic.  The moves of each ply are
+ * sorted into a buffer that is allocated once, so ordering the moves
+ * of a node creates no objects; a search orders the moves of a node
+ * with {@link #order(long, long, int, int, boolean)} and reads them
+ * with {@link #getSquare(int, int)} until it returns from the node.
+ * An instance is not thread-safe.</p>
+ */
+public final class MoveOrdering {
+	/**
+	 * The number of plies for which there are buffers: enough for any
+	 * search of 60 moves and the passes between them.
+	 */
+	public static final int MAX_PLY = 128;
+	/**
+	 * The number of killer moves remembered per ply.
+	 */
+	public static final int KILLERS = 2;
+	/* the maximum number of valid moves in any position is below this */
+	private static final int MAX_MOVES = 64;
+	private static final int HASH_MOVE_KEY = Integer.MAX_VALUE;
+	private static final int KILLER_KEY = Integer.MAX_VALUE - KILLERS;
+	/* the history scores are halved once one of them reaches this */
+	private static final int MAX_HISTORY = 1 << 20;
+	/* the weights of the static value of a square and of each reply left to the opponent */
+	private static final int SQUARE_WEIGHT = 4;
+	private static final int MOBILITY_WEIGHT = 256;
+	private static final int SQUARE_VALUES[] = {
+		100, -20,  10,   5,   5,  10, -20, 100,
+		-20, -50,  -2,  -2,  -2,  -2, -50, -20,
+		 10,  -2,  -1,  -1,  -1,  -1,  -2,  10,
+		  5,  -2,  -1,  -1,  -1,  -1,  -2,   5,
+		  5,  -2,  -1,  -1,  -1,  -1,  -2,   5,
+		 10,  -2,  -1,  -1,  -1,  -1,  -2,  10,
+		-20, -50,  -2,  -2,  -2,  -2, -50, -20,
+		100, -20,  10,   5,   5,  10, -20, 100};
+
+	/* the sorted moves of each ply, and their sort keys */
+	private final int squares[][];
+	private final int keys[][];
+	private final int killers[][];
+	private final int history[];
+
+	/**
+	 * Creates a move ordering with empty killer and history tables.
+	 */
+	public MoveOrdering() {
+		squares = new int[MAX_PLY][MAX_MOVES];
+		keys = new int[MAX_PLY][MAX_MOVES];
+		killers = new int[MAX_PLY][KILLERS];
+		history = new int[64];
+		clear();
+	}
+
+	/**
+	 * Forgets the killer moves and the history scores.
+	 */
+	public void clear() {
+		for(int killer[] : killers)
+			Arrays.fill(killer, -1);
+		Arrays.fill(history, 0);
+	}
+
+	/**
+	 * Prepares for a new search: the killer moves are forgotten, and
+	 * the history scores are halved, so that the cutoffs of the last
+	 * search still count, but less than those of the new one.
+	 */
+	public void age() {
+		for(int killer[] : killers)
+			Arrays.fill(killer, -1);
+		for(int i=0; i<history.length; i++)
+			history[i] >>= 1;
+	}
+
+	/**
+	 * Sorts the valid moves of a position, given the discs of the
+	 * player to move (<code>own</code>) and of its opponent, into the
+	 * buffer of <code>ply</code>.
+	 *
+	 * @param hashMove the square (<code>row * 8 + column</code>) to order first, or <code>-1</code>.
+	 * @param byMobility whether to penalize the replies each move leaves the opponent.
+	 * @return the number of moves.
+	 */
+	public int order(long own, long opponent, int ply, int hashMove, boolean byMobility) {
+		int list[] = squares[ply];
+		int key[] = keys[ply];
+		int killer[] = killers[ply];
+		int count = 0;
+		for(long valid = BitBoard.moves(own, opponent); valid != 0; valid &= valid - 1) {
+			int square = Long.numberOfTrailingZeros(valid);
+			int k;
+			if(square == hashMove)
+				k = HASH_MOVE_KEY;
+			else if(square == killer[0])
+				k = KILLER_KEY;
+			else if(square == killer[1])
+				k = KILLER_KEY - 1;
+			else {
+				k = history[square] + SQUARE_WEIGHT * SQUARE_VALUES[square];
+				if(byMobility) {
+					long move = 1L << square;
+					long flips = BitBoard.flips(own, opponent, move);
+					k -= MOBILITY_WEIGHT * Long.bitCount(BitBoard.moves(opponent & ~flips, own | flips | move));
+				}
+			}
+			/* insertion sort, by decreasing key */
+			int i = count++;
+			while(i > 0 && key[i - 1] < k) {
+				list[i] = list[i - 1];
+				key[i] = key[i - 1];
+				i--;
+			}
+			list[i] = square;
+			key[i] = k;
+		}
+		return count;
+	}
+
+	/**
+	 * Sorts the valid moves of <code>state</code> into the buffer of
+	 * <code>ply</code>, penalizing the replies each move leaves the
+	 * opponent.
+	 *
+	 * @param hashMove the move to order first, or <code>null</code>.
+	 * @return the number of moves.
+	 */
+	public int order(GameState state, int ply, Square hashMove) {
+		GameState.Player player = state.getCurrentPlayer();
+		return order(state.getDiscs(player), state.getDiscs(state.getOpponent(player)), ply, (hashMove == null ? -1 : hashMove.getRow() * 8 + hashMove.getCol()), true);
+	}
+
+	/**
+	 * Returns the square (<code>row * 8 + column</code>) of the
+	 * <code>index</code>th move last sorted into the buffer of
+	 * <code>ply</code>.
+	 */
+	public int getSquare(int ply, int index) {
+		return squares[ply][index];
+	}
+
+	/**
+	 * Returns the <code>index</code>th move last sorted into the buffer
+	 * of <code>ply</code>.
+	 */
+	public Square getMove(int ply, int index) {
+		int square = squares[ply][index];
+		return new Square(square / 8, square % 8);
+	}
+
+	/**
+	 * Records that the move to <code>square</code> caused a cutoff at
+	 * <code>ply</code> in a search of <code>depth</code> plies: it
+	 * becomes the first killer move of the ply, and its history score
+	 * grows with the square of the depth.
+	 */
+	public void cutoff(int ply, int square, int depth) {
+		int killer[] = killers[ply];
+		if(killer[0] != square) {
+			killer[1] = killer[0];
+			killer[0] = square;
+		}
+		history[square] += depth * depth;
+		if(history[square] >= MAX_HISTORY)
+			for(int i=0; i<history.length; i++)
+				history[i] >>= 1;
+	}
+}
@@ -0,0 +1,102 @@
+package edu.drexel.cs.ai.othello;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the nodes generated by an agent and enforces its node budget.
+ * A node is a state generated by {@link GameState#applyMove(Square)} or
+ * by a {@link SuccessorArena}.  Since the count does not depend on how
+ * fast the host is, a node budget compares agents fairly even when many
+ * games share a machine.
+ *
+ * <p>A budget belongs to an agent's {@link
+ * OthelloPlayer#getThreadGroup() thread group}, so the nodes generated
+ * by every thread in the group are charged to it, as are the nodes
+ * generated by the thread that started it.</p>
+ */
+final class NodeBudget {
+	private static final ConcurrentHashMap<ThreadGroup, NodeBudget> budgets = new ConcurrentHashMap<ThreadGroup, NodeBudget>();
+	/* the thread that asks the agent for its move need not be in the agent's group */
+	private static final ThreadLocal<NodeBudget> current = new ThreadLocal<NodeBudget>();
+
+	private final ThreadGroup group;
+	private final long limit;
+	private final AtomicLong used;
+
+	private NodeBudget(ThreadGroup group, long limit) {
+		this.group = group;
+		this.limit = limit;
+		used = new AtomicLong();
+	}
+
+	/**
+	 * Starts counting the nodes generated by the threads in
+	 * <code>group</code> and by the current thread, which together may
+	 * generate at most <code>limit</code> nodes.
+	 */
+	static void begin(ThreadGroup group, long limit) {
+		NodeBudget budget = new NodeBudget(group, limit);
+		budgets.put(group, budget);
+		current.set(budget);
+	}
+
+	/**
+	 * Stops counting the nodes of the budget begun by the current
+	 * thread.
+	 *
+	 * @return the number of nodes that were generated.
+	 */
+	static long end() {
+		NodeBudget budget = current.get();
+		if(budget == null)
+			return 0;
+		current.remove();
+		budgets.remove(budget.group, budget);
+		return budget.used.get();
+	}
+
+	/* returns the budget the current thread is charged to, or null */
+	private static NodeBudget get() {
+		if(budgets.isEmpty())
+			return null;
+		NodeBudget budget = current.get();
+		if(budget != null)
+			return budget;
+		ThreadGroup group = Thread.currentThread().getThreadGroup();
+		return (group == null ? null : budgets.get(group));
+	}
+
+	/**
+	 * Charges <code>nodes</code> nodes to the current thread's budget
+	 * (if it has one).
+	 *
+	 * @throws NodeBudgetExceededError if the budget is exhausted.
+	 */
+	static void charge(long nodes) {
+		NodeBudget budget = get();
+		if(budget == null)
+			return;
+		if(budget.used.addAndGet(nodes) > budget.limit)
+			throw new NodeBudgetExceededError(budget.limit);
+	}
+
+	/**
+	 * Returns the number of nodes the current thread may still
+	 * generate, or <code>-1</code> if it does not have a budget.
+	 */
+	static long remaining() {
+		NodeBudget budget = get();
+		if(budget == null)
+			return -1;
+		return Math.max(0, budget.limit - budget.used.get());
+	}
+
+	/**
+	 * Returns whether the current thread has exhausted its budget.
+	 */
+	static boolean isExhausted() {
+		NodeBudget budget = get();
+		return budget != null && budget.used.get() >= budget.limit;
+	}
+}
@@ -0,0 +1,24 @@
+package edu.drexel.cs.ai.othello;
+
+/**
+ * Thrown by {@link GameState#applyMove(Square)} (and the other
+ * functions that generate states) when the agent that is moving has
+ * exhausted its node budget.  It is an <code>Error</code> rather than
+ * an <code>Exception</code> so that agents catching
+ * <code>Exception</code> do not accidentally keep searching; the
+ * driver catches it and uses the agent's
+ * {@link OthelloPlayer#registerCurrentBestMove(Square) registered best move}.
+ *
+ * @see Othello#setNodeBudget(long)
+ */
+public class NodeBudgetExceededError extends Error {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs a <code>NodeBudgetExceededError</code> for a budget
+	 * of <code>nodes</code> nodes.
+	 */
+	public NodeBudgetExceededError(long nodes) {
+		super("The node budget of " + nodes + " nodes was exceeded!");
+	}
+}
@@ -1,11 +1,16 @@
 package edu.drexel.cs.ai.othello;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.security.Permission;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Condition;
@@ -21,9 +26,26 @@ public class Othello {
 	private OthelloPlayer player2;
 	private long p1timeUsed;
 	private long p2timeUsed;
+	private long p1cpuUsed;
+	private long p2cpuUsed;
+	private long p1bytesAllocated;
+	private long p2bytesAllocated;
+	private boolean cpuDeadlines;
+	private long allocationLimit;
+	private MemoryPolicy memoryPolicy;
+	private boolean p1forfeited;
+	private boolean p2forfeited;
+	private long nodeBudget;
+	private volatile boolean overNodeBudget;
+	private GameRecord record;
+	private SpectatorPublisher spectators;
+	private long spectatorGameId;
+	private SearchMetrics.Snapshot p1metrics;
+	private SearchMetrics.Snapshot p2metrics;
 	private GameState state;
 	private UserInterface ui;
 	private int turnDuration;
+	private boolean collectGarbage;
 	private static final JailSecurityManager jsm = new JailSecurityManager();
 
 	/**
@@ -54,35 +76,256 @@ public class Othello {
 		this.player2 = player2;
 		p1timeUsed = 0;
 		p2timeUsed = 0;
+		p1cpuUsed = 0;
+		p2cpuUsed = 0;
+		p1bytesAllocated = 0;
+		p2bytesAllocated = 0;
+		cpuDeadlines = false;
+		allocationLimit = 0;
+		memoryPolicy = MemoryPolicy.WARN;
+		p1forfeited = false;
+		p2forfeited = false;
+		nodeBudget = 0;
+		overNodeBudget = false;
+		record = null;
+		spectators = null;
+		spectatorGameId = 0;
+		p1metrics = SearchMetrics.Snapshot.EMPTY;
+		p2metrics = SearchMetrics.Snapshot.EMPTY;
 		turnDuration = 10;
+		collectGarbage = true;
 		this.ui = ui;
 		if(useSeed)
 			this.state = new GameState(seed);
 		else
 			this.state = new GameState();
-		System.setSecurityManager(jsm);
+		FlightRecorderEvents.register();
+		installSecurityManager();
 	}
 
+	private static boolean securityManagerInstalled = false;
+	private static boolean securityManagerUnsupported = false;
+
+	private static synchronized void installSecurityManager() {
+		/* only install the security manager once, since replacing it requires a permission it does not grant */
+		if(securityManagerUnsupported || securityManagerInstalled)
+			return;
+		try {
+			System.setSecurityManager(jsm);
+			securityManagerInstalled = true;
+		} catch(UnsupportedOperationException uoe) {
+			/* newer JVMs disable security managers unless -Djava.security.manager=allow is given */
+			securityManagerUnsupported = true;
+			System.err.println("Warning: This JVM does not support security managers, so agents may access files, the network and");
+			System.err.println("         other processes.  The -sandbox option limits their memory and CPU time, but not that access.");
+		}
+	}
+
+	/**
+	 * Sets the amount of time (in seconds) each agent has to make its
+	 * decision each turn.  A value <code>&lt;= 0</code> results in an
+	 * infinite deadline.
+	 */
+	public void setTurnDuration(int seconds) {
+		turnDuration = seconds;
+	}
+
+	/**
+	 * Returns the amount of time (in seconds) each agent has to make
+	 * its decision each turn.
+	 *
+	 * @see #setTurnDuration(int)
+	 */
+	public int getTurnDuration() {
+		return turnDuration;
+	}
+
+	/**
+	 * Sets whether or not a garbage collection is requested before
+	 * each of the agents' moves (the default).  This gives each agent
+	 * a clean heap when a single game is running, but it should be
+	 * disabled when many games share the same JVM.
+	 */
+	public void setCollectGarbageBeforeMoves(boolean collectGarbage) {
+		this.collectGarbage = collectGarbage;
+	}
+
+	/**
+	 * Sets whether the agents' deadlines are enforced using the CPU
+	 * time of their threads rather than wall-clock time.  This keeps an
+	 * agent from being penalized for time during which it was
+	 * descheduled on a loaded host.  To guard against agents that
+	 * block without using the CPU, an agent still times out once twice
+	 * its turn duration has elapsed on the wall clock.  Note that
+	 * agents are still given a wall-clock deadline, and may only
+	 * {@link OthelloPlayer#registerCurrentBestMove(Square) register}
+	 * moves before it.  The default is <code>false</code>.
+	 */
+	public void setCpuTimeDeadlines(boolean cpuDeadlines) {
+		this.cpuDeadlines = cpuDeadlines;
+	}
+
+	/**
+	 * Sets the maximum number of bytes an agent's thread may allocate
+	 * during a single move.  All of the agents share the same heap,
+	 * so this keeps a single agent from starving its opponent (or the
+	 * other games in a tournament) of memory.  Allocation is only
+	 * tracked if the JVM supports it, and humans are exempt.
+	 *
+	 * @param bytes the maximum allocation per move, or <code>0</code> for no limit (the default).
+	 * @param policy what to do when an agent exceeds the limit.
+	 */
+	public void setAllocationLimit(long bytes, MemoryPolicy policy) {
+		allocationLimit = bytes;
+		memoryPolicy = policy;
+	}
+
+	/**
+	 * Sets the maximum number of nodes an agent may generate during a
+	 * single move.  A node is a state generated by {@link
+	 * GameState#applyMove(Square)} or by a {@link SuccessorArena} on
+	 * the agent's thread or on any thread in its {@link
+	 * OthelloPlayer#getThreadGroup() thread group}.  An agent that exceeds its budget is stopped
+	 * by a {@link NodeBudgetExceededError} and its {@link
+	 * OthelloPlayer#registerCurrentBestMove(Square) registered best
+	 * move} is used, exactly as if it had missed its deadline.  Since
+	 * the budget does not depend on the speed of the host, it can be
+	 * used instead of a deadline (see {@link #setTurnDuration(int)})
+	 * to compare agents fairly while many games run in parallel.
+	 * Agents can query their remaining budget using {@link
+	 * OthelloPlayer#getNodeBudget()}.  Humans are exempt.
+	 *
+	 * @param nodes the maximum number of nodes per move, or <code>0</code> for no limit (the default).
+	 */
+	public void setNodeBudget(long nodes) {
+		nodeBudget = nodes;
+	}
+
+	/**
+	 * Records the moves of the game (and the final result) to
+	 * <code>record</code> as they are played.  The record should have
+	 * been created with the same seed as this game.
+	 */
+	public void setGameRecord(GameRecord record) {
+		this.record = record;
+	}
+
+	/**
+	 * Publishes every state of the game to <code>publisher</code>'s
+	 * spectators under the identifier <code>gameId</code>.
+	 */
+	public void setSpectatorPublisher(SpectatorPublisher publisher, long gameId) {
+		spectators = publisher;
+		spectatorGameId = gameId;
+	}
+
+	/**
+	 * Returns the current state of the game.
+	 */
+	public GameState getState() {
+		return state;
+	}
+
+	/**
+	 * The parent of the thread groups of all of the agents.
+	 */
+	private static final ThreadGroup agentThreads = new ThreadGroup("agents");
+
+	/**
+	 * Returns a new thread group for the threads of the agent named
+	 * <code>name</code>, or, if the current thread is constructing an
+	 * agent in {@link #instantiatePlayer(String, String)}, the group
+	 * prepared for it.
+	 */
+	static ThreadGroup newAgentThreadGroup(String name) {
+		ThreadGroup group = jsm.getConstructionGroup();
+		return (group == null ? new ThreadGroup(agentThreads, "agent " + name) : group);
+	}
+
+	/**
+	 * Restricts the agents.  The restrictions apply to the threads on
+	 * which agents are moving, and to every thread in an agent's
+	 * {@link OthelloPlayer#getThreadGroup() thread group}.  Threads
+	 * created by agent code (while it is moving, while an agent is
+	 * constructed by {@link #instantiatePlayer(String, String)}, or by
+	 * the agent's own threads) are placed in the agent's group, and
+	 * agent code may not create threads in any other group.
+	 */
 	private static class JailSecurityManager extends SecurityManager {
-		private HashSet<Thread> restrictedThreads;
+		/* these are consulted on every check, so they must not require a lock */
+		private final ConcurrentHashMap<Thread,ThreadGroup> restrictedThreads;
+		private final ConcurrentHashMap<Thread,ThreadGroup> constructingThreads;
 		public JailSecurityManager() {
-			restrictedThreads = new HashSet<Thread>();
+			restrictedThreads = new ConcurrentHashMap<Thread,ThreadGroup>();
+			constructingThreads = new ConcurrentHashMap<Thread,ThreadGroup>();
 		}
-		public void restrict(Thread thread) {
-			synchronized(restrictedThreads) {
-				restrictedThreads.add(thread);
-			}
+		public void restrict(Thread thread, OthelloPlayer player) {
+			restrictedThreads.put(thread, player.getThreadGroup());
 		}
 		public void unrestrict(Thread thread) {
-			synchronized(restrictedThreads) {
-				restrictedThreads.remove(thread);
+			restrictedThreads.remove(thread);
+		}
+		/* threads created by the current thread until endConstruction() is called belong to group */
+		void beginConstruction(ThreadGroup group) {
+			constructingThreads.put(Thread.currentThread(), group);
+		}
+		void endConstruction() {
+			constructingThreads.remove(Thread.currentThread());
+		}
+		ThreadGroup getConstructionGroup() {
+			return constructingThreads.get(Thread.currentThread());
+		}
+		/* returns the thread group of the agent whose code the current thread runs, or null */
+		private ThreadGroup getAgentGroup() {
+			Thread current = Thread.currentThread();
+			ThreadGroup group = restrictedThreads.get(current);
+			if(group == null)
+				group = constructingThreads.get(current);
+			if(group == null) {
+				group = current.getThreadGroup();
+				if(group == null || !agentThreads.parentOf(group))
+					group = null;
 			}
+			return group;
+		}
+		private boolean isRestricted() {
+			Thread current = Thread.currentThread();
+			if(restrictedThreads.containsKey(current))
+				return true;
+			ThreadGroup group = current.getThreadGroup();
+			return group != null && agentThreads.parentOf(group);
 		}
 		private void validate(String error) {
-			synchronized(restrictedThreads) {
-				if(restrictedThreads.contains(Thread.currentThread()))
-					throw new SecurityException(error);
-			}
+			if(isRestricted())
+				throw new SecurityException(error);
+		}
+		public ThreadGroup getThreadGroup() {
+			ThreadGroup group = getAgentGroup();
+			return (group == null ? super.getThreadGroup() : group);
+		}
+		public void checkAccess(ThreadGroup group) {
+			ThreadGroup agent = getAgentGroup();
+			if(agent != null && !agent.parentOf(group))
+				throw new SecurityException("An agent may only create threads in its own thread group.");
+			super.checkAccess(group);
+		}
+		/* Only agent code is subject to the default access control
+		 * policy; the game engine itself (e.g. a GameServer shutting
+		 * down its thread pool) is trusted. */
+		public void checkPermission(Permission perm) {
+			if(isRestricted())
+				super.checkPermission(perm);
+		}
+		public void checkPermission(Permission perm, Object context) {
+			if(isRestricted())
+				super.checkPermission(perm, context);
+		}
+		public void checkPackageAccess(String pkg) {
+			/* the flight recorder events committed from the agents'
+			 * threads (e.g. by GameState) load their handlers from here,
+			 * but only if the events are enabled (e.g. by -jfr) */
+			if(!FlightRecorderEvents.ENABLED || !pkg.equals("jdk.jfr.internal.handlers"))
+				super.checkPackageAccess(pkg);
 		}
 		public void checkWrite(String filename) {
 			validate("You cannot write to any files!");
@@ -126,18 +369,49 @@ public class Othello {
 			{
 		Class<?> c = Class.forName(className);
 		Constructor<?> constr = (Constructor<?>)c.getDeclaredConstructor(String.class);
-		Object o = constr.newInstance(playerName);
+		/* the security manager must be in place to catch the threads the agent creates */
+		installSecurityManager();
+		jsm.beginConstruction(new ThreadGroup(agentThreads, "agent " + playerName));
+		Object o;
+		try {
+			o = constr.newInstance(playerName);
+		} finally {
+			jsm.endConstruction();
+		}
 		return (OthelloPlayer)o;
 			}
 
+	/**
+	 * What to do when an agent allocates more memory during a move
+	 * than it is allowed.
+	 *
+	 * @see Othello#setAllocationLimit(long, MemoryPolicy)
+	 */
+	public static enum MemoryPolicy {
+		/** Log a warning, but accept the agent's move. */
+		WARN,
+		/** Stop the agent and move it randomly for the rest of the game. */
+		FORFEIT
+	}
+
 	private class PlayerTimerThread implements Runnable {
-		Thread thread;
+		volatile Thread thread;
 		OthelloPlayer player;
 		Date deadline;
-		Square move;
+		volatile Square move;
 		GameState state;
 		Date startTime;
 		Date endTime;
+		Date hardDeadline;
+		long cpuLimitNanos;
+		long cpuNanos;
+		long bytesAllocated;
+		volatile long bytesStart;
+		/* the agent's other threads (e.g. a search pool) are charged for the move too */
+		final ThreadGroup group;
+		long groupCpuStart;
+		long groupBytesStart;
+		boolean overBudget;
 		private final ReentrantLock threadLock = new ReentrantLock();
 		private final Condition terminated = threadLock.newCondition();
 		private final Condition started = threadLock.newCondition();
@@ -149,6 +423,51 @@ public class Othello {
 			thread = new Thread(this);
 			startTime = null;
 			endTime = null;
+			hardDeadline = null;
+			cpuNanos = 0;
+			bytesAllocated = 0;
+			bytesStart = -1;
+			group = player.getThreadGroup();
+			groupCpuStart = -1;
+			groupBytesStart = -1;
+			overBudget = false;
+		}
+
+		/* returns the CPU time used by the agent's thread group since the move started, or -1 */
+		private long getGroupCpuNanos() {
+			if(groupCpuStart < 0)
+				return -1;
+			/* threads that terminated during the move are no longer counted */
+			return Math.max(0, ThreadResources.getCpuTimeNanos(group) - groupCpuStart);
+		}
+
+		/* returns the bytes allocated by the agent's thread group since the move started, or -1 */
+		private long getGroupBytesAllocated() {
+			if(groupBytesStart < 0)
+				return -1;
+			return Math.max(0, ThreadResources.getAllocatedBytes(group) - groupBytesStart);
+		}
+
+		/* returns whether the (still running) agent has exceeded its allocation limit */
+		private boolean exceededAllocationLimit() {
+			Thread t = thread;
+			long start = bytesStart;
+			if(allocationLimit <= 0 || memoryPolicy != MemoryPolicy.FORFEIT || t == null || start < 0)
+				return false;
+			long allocated = ThreadResources.getAllocatedBytes(t);
+			return allocated >= 0 && allocated - start + Math.max(0, getGroupBytesAllocated()) > allocationLimit;
+		}
+
+		/* returns whether the agent has run out of time */
+		private boolean expired() {
+			Date now = new Date();
+			if(!cpuDeadlines)
+				return !now.before(deadline);
+			if(!now.before(hardDeadline))
+				return true;
+			Thread t = thread;
+			long cpu = (t == null ? cpuNanos : ThreadResources.getCpuTimeNanos(t));
+			return cpu + Math.max(0, getGroupCpuNanos()) > cpuLimitNanos;
 		}
 
 		public void terminate() {
@@ -179,25 +498,56 @@ public class Othello {
 			try {
 				startTime = new Date();
 				deadline = new Date(startTime.getTime() + (long)timeLimitSeconds * 1000);
+				hardDeadline = new Date(startTime.getTime() + 2 * (long)timeLimitSeconds * 1000);
+				cpuLimitNanos = (long)timeLimitSeconds * 1000000000L;
+				groupCpuStart = ThreadResources.getCpuTimeNanos(group);
+				groupBytesStart = ThreadResources.getAllocatedBytes(group);
 				thread.start();
 				started.await();
 			} catch (InterruptedException e) {
 			} finally {
 				threadLock.unlock();
 			}
-			while(move == null && (new Date()).before(deadline)) {
+			FlightRecorderEvents.TimerWait waitEvent = FlightRecorderEvents.beginTimerWait(player);
+			while(move == null && thread != null && !expired()) {
+				if(exceededAllocationLimit()) {
+					overBudget = true;
+					break;
+				}
+				threadLock.lock();
 				try {
-					Thread.yield();
-					Thread.sleep(sleepInterval);
-				} catch(Exception e) {}
-				ui.updateTimeRemaining(player, (new Long((deadline.getTime() - (new Date()).getTime()) / 1000)).intValue());
+					/* wake up as soon as the agent finishes */
+					if(thread != null)
+						terminated.await(sleepInterval, TimeUnit.MILLISECONDS);
+				} catch(InterruptedException e) {
+				} finally {
+					threadLock.unlock();
+				}
+				updateTimeRemaining(player, (new Long((deadline.getTime() - (new Date()).getTime()) / 1000)).intValue());
+			}
+			if(waitEvent != null) {
+				waitEvent.timedOut = (move == null);
+				FlightRecorderEvents.end(waitEvent);
 			}
 			terminate();
-			if(move == null)
+			/* the agent's thread only accounted for itself */
+			long groupCpu = getGroupCpuNanos();
+			long groupBytes = getGroupBytesAllocated();
+			cpuNanos = (cpuNanos < 0 || groupCpu < 0 ? -1 : cpuNanos + groupCpu);
+			bytesAllocated = (bytesAllocated < 0 || groupBytes < 0 ? -1 : bytesAllocated + groupBytes);
+			if(cpuDeadlines && move != null && endTime != null && endTime.after(deadline) && cpuNanos > cpuLimitNanos)
+				move = null;
+			if(overBudget)
+				move = null;
+			if(move == null) {
+				/* the agent is only charged up to its deadline */
+				if(!cpuDeadlines && endTime != null && endTime.after(deadline))
+					endTime = deadline;
 				throw new TimeoutException(player.getName() + " took too long to move!");
+			}
 			if(endTime == null) {
 				Date currTime = new Date();
-				if(currTime.getTime() - startTime.getTime() > (long)timeLimitSeconds * 1000)
+				if(!cpuDeadlines && currTime.getTime() - startTime.getTime() > (long)timeLimitSeconds * 1000)
 					endTime = new Date(startTime.getTime() + (long)timeLimitSeconds * 1000);
 				else
 					endTime = currTime;
@@ -214,25 +564,63 @@ public class Othello {
 				return 0;
 		}
 
+		/**
+		 * Returns the CPU time (in milliseconds) used by the agent's
+		 * thread and thread group, or <code>-1</code> if it could not
+		 * be measured.
+		 */
+		public long getCpuMillis() {
+			return (cpuNanos < 0 ? -1 : cpuNanos / 1000000);
+		}
+
+		/**
+		 * Returns the number of bytes allocated by the agent's thread
+		 * and thread group, or <code>-1</code> if it could not be
+		 * measured.
+		 */
+		public long getBytesAllocated() {
+			return bytesAllocated;
+		}
+
+		/**
+		 * Returns whether the agent was stopped because it exceeded its
+		 * allocation limit.
+		 */
+		public boolean isOverBudget() {
+			return overBudget;
+		}
+
 		public void run() {
 			threadLock.lock();
-			started.signal();
 			try {
-				jsm.restrict(thread);
-				Square m = null;
+				started.signal();
+			} finally {
+				threadLock.unlock();
+			}
+			/* the lock is not held while the agent runs, so that the timer can interrupt it */
+			long cpuStart = ThreadResources.getCpuTimeNanos();
+			bytesStart = ThreadResources.getAllocatedBytes();
+			jsm.restrict(thread, player);
+			Square m = null;
+			try {
+				m = getMoveInternal(player, state, deadline);
+			} finally {
+				threadLock.lock();
 				try {
-					m = player.getMoveInternal(state, deadline);
-				} finally {
+					cpuNanos = (cpuStart < 0 ? -1 : ThreadResources.getCpuTimeNanos() - cpuStart);
+					bytesAllocated = (bytesStart < 0 ? -1 : ThreadResources.getAllocatedBytes() - bytesStart);
 					if(endTime == null)
 						endTime = new Date();
 					if(deadline == null || endTime.compareTo(deadline) <= 0)
 						move = m;
+					else if(cpuDeadlines && cpuNanos <= cpuLimitNanos && endTime.compareTo(hardDeadline) <= 0)
+						move = m;
 					jsm.unrestrict(thread);
 					thread = null;
 					terminated.signal();
+				} finally {
+					threadLock.unlock();
 				}
-			} finally {
-				threadLock.unlock();
 			}
 		}
 	}
@@ -246,75 +634,122 @@ public class Othello {
 		while(state.getStatus() == GameState.GameStatus.PLAYING) {
 			if(state.getPreviousState() != null && state.getPreviousState().getCurrentPlayer() == state.getCurrentPlayer())
 				log((state.getCurrentPlayer() == GameState.Player.PLAYER1 ? player1.getName() : player2.getName()) + " gets to go again!");
-			ui.handleStateUpdate(state);
+			handleStateUpdate(state);
 			OthelloPlayer player = (state.getCurrentPlayer() == GameState.Player.PLAYER1 ? player1 : player2);
 			boolean validMove = true;
 			do {
 				Square move = null;
+				GameRecord.Decision decision = GameRecord.Decision.AGENT;
+				long millis = 0;
 
 				if(!validMove && !(player instanceof HumanOthelloPlayer)) {
 					/* the AI player made an invalud move last try, so penalize it by moving it randomly */
-					Square moves[] = state.getValidMoves().toArray(new Square[0]);
-					int next = state.getRandom().nextInt(moves.length);
-					log("Randomly moving " + player.getName() + " to " + moves[next].toString() + "...");
-					move = moves[next];
+					move = moveRandomly(player);
+					decision = GameRecord.Decision.RANDOM;
+				} else if(isForfeited(player)) {
+					/* the AI player exceeded its allocation limit earlier in the game */
+					move = moveRandomly(player);
+					decision = GameRecord.Decision.RANDOM;
 				}
 
 				validMove = true;
 
-				if(turnDuration <= 0 || player instanceof HumanOthelloPlayer) {
-					ui.updateTimeRemaining(player, -1); /* there is no limit for humans */
+				if(move != null) {
+					/* the AI player was moved randomly */
+				} else if(turnDuration <= 0 || player instanceof HumanOthelloPlayer) {
+					updateTimeRemaining(player, -1); /* there is no limit for humans */
+					player.getSearchMetrics().reset();
+					long cpuStart = ThreadResources.getCpuTimeNanos();
+					long bytesStart = ThreadResources.getAllocatedBytes();
+					/* the agent's other threads (e.g. a search pool) are charged for the move too */
+					ThreadGroup group = player.getThreadGroup();
+					long groupCpuStart = ThreadResources.getCpuTimeNanos(group);
+					long groupBytesStart = ThreadResources.getAllocatedBytes(group);
 					Date start = new Date();
-					move = player.getMoveInternal(state, null);
+					move = getMoveInternal(player, state, null);
 					Date end = new Date();
-					ui.updateTimeRemaining(player, -1); /* there is no limit for humans */
+					if(overNodeBudget) {
+						decision = GameRecord.Decision.BEST;
+						if(move == null) {
+							move = moveRandomly(player);
+							decision = GameRecord.Decision.RANDOM;
+						}
+					}
+					long bytesAllocated = (bytesStart < 0 || groupBytesStart < 0 ? -1 : ThreadResources.getAllocatedBytes() - bytesStart + Math.max(0, ThreadResources.getAllocatedBytes(group) - groupBytesStart));
+					updateResourcesUsed(player,
+							(cpuStart < 0 || groupCpuStart < 0 ? -1 : (ThreadResources.getCpuTimeNanos() - cpuStart + Math.max(0, ThreadResources.getCpuTimeNanos(group) - groupCpuStart)) / 1000000),
+							bytesAllocated);
+					if(!(player instanceof HumanOthelloPlayer) && !checkAllocation(player, bytesAllocated)) {
+						move = moveRandomly(player);
+						decision = GameRecord.Decision.RANDOM;
+					}
+					millis = end.getTime() - start.getTime();
+					updateTimeRemaining(player, -1); /* there is no limit for humans */
 					if(state.getCurrentPlayer() == GameState.Player.PLAYER1) {
 						p1timeUsed += end.getTime() - start.getTime();
-						ui.updateTimeUsed(player, p1timeUsed);
+						updateTimeUsed(player, p1timeUsed);
 					}
 					else {
 						p2timeUsed += end.getTime() - start.getTime();
-						ui.updateTimeUsed(player, p2timeUsed);
+						updateTimeUsed(player, p2timeUsed);
 					}
-				} else if(move == null) {
+					updateSearchMetrics(player, end.getTime() - start.getTime());
+				} else {
 					/* request a garbage collection before we run the AI agent */
-					Runtime.getRuntime().gc();
+					if(collectGarbage)
+						Runtime.getRuntime().gc();
+					player.getSearchMetrics().reset();
 
 					/* if we didn't already move the AI player randomly... */
 					PlayerTimerThread ptt = new PlayerTimerThread(player, state);
 					try {
 						move = ptt.getMove(turnDuration);
+						if(overNodeBudget)
+							decision = (move == null ? GameRecord.Decision.RANDOM : GameRecord.Decision.BEST);
 					} catch(TimeoutException te) {
-						log(te);
-						/* did the agent register a best move?  if so, use that.  otherwise, move randomly */
-						move = ptt.player.getCurrentBestMove();
-						if(move == null) {
-							Square moves[] = state.getValidMoves().toArray(new Square[0]);
-							int next = state.getRandom().nextInt(moves.length);
-							log("Randomly moving " + player.getName() + " to " + moves[next].toString() + "...");
-							move = moves[next];
-						} else
-							log("Using " + player.getName() + "'s best move: " + move);
+						if(!ptt.isOverBudget()) {
+							log(te);
+							/* did the agent register a best move?  if so, use that.  otherwise, move randomly */
+							move = ptt.player.getCurrentBestMove();
+							decision = GameRecord.Decision.BEST;
+							if(move == null) {
+								move = moveRandomly(player);
+								decision = GameRecord.Decision.RANDOM;
+							} else
+								log("Using " + player.getName() + "'s best move: " + move);
+						}
 					}
 					if(state.getCurrentPlayer() == GameState.Player.PLAYER1) {
 						p1timeUsed += ptt.getElapsedMillis();
-						ui.updateTimeUsed(player, p1timeUsed);
+						updateTimeUsed(player, p1timeUsed);
 					}
 					else {
 						p2timeUsed += ptt.getElapsedMillis();
-						ui.updateTimeUsed(player, p2timeUsed);
+						updateTimeUsed(player, p2timeUsed);
 					}
+					updateResourcesUsed(player, ptt.getCpuMillis(), ptt.getBytesAllocated());
+					if(!checkAllocation(player, ptt.getBytesAllocated()) || move == null) {
+						move = moveRandomly(player);
+						decision = GameRecord.Decision.RANDOM;
+					}
+					millis = ptt.getElapsedMillis();
+					updateSearchMetrics(player, ptt.getElapsedMillis());
 				}
 				try {
+					GameState.Player mover = state.getCurrentPlayer();
 					state = state.applyMove(move);
+					if(record != null)
+						record.addMove(mover, move, decision, millis, player.getSearchMetrics().snapshot(millis).getNodes());
 				} catch(InvalidMoveException ime) {
 					log(ime);
-					ui.handleStateUpdate(state);
+					handleStateUpdate(state);
 					validMove = false;
 				}
 			} while(!validMove);
 		}
-		ui.handleStateUpdate(state);
+		if(record != null)
+			record.setResult(state);
+		handleStateUpdate(state);
 		switch(state.getStatus()) {
 		case PLAYER1WON:
 			return player1;
@@ -325,6 +760,132 @@ public class Othello {
 		}
 	}
 
+	/* runs the agent; if it exceeds its node budget, its registered best move is returned and overNodeBudget is set */
+	private Square getMoveInternal(OthelloPlayer player, GameState state, Date deadline) {
+		FlightRecorderEvents.AgentMove event = FlightRecorderEvents.beginAgentMove(player, deadline == null ? -1 : deadline.getTime() - System.currentTimeMillis());
+		Square move = null;
+		boolean budgeted = (nodeBudget > 0 && !(player instanceof HumanOthelloPlayer));
+		overNodeBudget = false;
+		if(budgeted)
+			NodeBudget.begin(player.getThreadGroup(), nodeBudget);
+		try {
+			move = player.getMoveInternal(state, deadline);
+		} catch(NodeBudgetExceededError nbee) {
+			overNodeBudget = true;
+			log(player.getName() + " exceeded its node budget of " + nodeBudget + " nodes.");
+			move = player.getCurrentBestMove();
+			if(move != null)
+				log("Using " + player.getName() + "'s best move: " + move);
+		} finally {
+			if(budgeted)
+				NodeBudget.end();
+			if(event != null) {
+				event.move = (move == null ? null : move.toString());
+				FlightRecorderEvents.end(event);
+			}
+		}
+		return move;
+	}
+
+	private void handleStateUpdate(GameState newState) {
+		FlightRecorderEvents.UIUpdate event = FlightRecorderEvents.beginUIUpdate("handleStateUpdate");
+		ui.handleStateUpdate(newState);
+		FlightRecorderEvents.end(event);
+		if(spectators != null)
+			spectators.publish(spectatorGameId, newState);
+	}
+
+	private Square moveRandomly(OthelloPlayer player) {
+		Square moves[] = state.getValidMoves().toArray(new Square[0]);
+		int next = state.getRandom().nextInt(moves.length);
+		log("Randomly moving " + player.getName() + " to " + moves[next].toString() + "...");
+		return moves[next];
+	}
+
+	private boolean isForfeited(OthelloPlayer player) {
+		return (player == player1 ? p1forfeited : p2forfeited);
+	}
+
+	/**
+	 * Reports the memory an agent allocated during its last move and
+	 * enforces the allocation limit.  Returns <code>false</code> if the
+	 * agent's move should be discarded because it forfeited.
+	 */
+	private boolean checkAllocation(OthelloPlayer player, long bytesAllocated) {
+		if(allocationLimit <= 0 || bytesAllocated < 0)
+			return true;
+		Runtime rt = Runtime.getRuntime();
+		log(player.getName() + " allocated " + (bytesAllocated >> 10) + "KB this move (the heap is using " + ((rt.totalMemory() - rt.freeMemory()) >> 20) + "MB of " + (rt.maxMemory() >> 20) + "MB)");
+		if(bytesAllocated <= allocationLimit)
+			return true;
+		if(memoryPolicy == MemoryPolicy.WARN) {
+			log("Warning: " + player.getName() + " exceeded its allocation limit of " + (allocationLimit >> 10) + "KB per move!");
+			return true;
+		}
+		log(player.getName() + " exceeded its allocation limit of " + (allocationLimit >> 10) + "KB per move and forfeits the rest of its moves!");
+		if(player == player1)
+			p1forfeited = true;
+		else
+			p2forfeited = true;
+		return false;
+	}
+
+	private void updateTimeRemaining(OthelloPlayer player, int secondsRemaining) {
+		FlightRecorderEvents.UIUpdate event = FlightRecorderEvents.beginUIUpdate("updateTimeRemaining");
+		ui.updateTimeRemaining(player, secondsRemaining);
+		FlightRecorderEvents.end(event);
+	}
+
+	private void updateTimeUsed(OthelloPlayer player, long millisUsed) {
+		FlightRecorderEvents.UIUpdate event = FlightRecorderEvents.beginUIUpdate("updateTimeUsed");
+		ui.updateTimeUsed(player, millisUsed);
+		FlightRecorderEvents.end(event);
+	}
+
+	/* charges the CPU time and memory used by a move to the player (negative values are unknown) */
+	private void updateResourcesUsed(OthelloPlayer player, long cpuMillis, long bytesAllocated) {
+		long cpuUsed, allocated;
+		if(player == player1) {
+			cpuUsed = p1cpuUsed = (cpuMillis < 0 || p1cpuUsed < 0 ? -1 : p1cpuUsed + cpuMillis);
+			allocated = p1bytesAllocated = (bytesAllocated < 0 || p1bytesAllocated < 0 ? -1 : p1bytesAllocated + bytesAllocated);
+		} else {
+			cpuUsed = p2cpuUsed = (cpuMillis < 0 || p2cpuUsed < 0 ? -1 : p2cpuUsed + cpuMillis);
+			allocated = p2bytesAllocated = (bytesAllocated < 0 || p2bytesAllocated < 0 ? -1 : p2bytesAllocated + bytesAllocated);
+		}
+		if(ui instanceof ResourceUsageListener) {
+			FlightRecorderEvents.UIUpdate event = FlightRecorderEvents.beginUIUpdate("updateResourcesUsed");
+			((ResourceUsageListener)ui).updateResourcesUsed(player, cpuUsed, allocated);
+			FlightRecorderEvents.end(event);
+		}
+	}
+
+	private void updateSearchMetrics(OthelloPlayer player, long elapsedMillis) {
+		SearchMetrics.Snapshot moveMetrics = player.getSearchMetrics().snapshot(elapsedMillis);
+		SearchMetrics.Snapshot gameMetrics;
+		if(player == player1)
+			gameMetrics = p1metrics = p1metrics.add(moveMetrics);
+		else
+			gameMetrics = p2metrics = p2metrics.add(moveMetrics);
+		if(ui instanceof SearchMetricsListener)
+			((SearchMetricsListener)ui).updateSearchMetrics(player, moveMetrics, gameMetrics);
+	}
+
+	/**
+	 * Returns the search statistics that <code>player</code> has
+	 * published thus far in this game, aggregated over all of its
+	 * moves.
+	 *
+	 * @see OthelloPlayer#countNodes(long)
+	 */
+	public SearchMetrics.Snapshot getSearchMetrics(OthelloPlayer player) {
+		if(player == player1)
+			return p1metrics;
+		else if(player == player2)
+			return p2metrics;
+		else
+			return SearchMetrics.Snapshot.EMPTY;
+	}
+
 	/**
 	 * Logs a message to the user interface.
 	 */
@@ -387,6 +948,21 @@ public class Othello {
 		long seed = 0;
 		boolean seedSet = false;
 		int turnDuration = -1;
+		String jfrFile = null;
+		boolean sandbox = false;
+		boolean cpuDeadlines = false;
+		long allocationLimit = 0;
+		long nodeBudget = 0;
+		String recordFile = null;
+		String logFile = null;
+		int spectatorPort = -1;
+		String endgameFile = null;
+		String probCutFile = null;
+		GameRecord replay = null;
+		MemoryPolicy memoryPolicy = MemoryPolicy.WARN;
+		int sandboxMemory = 256;
+		long sandboxCpuSeconds = 0;
+		SandboxPool sandboxPool = null;
 
 		for(int i=0; i<args.length; i++) {
 			if(!args[i].startsWith("-")) {
@@ -425,6 +1001,148 @@ public class Othello {
 					turnDuration = Integer.parseInt(args[++i]);
 				}
 			}
+			else if(args[i].equals("-jfr")) {
+				/**
+				 * Record Java Flight Recorder events to a file
+				 */
+				if(i == args.length - 1) {
+					System.err.println("Error: -jfr requires an argument (the file to which to write the recording)");
+					printUse = true;
+				}
+				else {
+					jfrFile = args[++i];
+				}
+			}
+			else if(args[i].equals("-cpu")) {
+				cpuDeadlines = true;
+			}
+			else if(args[i].equals("-m")) {
+				/**
+				 * Set the per-move allocation limit of the agents
+				 */
+				if(i == args.length - 1) {
+					System.err.println("Error: -m requires an argument (the number of megabytes an agent may allocate each turn)");
+					printUse = true;
+				}
+				else {
+					allocationLimit = Long.parseLong(args[++i]) << 20;
+				}
+			}
+			else if(args[i].equals("-n")) {
+				/**
+				 * Set the per-move node budget of the agents
+				 */
+				if(i == args.length - 1) {
+					System.err.println("Error: -n requires an argument (the number of nodes an agent may generate each turn)");
+					printUse = true;
+				}
+				else {
+					nodeBudget = Long.parseLong(args[++i]);
+				}
+			}
+			else if(args[i].equals("-mp")) {
+				/**
+				 * Set the policy for agents that exceed their allocation limit
+				 */
+				if(i == args.length - 1) {
+					System.err.println("Error: -mp requires an argument (either \"warn\" or \"forfeit\")");
+					printUse = true;
+				}
+				else {
+					try {
+						memoryPolicy = MemoryPolicy.valueOf(args[++i].toUpperCase());
+					} catch(IllegalArgumentException iae) {
+						System.err.println("Error: unknown memory policy \"" + args[i] + "\"");
+						printUse = true;
+					}
+				}
+			}
+			else if(args[i].equals("-record") || args[i].equals("-replay")) {
+				/**
+				 * Record a game to, or replay a game from, a file
+				 */
+				if(i == args.length - 1) {
+					System.err.println("Error: " + args[i] + " requires an argument (the game record file)");
+					printUse = true;
+				}
+				else if(args[i].equals("-record")) {
+					recordFile = args[++i];
+				}
+				else {
+					try {
+						replay = GameRecord.read(new File(args[++i]));
+					} catch(IOException ioe) {
+						System.err.println("Error: Could not read the game record: " + ioe.getMessage());
+						System.exit(1);
+					}
+				}
+			}
+			else if(args[i].equals("-log")) {
+				/**
+				 * Write the log of the graphical user interface to a file
+				 */
+				if(i == args.length - 1) {
+					System.err.println("Error: -log requires an argument (the file to which to write the log)");
+					printUse = true;
+				}
+				else {
+					logFile = args[++i];
+				}
+			}
+			else if(args[i].equals("-spectate")) {
+				/**
+				 * Stream the game to spectators
+				 */
+				if(i == args.length - 1) {
+					System.err.println("Error: -spectate requires an argument (the port on which to accept spectators)");
+					printUse = true;
+				}
+				else {
+					spectatorPort = Integer.parseInt(args[++i]);
+				}
+			}
+			else if(args[i].equals("-endgame")) {
+				/**
+				 * Share solved endgames with other games through a file
+				 */
+				if(i == args.length - 1) {
+					System.err.println("Error: -endgame requires an argument (the endgame database file)");
+					printUse = true;
+				}
+				else {
+					endgameFile = args[++i];
+				}
+			}
+			else if(args[i].equals("-probcut")) {
+				/**
+				 * Prune the AlphaBetaOthelloPlayer's search with calibrated ProbCut parameters
+				 */
+				if(i == args.length - 1) {
+					System.err.println("Error: -probcut requires an argument (the ProbCut parameter file)");
+					printUse = true;
+				}
+				else {
+					probCutFile = args[++i];
+				}
+			}
+			else if(args[i].equals("-sandbox")) {
+				sandbox = true;
+			}
+			else if(args[i].equals("-sandboxmem") || args[i].equals("-sandboxcpu")) {
+				/**
+				 * Set the limits of the sandbox worker processes
+				 */
+				if(i == args.length - 1) {
+					System.err.println("Error: " + args[i] + " requires an argument (the " + (args[i].equals("-sandboxmem") ? "heap size in megabytes" : "CPU time in seconds") + ")");
+					printUse = true;
+				}
+				else if(args[i].equals("-sandboxmem")) {
+					sandboxMemory = Integer.parseInt(args[++i]);
+				}
+				else {
+					sandboxCpuSeconds = Long.parseLong(args[++i]);
+				}
+			}
 			else if(args[i].equals("-nw")) {
 				ui = new ConsoleUserInterface();
 			}
@@ -437,12 +1155,81 @@ public class Othello {
 			}
 		}
 
+		if(jfrFile != null) {
+			/* this must be set before any of the flight recorder events are first used */
+			System.setProperty(FlightRecorderEvents.PROPERTY, "true");
+			try {
+				FlightRecorderEvents.startRecording(jfrFile);
+			} catch(Exception e) {
+				System.err.println("Error: Could not start the flight recording: " + e.toString());
+				System.exit(1);
+			}
+		}
+
 		if(ui == null)
 			ui = new GraphicalUserInterface();
 
+		if(logFile != null) {
+			if(ui instanceof GraphicalUserInterface) {
+				try {
+					/* rotate the log every 10MB, keeping three old logs */
+					((GraphicalUserInterface)ui).setLogFile(new File(logFile), 10L << 20, 3);
+				} catch(IOException ioe) {
+					System.err.println("Error: Could not open the log file: " + ioe.getMessage());
+					System.exit(1);
+				}
+			} else
+				System.err.println("Warning: -log is only supported by the graphical user interface; the other interfaces log to the console.");
+		}
+
+		EndgameDatabase endgames = null;
+		if(endgameFile != null && !printUse) {
+			try {
+				endgames = new EndgameDatabase(new File(endgameFile), 64);
+				EndgameDatabase.setDefault(endgames);
+			} catch(IOException ioe) {
+				System.err.println("Error: Could not open the endgame database: " + ioe.getMessage());
+				System.exit(1);
+			}
+		}
+
+		if(probCutFile != null && !printUse) {
+			try {
+				ProbCutParameters.setDefault(ProbCutParameters.read(new File(probCutFile)));
+			} catch(IOException ioe) {
+				System.err.println("Error: Could not read the ProbCut parameters: " + ioe.getMessage());
+				System.exit(1);
+			}
+		}
+
+		if(sandbox && !printUse) {
+			try {
+				/* the agents in the workers would otherwise play without the endgame database and the ProbCut parameters */
+				ArrayList<String> workerArguments = new ArrayList<String>();
+				if(endgameFile != null) {
+					workerArguments.add("-endgame");
+					workerArguments.add(endgameFile);
+				}
+				if(probCutFile != null) {
+					workerArguments.add("-probcut");
+					workerArguments.add(probCutFile);
+				}
+				sandboxPool = new SandboxPool(2, System.getProperty("java.class.path"), sandboxMemory, sandboxCpuSeconds * 1000, workerArguments);
+			} catch(Exception e) {
+				System.err.println("Error: Could not start the sandbox worker processes: " + e.toString());
+				System.exit(1);
+			}
+		}
+
 		OthelloPlayer players[];
 
-		if(sargs < 2) {
+		if(replay != null) {
+			/* replay the recorded moves at full speed, without running the agents */
+			players = new OthelloPlayer[] {new ReplayOthelloPlayer(replay.getPlayerName(1), replay), new ReplayOthelloPlayer(replay.getPlayerName(2), replay)};
+			seed = replay.getSeed();
+			seedSet = true;
+			turnDuration = -1;
+		} else if(sargs < 2) {
 			players = ui.getPlayers();
 		} else {
 			players = new OthelloPlayer[2];
@@ -463,7 +1250,7 @@ public class Othello {
 					else if(player2name.equals(""))
 						player2name = "Player 2";
 					try {
-						players[0] = instantiatePlayer(player1class, player1name);
+						players[0] = instantiatePlayer(player1class, player1name, sandboxPool);
 					} catch(NoSuchMethodException nsme1) {
 						System.err.println("Error Instantiating Agent: Make sure the agent class for player 1 (" + player1class + ")\nhas a constructor that accepts a single string as an argument!");
 						printUse = true;
@@ -472,7 +1259,7 @@ public class Othello {
 						printUse = true;
 					}
 					try {
-						players[1] = instantiatePlayer(player2class, player2name);
+						players[1] = instantiatePlayer(player2class, player2name, sandboxPool);
 					} catch(NoSuchMethodException nsme2) {
 						System.err.println("Error Instantiating Agent: Make sure the agent class for player 2 (" + player2class + ")\nhas a constructor that accepts a single string as an argument!");
 						printUse = true;
@@ -494,12 +1281,35 @@ public class Othello {
 			players[0].setLogger((Logger)ui);
 			players[1].setLogger((Logger)ui);
 		}
+		GameRecord record = null;
+		if(recordFile != null) {
+			/* the seed determines the initial state, so it must be known to replay the game */
+			if(!seedSet) {
+				seed = System.currentTimeMillis();
+				seedSet = true;
+			}
+			record = new GameRecord(seed, turnDuration, getPlayerClass(players[0], sarg[0]), players[0].getName(), getPlayerClass(players[1], sargs > 2 ? sarg[2] : sarg[1]), players[1].getName());
+		}
 		Othello othello;
 		if(seedSet)
 			othello = new Othello(players[0], players[1], ui, seed);
 		else
 			othello = new Othello(players[0], players[1], ui);
-		othello.turnDuration = turnDuration;
+		othello.setTurnDuration(turnDuration);
+		othello.setCpuTimeDeadlines(cpuDeadlines);
+		othello.setAllocationLimit(allocationLimit, memoryPolicy);
+		othello.setNodeBudget(nodeBudget);
+		othello.setGameRecord(record);
+		SpectatorPublisher publisher = null;
+		if(spectatorPort >= 0) {
+			try {
+				publisher = new SpectatorPublisher(spectatorPort);
+				othello.setSpectatorPublisher(publisher, 1);
+			} catch(IOException ioe) {
+				System.err.println("Error: Could not accept spectators on port " + spectatorPort + ": " + ioe.getMessage());
+				System.exit(1);
+			}
+		}
 		if(ui instanceof Logger)
 			((Logger)ui).log(getVersionInfo(), null);
 		else
@@ -509,6 +1319,41 @@ public class Othello {
 			othello.log("It was a tie!");
 		else
 			othello.log("The winner was " + winner + "!");
+		if(replay != null) {
+			GameState state = othello.getState();
+			if(state.getScore(GameState.Player.PLAYER1) != replay.getScore(1) || state.getScore(GameState.Player.PLAYER2) != replay.getScore(2))
+				othello.log("Warning: The replayed game did not end with the recorded score of " + replay.getScore(1) + " to " + replay.getScore(2) + "!");
+		}
+		if(record != null) {
+			try {
+				record.write(new File(recordFile));
+			} catch(IOException ioe) {
+				System.err.println("Error: Could not write the game record: " + ioe.getMessage());
+			}
+		}
+		if(publisher != null)
+			publisher.close();
+		if(endgames != null)
+			endgames.flush();
+		FlightRecorderEvents.stopRecording();
+		players[0].close();
+		players[1].close();
+		if(sandboxPool != null)
+			sandboxPool.close();
+	}
+
+	/* returns the class name of an agent, resolving the name given on the command line if it was chosen there */
+	private static String getPlayerClass(OthelloPlayer player, String arg) {
+		String className = (arg == null ? null : getPlayerClassName(arg));
+		return (className == null ? player.getClass().getName() : className);
+	}
+
+	/* instantiates the agent in a sandbox worker process if a pool is given (humans always run in-process) */
+	private static OthelloPlayer instantiatePlayer(String className, String playerName, SandboxPool sandboxPool) throws Exception {
+		if(sandboxPool == null || className.equals(HumanOthelloPlayer.class.getName()))
+			return instantiatePlayer(className, playerName);
+		else
+			return sandboxPool.newPlayer(className, playerName);
 	}
 
 	static String getVersionInfo() {
@@ -540,5 +1385,42 @@ public class Othello {
 		System.err.println("                    its decision each turn (i.e. the deadline).");
 		System.err.println("                    A value <= 0 will result in an infinite deadline (this is");
 		System.err.println("                    the default).");
+		System.err.println("         -cpu       Enforces the deadline using the CPU time of the agent's");
+		System.err.println("                    thread rather than wall-clock time.");
+		System.err.println("         -n  number The number of nodes (game states) an agent may generate");
+		System.err.println("                    each turn (the default is no limit).  This may be used");
+		System.err.println("                    instead of, or in addition to, a deadline.");
+		System.err.println("         -m  number The number of megabytes an agent may allocate each turn");
+		System.err.println("                    (the default is no limit).");
+		System.err.println("         -mp policy What to do when an agent exceeds its allocation limit:");
+		System.err.println("                    \"warn\" (the default) or \"forfeit\", in which case the");
+		System.err.println("                    agent is moved randomly for the rest of the game.");
+		System.err.println("         -record file");
+		System.err.println("                    Records the game (its seed and every move) to a file.");
+		System.err.println("         -replay file");
+		System.err.println("                    Replays a recorded game at full speed without running");
+		System.err.println("                    the agents.");
+		System.err.println("         -log file  Also writes the log of the graphical user interface to");
+		System.err.println("                    a file, which is rotated every 10MB.");
+		System.err.println("         -spectate number");
+		System.err.println("                    Streams the game to spectators that connect to the given");
+		System.err.println("                    local port (see SpectatorClient).");
+		System.err.println("         -endgame file");
+		System.err.println("                    Looks up and stores solved endgames in a file (64MB when");
+		System.err.println("                    it is created) that may be shared by many games; see");
+		System.err.println("                    EndgameSolver and GameState.getSolvedScore().");
+		System.err.println("         -probcut file");
+		System.err.println("                    Prunes the search of AlphaBetaOthelloPlayer with the");
+		System.err.println("                    ProbCut parameters in a file (see ProbCutParameters).");
+		System.err.println("         -sandbox   Runs each agent in a separate worker process.");
+		System.err.println("         -sandboxmem number");
+		System.err.println("                    The maximum heap size (in megabytes) of each sandboxed");
+		System.err.println("                    agent (the default is 256).");
+		System.err.println("         -sandboxcpu number");
+		System.err.println("                    The total CPU time (in seconds) each sandboxed agent may");
+		System.err.println("                    use before it forfeits (the default is no limit).");
+		System.err.println("         -jfr file  Records Java Flight Recorder events for the game engine");
+		System.err.println("                    to the given file.  Alternatively, run the JVM with");
+		System.err.println("                    -Dothello.jfr=true and -XX:StartFlightRecording.");
 	}
 }
@@ -3,27 +3,62 @@ package edu.drexel.cs.ai.othello;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.RenderingHints;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.JPanel;
-
+import javax.swing.SwingUtilities;
+
+/**
+ * Draws the board.  Rendering is retained: the grid and the legend
+ * are drawn once per panel size into cached layers, and the discs and
+ * legal moves are kept in a board layer in which only the squares
+ * that changed since the last state are redrawn (and repainted).
+ * The legal moves are computed once per state, and moving the mouse
+ * only repaints the squares whose highlight changed.
+ */
 class OthelloPanel extends JPanel
 implements MouseListener, MouseMotionListener {
 	private static final long serialVersionUID = 1L;
-	private GameState state;
+	/* the latest state; it is only rendered on the event dispatch thread */
+	private volatile GameState state;
+	private final AtomicBoolean syncScheduled;
+	private final Runnable syncer;
 	private Square highlight;
 	private boolean mousePresent;
 	private OthelloPlayer player1, player2;
 	private static Font legendFont = new Font("Arial", Font.BOLD, 12);
 	private static Color toolTipColor = new Color(255, 255, 255, 128);
+	private static Color gray = new Color(128, 128, 128);
+	private static Color trans_blue = new Color(200,200,200,128);
+
+	/* the cached layers, and the size for which they were drawn */
+	private BufferedImage background;
+	private BufferedImage board;
+	private BufferedImage legend;
+	private int layerWidth, layerHeight;
+	/* what the board layer currently shows */
+	private GameState rendered;
+	private long renderedPlayer1;
+	private long renderedPlayer2;
+	private long renderedLegal;
+	private GameState.Player renderedLegalPlayer;
 
 	public OthelloPanel(GameState initialState, OthelloPlayer player1, OthelloPlayer player2) {
 		state = initialState;
+		syncScheduled = new AtomicBoolean(false);
+		syncer = new Runnable() {
+			public void run() {
+				syncScheduled.set(false);
+				syncState();
+			}
+		};
 		highlight = new Square(0,0);
 		mousePresent = false;
 		this.player1 = player1;
@@ -34,166 +69,241 @@ implements MouseListener, MouseMotionListener {
 		setVisible(true);
 	}
 
+	/**
+	 * Displays <code>newState</code>.  This may be called from any
+	 * thread; if several states arrive before the event dispatch
+	 * thread gets to them, only the latest is drawn.
+	 */
 	public void updateState(GameState newState) {
 		state = newState;
-		repaint();
+		if(SwingUtilities.isEventDispatchThread())
+			syncState();
+		else if(syncScheduled.compareAndSet(false, true))
+			SwingUtilities.invokeLater(syncer);
 	}
 
-	private boolean isHumansTurn() {
+	private boolean isHumansTurn(GameState state) {
 		return((state.getCurrentPlayer() == GameState.Player.PLAYER1 ? player1 : player2) instanceof HumanOthelloPlayer);
 	}
 
-	public void paint(Graphics graphics)
-	{
-		int height = getHeight();
-		int width = getWidth();
-		int square_width = (width - 7) / 8;
-		int square_height = (height - 7) / 8;
-		Image image = createImage(getWidth(), getHeight());
-		Graphics g = image.getGraphics();
-		int row, col;
-		Color gray = new Color(128, 128, 128);
-		Color trans_blue = new Color(200,200,200,128);
+	/* returns the squares on which a human may currently move */
+	private long getLegalMoves(GameState state) {
+		if(state == null || !isHumansTurn(state))
+			return 0;
+		return state.getValidMoveSquares(state.getCurrentPlayer());
+	}
 
-		((Graphics2D)g).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+	private int getSquareWidth() {
+		return (layerWidth - 7) / 8;
+	}
 
-		g.setColor(gray);
-		g.fillRect(0, 0, width, height);
+	private int getSquareHeight() {
+		return (layerHeight - 7) / 8;
+	}
 
-		/*
-		 * Lets draw the grid:
-		 */
+	/* brings the board layer up to date with the latest state, repainting only the squares that changed */
+	private void syncState() {
+		GameState newState = state;
+		if(newState == rendered)
+			return;
+		if(board == null) {
+			/* the layers haven't been drawn yet, so they will be drawn from scratch */
+			repaint();
+			return;
+		}
+		long p1 = (newState == null ? 0 : newState.getDiscs(GameState.Player.PLAYER1));
+		long p2 = (newState == null ? 0 : newState.getDiscs(GameState.Player.PLAYER2));
+		long legal = getLegalMoves(newState);
+		GameState.Player legalPlayer = (newState == null ? null : newState.getCurrentPlayer());
+		long dirty = (p1 ^ renderedPlayer1) | (p2 ^ renderedPlayer2) | (legal ^ renderedLegal);
+		if(legalPlayer != renderedLegalPlayer)
+			dirty |= legal | renderedLegal; /* the legal moves are drawn in the color of the player */
+		boolean humanChanged = (rendered == null || newState == null || isHumansTurn(rendered) != isHumansTurn(newState));
+		rendered = newState;
+		renderedPlayer1 = p1;
+		renderedPlayer2 = p2;
+		renderedLegal = legal;
+		renderedLegalPlayer = legalPlayer;
+		Graphics2D g = createBoardGraphics();
+		try {
+			for(long d = dirty; d != 0; d &= d - 1) {
+				int square = Long.numberOfTrailingZeros(d);
+				drawSquare(g, square / 8, square % 8);
+			}
+		} finally {
+			g.dispose();
+		}
+		for(long d = dirty; d != 0; d &= d - 1) {
+			int square = Long.numberOfTrailingZeros(d);
+			repaintSquare(square / 8, square % 8);
+		}
+		if(humanChanged && mousePresent)
+			repaintSquare(highlight.row, highlight.col); /* the highlight is only shown on a human's turn */
+	}
 
-		g.setColor(Color.BLUE);
-		for(row=square_height+1; row<=height-square_height; row+=square_height+1)
-			g.drawLine(0, row, width, row);
-		for(col=square_width+1; col<=width-square_width; col+=square_width+1)
-			g.drawLine(col, 0, col, height);
+	private Graphics2D createBoardGraphics() {
+		Graphics2D g = board.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		return g;
+	}
 
-		if(state != null) {
-			/*
-			 * Now we draw the pieces:
-			 */
+	private void repaintSquare(int row, int col) {
+		int square_width = getSquareWidth();
+		int square_height = getSquareHeight();
+		repaint(col * square_width + col, row * square_height + row, square_width + 1, square_height + 1);
+	}
 
-			for(row=0; row<=7; row++) {
-				for(col=0; col<=7; col++) {
-					GameState.Player owner = state.getSquare(row, col);
-					g.setColor((owner == GameState.Player.PLAYER1 ? Color.WHITE : Color.BLACK));
-					if(owner != GameState.Player.EMPTY) {
-						g.fillOval(col * square_width + col, row * square_height + row, square_width, square_height);
-						g.setColor((owner == GameState.Player.PLAYER1 ? Color.BLUE : Color.GREEN));
-						g.fillOval(col * square_width + col + square_width / 4, row * square_height + row + square_height / 4, square_width/2, square_height/2);
-					}
-				}
-			}
+	/* redraws a single square of the board layer from the background */
+	private void drawSquare(Graphics2D g, int row, int col) {
+		int square_width = getSquareWidth();
+		int square_height = getSquareHeight();
+		int x = col * square_width + col;
+		int y = row * square_height + row;
+		g.drawImage(background, x, y, x + square_width + 1, y + square_height + 1, x, y, x + square_width + 1, y + square_height + 1, null);
+		long bit = 1L << (row*8 + col);
+		if(((renderedPlayer1 | renderedPlayer2) & bit) != 0) {
+			boolean isPlayer1 = ((renderedPlayer1 & bit) != 0);
+			g.setColor((isPlayer1 ? Color.WHITE : Color.BLACK));
+			g.fillOval(x, y, square_width, square_height);
+			g.setColor((isPlayer1 ? Color.BLUE : Color.GREEN));
+			g.fillOval(x + square_width / 4, y + square_height / 4, square_width/2, square_height/2);
+		}
+		if((renderedLegal & bit) != 0) {
+			g.setColor((renderedLegalPlayer == GameState.Player.PLAYER1 ? Color.BLUE : Color.GREEN));
+			g.fillRect(x + 1, y + 1, square_width, square_height);
 		}
+	}
+
+	/* (re)draws all of the layers for the current size of the panel */
+	private void drawLayers(int width, int height) {
+		layerWidth = width;
+		layerHeight = height;
+		int square_width = getSquareWidth();
+		int square_height = getSquareHeight();
+		int row, col;
+
+		background = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = background.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setColor(gray);
+			g.fillRect(0, 0, width, height);
 
-		if(isHumansTurn()) {   
 			/*
-			 * Now, highlight the valid moves:
+			 * Lets draw the grid:
 			 */
 
-			for(row=0; row<=7; row++) {
-				for(col=0; col<=7; col++) {
-					if(state.isLegalMove(new Square(row, col), state.getCurrentPlayer())) {
-						g.setColor((state.getCurrentPlayer() == GameState.Player.PLAYER1 ? Color.BLUE : Color.GREEN));
-						g.fillRect(col * square_width + col + 1, row * square_height + row + 1, square_width, square_height);
-					}
-				}
-			}
-
-			if(mousePresent) {
-				g.setColor(trans_blue);
-				g.fillRect(highlight.col * square_width + highlight.col, highlight.row * square_height + highlight.row, square_width + 1, square_height + 1);
-			}
+			g.setColor(Color.BLUE);
+			for(row=square_height+1; row<=height-square_height; row+=square_height+1)
+				g.drawLine(0, row, width, row);
+			for(col=square_width+1; col<=width-square_width; col+=square_width+1)
+				g.drawLine(col, 0, col, height);
+		} finally {
+			g.dispose();
 		}
 
-		g.setFont(legendFont);
-
-		for(row=0; row<=7; row++) {
-			String legend = Integer.toString(row);
-			int tWidth = g.getFontMetrics().stringWidth(legend) + 4;
-			int tHeight = g.getFontMetrics().getHeight() + 4;
-			int x = 1;
-			int y = row * square_height + row + square_height/2 + 4;
-			g.setColor(toolTipColor);
-			g.fillRoundRect(x - tWidth / 2 + 4, y - tHeight + 4, tWidth, tHeight, 5, 5);
-			g.setColor(Color.BLACK);
-			g.drawString(legend, x, y);
+		legend = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		g = legend.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setFont(legendFont);
+			FontMetrics fm = g.getFontMetrics();
+			for(row=0; row<=7; row++)
+				drawLegend(g, fm, Integer.toString(row), 1, row * square_height + row + square_height/2 + 4);
+			for(col=0; col<=7; col++)
+				drawLegend(g, fm, Square.colnames[col], col*square_width + col + square_width/2, 14);
+		} finally {
+			g.dispose();
 		}
-		for(col=0; col<=7; col++) {
-			String legend = Square.colnames[col];
-			int tWidth = g.getFontMetrics().stringWidth(legend) + 4;
-			int tHeight = g.getFontMetrics().getHeight() + 4;
-			int x = col*square_width + col + square_width/2;
-			int y = 14;
-			g.setColor(toolTipColor);
-			g.fillRoundRect(x - tWidth / 2 + 4, y - tHeight + 4, tWidth, tHeight, 5, 5);
-			g.setColor(Color.BLACK);
-			g.drawString(legend, x, y);
+
+		/* redraw every square of the board layer */
+		board = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		g = createBoardGraphics();
+		try {
+			g.drawImage(background, 0, 0, null);
+			rendered = state;
+			renderedPlayer1 = (rendered == null ? 0 : rendered.getDiscs(GameState.Player.PLAYER1));
+			renderedPlayer2 = (rendered == null ? 0 : rendered.getDiscs(GameState.Player.PLAYER2));
+			renderedLegal = getLegalMoves(rendered);
+			renderedLegalPlayer = (rendered == null ? null : rendered.getCurrentPlayer());
+			for(long d = renderedPlayer1 | renderedPlayer2 | renderedLegal; d != 0; d &= d - 1) {
+				int square = Long.numberOfTrailingZeros(d);
+				drawSquare(g, square / 8, square % 8);
+			}
+		} finally {
+			g.dispose();
 		}
+	}
 
-		graphics.drawImage(image, 0, 0, this);
+	private static void drawLegend(Graphics g, FontMetrics fm, String legend, int x, int y) {
+		int tWidth = fm.stringWidth(legend) + 4;
+		int tHeight = fm.getHeight() + 4;
+		g.setColor(toolTipColor);
+		g.fillRoundRect(x - tWidth / 2 + 4, y - tHeight + 4, tWidth, tHeight, 5, 5);
+		g.setColor(Color.BLACK);
+		g.drawString(legend, x, y);
 	}
 
-	Square last_coords;
+	public void paint(Graphics g)
+	{
+		int width = getWidth();
+		int height = getHeight();
+		if(width <= 0 || height <= 0)
+			return;
+		if(board == null || width != layerWidth || height != layerHeight)
+			drawLayers(width, height);
+		else if(rendered != state)
+			syncState();
+
+		/* Swing clips this to the squares that were repainted */
+		g.drawImage(board, 0, 0, null);
+
+		if(mousePresent && rendered != null && isHumansTurn(rendered)) {
+			int square_width = getSquareWidth();
+			int square_height = getSquareHeight();
+			g.setColor(trans_blue);
+			g.fillRect(highlight.col * square_width + highlight.col, highlight.row * square_height + highlight.row, square_width + 1, square_height + 1);
+		}
+
+		g.drawImage(legend, 0, 0, null);
+	}
 
 	public void mouseMoved(MouseEvent e)
 	{
-		if(last_coords == null)
-			last_coords = new Square(0, 0);
-
+		Square previous = highlight;
 		highlight = mouseCoordsToRowCol(e);
+		boolean wasPresent = mousePresent;
 		mousePresent = true;
 
-		if(last_coords.row != highlight.row || last_coords.col != highlight.col)
-			repaint();
-
-		last_coords.row = highlight.row;
-		last_coords.col = highlight.col;
+		if(!wasPresent || previous.row != highlight.row || previous.col != highlight.col) {
+			repaintSquare(previous.row, previous.col);
+			repaintSquare(highlight.row, highlight.col);
+		}
 	}
 
-	public void mouseDragged(MouseEvent e) 
+	public void mouseDragged(MouseEvent e)
 	{
 	}
 
-	private class MouseClickThread extends Thread
-	{
-		MouseEvent event;
-
-		public MouseClickThread(MouseEvent e) 
-		{
-			super("MouseClickEventThread");
-			event = e;
-		}
-
-		public void run()
-		{
-			if(isHumansTurn()) {
-				HumanOthelloPlayer hop = (HumanOthelloPlayer)(state.getCurrentPlayer() == GameState.Player.PLAYER1 ? player1 : player2);
-				hop.handleUIInput(mouseCoordsToRowCol(event));
-			}
-			mouseClickThread = null;
-		}
-	}
-
-	MouseClickThread mouseClickThread;
-
-	public void mouseClicked(MouseEvent e) 
+	public void mouseClicked(MouseEvent e)
 	{
-		if(isHumansTurn() && mouseClickThread == null) {
-			mouseClickThread = new MouseClickThread(e);
-			mouseClickThread.start();
+		/* handleUIInput(...) never blocks, so we can hand the move
+		 * off directly from the event dispatch thread */
+		GameState state = this.state;
+		if(isHumansTurn(state)) {
+			HumanOthelloPlayer hop = (HumanOthelloPlayer)(state.getCurrentPlayer() == GameState.Player.PLAYER1 ? player1 : player2);
+			hop.handleUIInput(mouseCoordsToRowCol(e));
 		}
 	}
 
-	public void mouseEntered(MouseEvent e) 
+	public void mouseEntered(MouseEvent e)
 	{
 	}
 
-	public void mouseExited(MouseEvent e) 
+	public void mouseExited(MouseEvent e)
 	{
 		mousePresent = false;
+		repaintSquare(highlight.row, highlight.col);
 	}
 
 	public void mousePressed(MouseEvent e) {}
@@ -28,6 +28,8 @@ public abstract class OthelloPlayer {
 	private Date currentDeadline;
 	private Square tempMove;
 	private Thread currentThread;
+	private final SearchMetrics metrics;
+	private final ThreadGroup threadGroup;
 
 	/**
 	 * Creates a new Othello Player
@@ -37,6 +39,8 @@ public abstract class OthelloPlayer {
 		logger = null;
 		currentDeadline = null;
 		currentThread = null;
+		metrics = new SearchMetrics();
+		threadGroup = Othello.newAgentThreadGroup(name);
 	}
 
 	/**
@@ -47,6 +51,16 @@ public abstract class OthelloPlayer {
 	 */
 	public abstract Square getMove(GameState currentState, Date deadline);
 
+	/**
+	 * Returns the thread group of this agent.  Any thread the agent
+	 * creates (for example, a pool of search threads created by its
+	 * constructor) is placed in this group and is restricted just like
+	 * the thread on which the agent moves.
+	 */
+	public final ThreadGroup getThreadGroup() {
+		return threadGroup;
+	}
+
 	/**
 	 * Returns the name of this player.
 	 */
@@ -81,8 +95,12 @@ public abstract class OthelloPlayer {
 			throw new IllegalStateException("This OthelloPlayer is not currently running getMove(...)!");
 		else if(currentThread != Thread.currentThread())
 			throw new IllegalStateException("registerCurrentBestMove(...) can only be called from the thread that is currently running getMove(...): " + currentThread);
-		else if(this.getMillisUntilDeadline() >= 0)
-			tempMove = bestMove; /* only set the move if the deadline hasn't yet expired */
+		else if(this.getMillisUntilDeadline() >= 0 && !NodeBudget.isExhausted()) {
+			/* only set the move if the deadline hasn't yet expired (and the node budget hasn't been exhausted) */
+			if(bestMove != null && !bestMove.equals(tempMove))
+				metrics.addBestMoveChange();
+			tempMove = bestMove;
+		}
 	}
 	
 	/**
@@ -92,6 +110,43 @@ public abstract class OthelloPlayer {
 		return tempMove;
 	}
 
+	/**
+	 * Adds <code>count</code> to the number of nodes this agent has
+	 * searched during the current move.  This is purely informational
+	 * and is reported by user interfaces that support it (<i>e.g.</i>
+	 * the tournament interface).
+	 *
+	 * @see SearchMetrics
+	 */
+	protected final void countNodes(long count) {
+		metrics.addNodes(count);
+	}
+
+	/**
+	 * Adds <code>count</code> to the number of transposition table
+	 * hits this agent has had during the current move.
+	 *
+	 * @see SearchMetrics
+	 */
+	protected final void countTranspositionHits(long count) {
+		metrics.addTranspositionHits(count);
+	}
+
+	/**
+	 * Reports that this agent's search has reached a depth of
+	 * <code>depth</code> plies during the current move.  Only the
+	 * maximum reported depth is retained.
+	 *
+	 * @see SearchMetrics
+	 */
+	protected final void reportSearchDepth(int depth) {
+		metrics.reportDepth(depth);
+	}
+
+	SearchMetrics getSearchMetrics() {
+		return metrics;
+	}
+
 	void setLogger(Logger logger) {
 		this.logger = logger;
 	}
@@ -106,6 +161,30 @@ public abstract class OthelloPlayer {
 			return currentDeadline.getTime() - (new Date()).getTime();
 	}
 
+	/**
+	 * Returns the number of nodes this agent may still generate during
+	 * the current move, or <code>-1</code> if it does not have a node
+	 * budget.  Each state created by {@link
+	 * GameState#applyMove(Square)} or by a {@link SuccessorArena} is
+	 * a node; once the budget is exhausted, they throw a {@link
+	 * NodeBudgetExceededError}.  Agents that search without creating
+	 * states should stop after this many nodes of their own.  The
+	 * budget is shared by the thread that is running {@link
+	 * #getMove(GameState, Date)} and the threads in the agent's {@link
+	 * #getThreadGroup() thread group}.
+	 */
+	protected final long getNodeBudget() {
+		return NodeBudget.remaining();
+	}
+
+	/**
+	 * Called once the agent will play no more games, so that it can
+	 * release what it holds (<i>e.g.</i> stop the threads it created).
+	 * The agent must not be used afterward.  The default implementation
+	 * does nothing.
+	 */
+	public void close() {}
+
 	/**
 	 * Sends a log message to the user interface.
 	 */
@@ -0,0 +1,853 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A database of the positions reached in recorded games, for
+ * analysis (<i>e.g.</i> building an opening book, or a post-mortem of
+ * an agent's games).  For every position it knows how many games went
+ * through it, how they ended, and every one of those games.
+ *
+ * <p>Positions are <em>canonicalized</em>: a position is stored from
+ * the point of view of the player to move (so the colors do not
+ * matter), and positions that are rotations or reflections of each
+ * other are stored once.  All of the statistics are likewise from the
+ * point of view of the player to move.</p>
+ *
+ * <p>The database is two files.  The data file (the one passed to
+ * the constructor) is append-only: it holds every game that was
+ * {@link #add(GameRecord) added} and every score that was {@link
+ * #setScore(GameState, int) set}.  Each game stores, for each of its
+ * positions, a link to the previous game through the same position,
+ * so the games through a position form a chain.  The index file
+ * (the data file's name followed by <code>.idx</code>) is a
+ * memory-mapped, open-addressed hash table with an entry per position
+ * holding its statistics and the head of its chain; it grows as
+ * needed.  The index can always be rebuilt from the data file, which
+ * happens automatically if it is missing or was not closed
+ * properly.</p>
+ *
+ * <p>The database is thread-safe, but only one process may open it
+ * at a time.  Queries take time proportional to the number of results
+ * (and a single hash lookup), so they return in well under a
+ * millisecond even for millions of positions.</p>
+ */
+public final class PositionDatabase implements Closeable {
+	private static final byte DATA_MAGIC[] = {'O', 'T', 'H', 'D'};
+	private static final byte INDEX_MAGIC[] = {'O', 'T', 'H', 'I'};
+	private static final int VERSION = 1;
+	private static final int DATA_HEADER_SIZE = 8;
+	private static final byte GAME = 'G';
+	private static final byte SCORE = 'S';
+	/* a game is its length, type, seed, duration, scores and number of moves, then a link per position, the moves, and the players' classes and names */
+	private static final int GAME_HEADER_SIZE = 4 + 1 + 8 + 4 + 1 + 1 + 1;
+	/* a score is its length, type, the canonical position, and the score */
+	private static final int SCORE_SIZE = 4 + 1 + 8 + 8 + 2;
+	private static final int MAX_POSITIONS = 61; /* the initial position and one for each move */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/* the index is a header and then the slots */
+	private static final int INDEX_HEADER_SIZE = 32;
+	private static final int INDEX_CAPACITY = 8;
+	private static final int INDEX_COUNT = 12;
+	private static final int INDEX_DATA_LENGTH = 16;
+	private static final int INDEX_CLEAN = 24;
+	private static final int SLOT_SIZE = 48;
+	private static final int OWN = 0;
+	private static final int OPPONENT = 8;
+	private static final int HEAD = 16;
+	private static final int DISC_SUM = 24;
+	private static final int GAMES = 32;
+	private static final int WINS = 36;
+	private static final int DRAWS = 40;
+	private static final int BEST = 44;
+	private static final int WORST = 45;
+	private static final int SCORE_VALUE = 46;
+	private static final short NO_SCORE = Short.MIN_VALUE;
+	private static final int INITIAL_CAPACITY = 1 << 16;
+	/* a mapping is limited to 2GB */
+	private static final int MAX_CAPACITY = 1 << 25;
+
+	/**
+	 * The statistics of a position, from the point of view of the
+	 * player to move.
+	 */
+	public static final class Statistics {
+		private final int games;
+		private final int wins;
+		private final int draws;
+		private final long discSum;
+		private final int best;
+		private final int worst;
+		private final int score;
+
+		Statistics(int games, int wins, int draws, long discSum, int best, int worst, int score) {
+			this.games = games;
+			this.wins = wins;
+			this.draws = draws;
+			this.discSum = discSum;
+			this.best = best;
+			this.worst = worst;
+			this.score = score;
+		}
+
+		/**
+		 * Returns the number of games that went through the position.
+		 */
+		public int getGames() { return games; }
+
+		/**
+		 * Returns the number of those games the player to move won.
+		 */
+		public int getWins() { return wins; }
+
+		/**
+		 * Returns the number of those games that were ties.
+		 */
+		public int getDraws() { return draws; }
+
+		/**
+		 * Returns the number of those games the player to move lost.
+		 */
+		public int getLosses() { return games - wins - draws; }
+
+		/**
+		 * Returns the fraction of the games the player to move won,
+		 * counting ties as half a win (or <code>NaN</code> if there
+		 * were no games).
+		 */
+		public double getWinRate() {
+			return (games == 0 ? Double.NaN : (wins + 0.5 * draws) / games);
+		}
+
+		/**
+		 * Returns the average final disc differential (the discs of
+		 * the player to move minus those of its opponent), or
+		 * <code>NaN</code> if there were no games.
+		 */
+		public double getAverageDiscDifferential() {
+			return (games == 0 ? Double.NaN : (double)discSum / games);
+		}
+
+		/**
+		 * Returns the best final disc differential the player to move
+		 * achieved from the position (meaningless if there were no
+		 * games).
+		 */
+		public int getBestDiscDifferential() { return best; }
+
+		/**
+		 * Returns the worst final disc differential the player to move
+		 * achieved from the position (meaningless if there were no
+		 * games).
+		 */
+		public int getWorstDiscDifferential() { return worst; }
+
+		/**
+		 * Returns whether a score has been {@link
+		 * PositionDatabase#setScore(GameState, int) set} for the
+		 * position.
+		 */
+		public boolean hasScore() { return score != NO_SCORE; }
+
+		/**
+		 * Returns the score that was {@link
+		 * PositionDatabase#setScore(GameState, int) set} for the
+		 * position, for the player to move.
+		 *
+		 * @throws IllegalStateException if no score was set.
+		 */
+		public int getScore() {
+			if(score == NO_SCORE)
+				throw new IllegalStateException("no score is known for the position");
+			return score;
+		}
+
+		/* returns the statistics from the point of view of the opponent */
+		Statistics invert() {
+			return new Statistics(games, getLosses(), draws, -discSum, -worst, -best, (score == NO_SCORE ? NO_SCORE : -score));
+		}
+
+		public String toString() {
+			return "games=" + games + " wins=" + wins + " draws=" + draws + " losses=" + getLosses() + (games == 0 ? "" : " winRate=" + Math.round(getWinRate() * 1000.0) / 1000.0 + " discs=" + Math.round(getAverageDiscDifferential() * 10.0) / 10.0 + " best=" + best + " worst=" + worst) + (hasScore() ? " score=" + score : "");
+		}
+	}
+
+	private final File dataFile;
+	private final File indexFile;
+	private final FileChannel data;
+	private long dataEnd;
+	/* appended records waiting to be written at pendingStart */
+	private final ByteBuffer pending;
+	private long pendingStart;
+	private FileChannel indexChannel;
+	private MappedByteBuffer index;
+	private int capacity;
+	private int count;
+	private boolean clean;
+	/* scratch space, to avoid allocating for every game */
+	private final long positionOwn[];
+	private final long positionOpponent[];
+	private final boolean positionPlayer1[];
+	private final byte moves[];
+	private final long links[];
+	private final ByteBuffer readBuffer;
+	private long canonicalOwn;
+	private long canonicalOpponent;
+
+	/**
+	 * Opens the database stored in <code>file</code> (and its index),
+	 * creating it if it does not exist.
+	 *
+	 * @throws IOException if the database could not be opened or is corrupt.
+	 */
+	public PositionDatabase(File file) throws IOException {
+		dataFile = file;
+		indexFile = new File(file.getPath() + ".idx");
+		positionOwn = new long[MAX_POSITIONS];
+		positionOpponent = new long[MAX_POSITIONS];
+		positionPlayer1 = new boolean[MAX_POSITIONS];
+		moves = new byte[MAX_POSITIONS - 1];
+		links = new long[MAX_POSITIONS];
+		readBuffer = ByteBuffer.allocate(GAME_HEADER_SIZE);
+		pending = ByteBuffer.allocate(1 << 20);
+		data = new RandomAccessFile(dataFile, "rw").getChannel();
+		try {
+			dataEnd = data.size();
+			if(dataEnd == 0) {
+				ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_SIZE);
+				header.put(DATA_MAGIC).putInt(VERSION);
+				header.flip();
+				data.write(header, 0);
+				dataEnd = DATA_HEADER_SIZE;
+			} else {
+				ByteBuffer header = ByteBuffer.allocate(DATA_HEADER_SIZE);
+				if(dataEnd < DATA_HEADER_SIZE || data.read(header, 0) != DATA_HEADER_SIZE || !hasMagic(header, DATA_MAGIC) || header.getInt(4) != VERSION)
+					throw new IOException(dataFile + " is not a position database");
+			}
+			pendingStart = dataEnd;
+			if(!openIndex())
+				rebuildIndex();
+		} catch(IOException ioe) {
+			data.close();
+			if(indexChannel != null)
+				indexChannel.close();
+			throw ioe;
+		}
+	}
+
+	private static boolean hasMagic(ByteBuffer buffer, byte magic[]) {
+		for(int i=0; i<magic.length; i++)
+			if(buffer.get(i) != magic[i])
+				return false;
+		return true;
+	}
+
+	/* maps an existing index; returns false if it is missing or stale */
+	private boolean openIndex() throws IOException {
+		if(!indexFile.exists() || indexFile.length() < INDEX_HEADER_SIZE)
+			return false;
+		indexChannel = new RandomAccessFile(indexFile, "rw").getChannel();
+		MappedByteBuffer header = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE);
+		int c = header.getInt(INDEX_CAPACITY);
+		if(!hasMagic(header, INDEX_MAGIC) || header.getInt(4) != VERSION || header.getInt(INDEX_CLEAN) != 1 || header.getLong(INDEX_DATA_LENGTH) != dataEnd
+				|| Integer.bitCount(c) != 1 || c > MAX_CAPACITY || indexFile.length() != INDEX_HEADER_SIZE + (long)c * SLOT_SIZE) {
+			indexChannel.close();
+			indexChannel = null;
+			return false;
+		}
+		capacity = c;
+		count = header.getInt(INDEX_COUNT);
+		index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + (long)capacity * SLOT_SIZE);
+		clean = true;
+		return true;
+	}
+
+	/* creates an empty index file with the given capacity, replacing any existing one */
+	private static MappedByteBuffer createIndex(File file, int capacity) throws IOException {
+		if(file.exists() && !file.delete())
+			throw new IOException("Could not delete " + file);
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		try {
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_SIZE + (long)capacity * SLOT_SIZE);
+			map.put(INDEX_MAGIC).putInt(VERSION);
+			map.putInt(INDEX_CAPACITY, capacity);
+			return map;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/* rebuilds the index from the data file */
+	private void rebuildIndex() throws IOException {
+		if(indexChannel != null)
+			indexChannel.close();
+		indexChannel = null;
+		capacity = INITIAL_CAPACITY;
+		count = 0;
+		index = createIndex(indexFile, capacity);
+		clean = true;
+		markDirty();
+		long offset = DATA_HEADER_SIZE;
+		while(offset < dataEnd) {
+			ByteBuffer record = readRecord(offset);
+			byte type = record.get(4);
+			if(type == GAME) {
+				int positions = replay(record.getLong(5), record, GAME_HEADER_SIZE + 8 * ((record.get(GAME_HEADER_SIZE - 1) & 0xFF) + 1), record.get(GAME_HEADER_SIZE - 1) & 0xFF);
+				indexGame(offset, positions, false);
+			} else if(type == SCORE) {
+				ensureCapacity(1);
+				setSlotScore(findSlot(record.getLong(5), record.getLong(13), true), record.getShort(21));
+			} else
+				throw new IOException(dataFile + " is corrupt at offset " + offset);
+			offset += record.capacity();
+		}
+	}
+
+	/* reads the whole record at offset */
+	private ByteBuffer readRecord(long offset) throws IOException {
+		flushPending();
+		ByteBuffer length = ByteBuffer.allocate(4);
+		readFully(length, offset);
+		int size = length.getInt(0);
+		if(size < SCORE_SIZE || offset + size > dataEnd)
+			throw new IOException(dataFile + " is corrupt at offset " + offset);
+		ByteBuffer record = ByteBuffer.allocate(size);
+		readFully(record, offset);
+		return record;
+	}
+
+	private void readFully(ByteBuffer buffer, long offset) throws IOException {
+		buffer.clear();
+		while(buffer.hasRemaining()) {
+			if(data.read(buffer, offset + buffer.position()) < 0)
+				throw new EOFException(dataFile + " ended unexpectedly");
+		}
+	}
+
+	/* writes the pending records to the data file */
+	private void flushPending() throws IOException {
+		if(pending.position() == 0)
+			return;
+		pending.flip();
+		while(pending.hasRemaining())
+			data.write(pending, pendingStart + pending.position());
+		pending.clear();
+		pendingStart = dataEnd;
+	}
+
+	/* appends a complete record to the data file */
+	private void append(ByteBuffer record) throws IOException {
+		record.flip();
+		if(record.remaining() > pending.remaining())
+			flushPending();
+		if(record.remaining() > pending.capacity()) {
+			while(record.hasRemaining())
+				data.write(record, dataEnd + record.position());
+			dataEnd += record.limit();
+			pendingStart = dataEnd;
+		} else {
+			dataEnd += record.remaining();
+			pending.put(record);
+		}
+	}
+
+	/* records in the index that it no longer matches the data file, until it is flushed */
+	private void markDirty() {
+		if(clean) {
+			index.putInt(INDEX_CLEAN, 0);
+			clean = false;
+		}
+	}
+
+	private static long hash(long own, long opponent) {
+		long h = own * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(opponent * 0xC2B2AE3D27D4EB4FL, 31);
+		return h ^ (h >>> 29);
+	}
+
+	/* returns the offset of the slot of a canonical position, or -1 if it is not in the index and insert is false */
+	private int findSlot(long own, long opponent, boolean insert) {
+		int mask = capacity - 1;
+		for(int i = (int)hash(own, opponent) & mask;; i = (i + 1) & mask) {
+			int slot = INDEX_HEADER_SIZE + i * SLOT_SIZE;
+			long o = index.getLong(slot + OWN);
+			long p = index.getLong(slot + OPPONENT);
+			if(o == own && p == opponent)
+				return slot;
+			if(o == 0 && p == 0) {
+				/* the slot is empty, since every position has discs */
+				if(!insert)
+					return -1;
+				index.putLong(slot + OWN, own);
+				index.putLong(slot + OPPONENT, opponent);
+				index.putShort(slot + SCORE_VALUE, NO_SCORE);
+				count++;
+				return slot;
+			}
+		}
+	}
+
+	/* makes room for positions more positions, growing (and rehashing) the index if it would become more than 3/4 full */
+	private void ensureCapacity(int positions) throws IOException {
+		if((long)(count + positions) * 4 <= (long)capacity * 3)
+			return;
+		int newCapacity = capacity;
+		while((long)(count + positions) * 4 > (long)newCapacity * 3)
+			newCapacity *= 2;
+		if(newCapacity > MAX_CAPACITY)
+			throw new IOException("The index of " + dataFile + " is full");
+		File tmp = new File(indexFile.getPath() + ".tmp");
+		MappedByteBuffer old = index;
+		int oldCapacity = capacity;
+		index = createIndex(tmp, newCapacity);
+		capacity = newCapacity;
+		count = 0;
+		clean = true;
+		markDirty();
+		for(int i=0; i<oldCapacity; i++) {
+			int from = INDEX_HEADER_SIZE + i * SLOT_SIZE;
+			long own = old.getLong(from + OWN);
+			long opponent = old.getLong(from + OPPONENT);
+			if(own == 0 && opponent == 0)
+				continue;
+			int to = findSlot(own, opponent, true);
+			for(int b=HEAD; b<SLOT_SIZE; b+=2)
+				index.putShort(to + b, old.getShort(from + b));
+		}
+		if(indexChannel != null)
+			indexChannel.close();
+		indexChannel = null;
+		if(!tmp.renameTo(indexFile)) {
+			/* some platforms cannot replace a file that is mapped */
+			if(!indexFile.delete() || !tmp.renameTo(indexFile))
+				throw new IOException("Could not replace " + indexFile);
+		}
+	}
+
+	/* sets canonicalOwn and canonicalOpponent to the canonical form of a position */
+	private void canonicalize(long own, long opponent) {
+		int symmetry = BitBoard.canonicalSymmetry(own, opponent);
+		canonicalOwn = BitBoard.transform(own, symmetry);
+		canonicalOpponent = BitBoard.transform(opponent, symmetry);
+	}
+
+	/* returns the slot of a state's position, or -1 if it is not in the index and insert is false */
+	private int findSlot(GameState state, boolean insert) {
+		GameState.Player player = state.getCurrentPlayer();
+		canonicalize(state.getDiscs(player), state.getDiscs(state.getOpponent(player)));
+		return findSlot(canonicalOwn, canonicalOpponent, insert);
+	}
+
+	/*
+	 * Replays a game from the initial state of the given seed, filling
+	 * in the positions and the player to move in each; the moves are
+	 * read from record at offset (or from this.moves if record is
+	 * null).  Returns the number of positions.
+	 */
+	private int replay(long seed, ByteBuffer record, int offset, int moveCount) throws IOException {
+		GameState initial = new GameState(seed);
+		long p1 = initial.getDiscs(GameState.Player.PLAYER1);
+		long p2 = initial.getDiscs(GameState.Player.PLAYER2);
+		boolean player1 = (initial.getCurrentPlayer() == GameState.Player.PLAYER1);
+		for(int i=0; i<=moveCount; i++) {
+			positionOwn[i] = (player1 ? p1 : p2);
+			positionOpponent[i] = (player1 ? p2 : p1);
+			positionPlayer1[i] = player1;
+			if(i == moveCount)
+				break;
+			if(record != null)
+				moves[i] = record.get(offset + i);
+			long move = 1L << (moves[i] & 63);
+			long own = positionOwn[i];
+			long opponent = positionOpponent[i];
+			if(moves[i] < 0 || moves[i] >= 64 || (BitBoard.moves(own, opponent) & move) == 0)
+				throw new IOException("move " + (i + 1) + " of the game is not valid");
+			long flips = BitBoard.flips(own, opponent, move);
+			own |= flips | move;
+			opponent &= ~flips;
+			p1 = (player1 ? own : opponent);
+			p2 = (player1 ? opponent : own);
+			/* the opponent moves next, unless it has no valid moves */
+			if(BitBoard.moves(opponent, own) != 0)
+				player1 = !player1;
+		}
+		if(BitBoard.moves(positionOwn[moveCount], positionOpponent[moveCount]) != 0 || BitBoard.moves(positionOpponent[moveCount], positionOwn[moveCount]) != 0)
+			throw new IOException("the game did not finish");
+		return moveCount + 1;
+	}
+
+	/* adds the replayed positions of the game at offset to the index, filling in links with the previous games through them */
+	private void indexGame(long offset, int positions, boolean link) throws IOException {
+		ensureCapacity(positions);
+		markDirty();
+		int last = positions - 1;
+		int player1Differential = Long.bitCount(positionPlayer1[last] ? positionOwn[last] : positionOpponent[last]) - Long.bitCount(positionPlayer1[last] ? positionOpponent[last] : positionOwn[last]);
+		for(int i=0; i<positions; i++) {
+			canonicalize(positionOwn[i], positionOpponent[i]);
+			int slot = findSlot(canonicalOwn, canonicalOpponent, true);
+			if(link)
+				links[i] = index.getLong(slot + HEAD);
+			index.putLong(slot + HEAD, (offset << 8) | i);
+			int differential = (positionPlayer1[i] ? player1Differential : -player1Differential);
+			int games = index.getInt(slot + GAMES);
+			index.putInt(slot + GAMES, games + 1);
+			if(differential > 0)
+				index.putInt(slot + WINS, index.getInt(slot + WINS) + 1);
+			else if(differential == 0)
+				index.putInt(slot + DRAWS, index.getInt(slot + DRAWS) + 1);
+			index.putLong(slot + DISC_SUM, index.getLong(slot + DISC_SUM) + differential);
+			if(games == 0 || differential > index.get(slot + BEST))
+				index.put(slot + BEST, (byte)differential);
+			if(games == 0 || differential < index.get(slot + WORST))
+				index.put(slot + WORST, (byte)differential);
+		}
+	}
+
+	private void setSlotScore(int slot, int score) {
+		index.putShort(slot + SCORE_VALUE, (short)score);
+	}
+
+	private static byte[] encode(String s) {
+		return (s == null ? "" : s).getBytes(UTF8);
+	}
+
+	/**
+	 * Adds a finished game to the database.
+	 *
+	 * @return the identifier of the game in the database.
+	 * @throws IllegalArgumentException if the game is not valid or did not finish.
+	 * @throws IOException if the database could not be written.
+	 */
+	public synchronized long add(GameRecord record) throws IOException {
+		List<GameRecord.Move> recorded = record.getMoves();
+		if(recorded.size() > moves.length)
+			throw new IllegalArgumentException("the game has too many moves");
+		int moveCount = recorded.size();
+		for(int i=0; i<moveCount; i++) {
+			Square s = recorded.get(i).getSquare();
+			moves[i] = (byte)(s.row*8 + s.col);
+		}
+		int positions;
+		try {
+			positions = replay(record.getSeed(), null, 0, moveCount);
+		} catch(IOException ioe) {
+			throw new IllegalArgumentException(ioe.getMessage());
+		}
+		for(int i=0; i<moveCount; i++)
+			if(positionPlayer1[i] != (recorded.get(i).getPlayer() == GameState.Player.PLAYER1))
+				throw new IllegalArgumentException("move " + (i + 1) + " of the game was recorded for the wrong player");
+		byte strings[][] = {encode(record.getPlayerClass(1)), encode(record.getPlayerName(1)), encode(record.getPlayerClass(2)), encode(record.getPlayerName(2))};
+		int size = GAME_HEADER_SIZE + 8 * positions + moveCount;
+		for(byte s[] : strings)
+			size += 2 + Math.min(s.length, 0xFFFF);
+		long offset = dataEnd;
+		if(offset >= (1L << 55))
+			throw new IOException(dataFile + " is full");
+		indexGame(offset, positions, true);
+		int last = positions - 1;
+		long p1 = (positionPlayer1[last] ? positionOwn[last] : positionOpponent[last]);
+		long p2 = (positionPlayer1[last] ? positionOpponent[last] : positionOwn[last]);
+		ByteBuffer b = ByteBuffer.allocate(size);
+		b.putInt(size).put(GAME).putLong(record.getSeed()).putInt(record.getTurnDuration());
+		b.put((byte)Long.bitCount(p1)).put((byte)Long.bitCount(p2)).put((byte)moveCount);
+		for(int i=0; i<positions; i++)
+			b.putLong(links[i]);
+		b.put(moves, 0, moveCount);
+		for(byte s[] : strings) {
+			int length = Math.min(s.length, 0xFFFF);
+			b.putShort((short)length).put(s, 0, length);
+		}
+		append(b);
+		return offset;
+	}
+
+	/**
+	 * Adds every game record in <code>file</code> to the database,
+	 * descending into it if it is a directory.  The records are read
+	 * one at a time, so any number of them can be loaded.  Records
+	 * that cannot be read, or that are not finished games, are
+	 * reported to standard error and skipped.
+	 *
+	 * @return the number of games that were added.
+	 * @throws IOException if the database could not be written.
+	 */
+	public int load(File file) throws IOException {
+		if(file.isDirectory()) {
+			String names[] = file.list();
+			if(names == null)
+				return 0;
+			Arrays.sort(names);
+			int added = 0;
+			for(String name : names)
+				added += load(new File(file, name));
+			return added;
+		}
+		GameRecord record;
+		try {
+			record = GameRecord.read(file);
+		} catch(IOException ioe) {
+			System.err.println("Warning: Skipping " + file + ": " + ioe.getMessage());
+			return 0;
+		}
+		try {
+			add(record);
+			return 1;
+		} catch(IllegalArgumentException iae) {
+			System.err.println("Warning: Skipping " + file + ": " + iae.getMessage());
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns the statistics of the position in <code>state</code>
+	 * (or of any rotation or reflection of it), or <code>null</code>
+	 * if the database does not know it.
+	 */
+	public synchronized Statistics getStatistics(GameState state) {
+		int slot = findSlot(state, false);
+		if(slot < 0)
+			return null;
+		return new Statistics(index.getInt(slot + GAMES), index.getInt(slot + WINS), index.getInt(slot + DRAWS), index.getLong(slot + DISC_SUM),
+				index.get(slot + BEST), index.get(slot + WORST), index.getShort(slot + SCORE_VALUE));
+	}
+
+	/**
+	 * Returns the statistics of the position that results from
+	 * making <code>move</code> in <code>state</code>, from the point
+	 * of view of the player making the move (<i>e.g.</i> its {@link
+	 * Statistics#getWinRate() win rate} is the win rate of the move),
+	 * or <code>null</code> if the database does not know it.
+	 *
+	 * @throws InvalidMoveException if the move is not valid.
+	 */
+	public Statistics getStatistics(GameState state, Square move) throws InvalidMoveException {
+		GameState next = state.applyMove(move, false);
+		Statistics statistics = getStatistics(next);
+		if(statistics == null || next.getCurrentPlayer() == state.getCurrentPlayer())
+			return statistics;
+		else
+			return statistics.invert();
+	}
+
+	/**
+	 * Returns the {@link #getStatistics(GameState, Square)
+	 * statistics} of every valid move in <code>state</code> that the
+	 * database knows, in the order of their square indices
+	 * (<code>row*8+col</code>).
+	 */
+	public Map<Square,Statistics> getMoveStatistics(GameState state) {
+		LinkedHashMap<Square,Statistics> result = new LinkedHashMap<Square,Statistics>();
+		for(long valid = state.getValidMoveSquares(state.getCurrentPlayer()); valid != 0; valid &= valid - 1) {
+			int square = Long.numberOfTrailingZeros(valid);
+			Square move = new Square(square / 8, square % 8);
+			Statistics statistics = getStatistics(state, move);
+			if(statistics != null)
+				result.put(move, statistics);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the identifiers of (at most <code>limit</code> of) the
+	 * games that went through the position in <code>state</code>, or
+	 * through any rotation or reflection of it, the most recently
+	 * added first.
+	 *
+	 * @throws IOException if the database could not be read.
+	 */
+	public synchronized List<Long> getGames(GameState state, int limit) throws IOException {
+		ArrayList<Long> games = new ArrayList<Long>();
+		int slot = findSlot(state, false);
+		if(slot < 0)
+			return games;
+		flushPending();
+		ByteBuffer link = ByteBuffer.allocate(8);
+		for(long l = index.getLong(slot + HEAD); l != 0 && games.size() < limit;) {
+			long offset = l >>> 8;
+			games.add(offset);
+			readFully(link, offset + GAME_HEADER_SIZE + 8 * (l & 0xFF));
+			l = link.getLong(0);
+		}
+		return games;
+	}
+
+	/**
+	 * Returns the game with the given identifier.  Only the moves, the
+	 * seed, the deadline, the players and the result are stored, so
+	 * every move's decision is {@link GameRecord.Decision#AGENT} and
+	 * its time and node count are zero.
+	 *
+	 * @throws IOException if the game could not be read.
+	 */
+	public synchronized GameRecord getGame(long id) throws IOException {
+		if(id < DATA_HEADER_SIZE || id >= dataEnd)
+			throw new IOException("There is no game " + id);
+		ByteBuffer record = readRecord(id);
+		if(record.get(4) != GAME)
+			throw new IOException("There is no game " + id);
+		long seed = record.getLong(5);
+		int moveCount = record.get(GAME_HEADER_SIZE - 1) & 0xFF;
+		int movesOffset = GAME_HEADER_SIZE + 8 * (moveCount + 1);
+		replay(seed, record, movesOffset, moveCount);
+		String strings[] = new String[4];
+		record.position(movesOffset + moveCount);
+		for(int i=0; i<strings.length; i++) {
+			byte s[] = new byte[record.getShort() & 0xFFFF];
+			record.get(s);
+			strings[i] = new String(s, UTF8);
+		}
+		GameRecord game = new GameRecord(seed, record.getInt(13), strings[0], strings[1], strings[2], strings[3]);
+		for(int i=0; i<moveCount; i++)
+			game.addMove((positionPlayer1[i] ? GameState.Player.PLAYER1 : GameState.Player.PLAYER2), new Square(moves[i] / 8, moves[i] % 8), GameRecord.Decision.AGENT, 0, 0);
+		game.setResult(record.get(17), record.get(18));
+		return game;
+	}
+
+	/**
+	 * Records the best-known score of the position in
+	 * <code>state</code> for the player to move (<i>e.g.</i> its
+	 * exact value from an endgame solver, or a deep search), adding
+	 * the position if necessary.  It applies to every rotation and
+	 * reflection of the position.
+	 *
+	 * @param score a score between <code>-32767</code> and <code>32767</code>.
+	 * @throws IOException if the database could not be written.
+	 */
+	public synchronized void setScore(GameState state, int score) throws IOException {
+		if(score <= NO_SCORE || score > Short.MAX_VALUE)
+			throw new IllegalArgumentException("the score must be between " + (NO_SCORE + 1) + " and " + Short.MAX_VALUE);
+		ensureCapacity(1);
+		markDirty();
+		int slot = findSlot(state, true);
+		setSlotScore(slot, score);
+		ByteBuffer b = ByteBuffer.allocate(SCORE_SIZE);
+		b.putInt(SCORE_SIZE).put(SCORE).putLong(canonicalOwn).putLong(canonicalOpponent).putShort((short)score);
+		append(b);
+	}
+
+	/**
+	 * Returns the number of distinct (canonical) positions in the
+	 * database.
+	 */
+	public synchronized int getPositionCount() {
+		return count;
+	}
+
+	/**
+	 * Writes all changes to disk.
+	 *
+	 * @throws IOException if the database could not be written.
+	 */
+	public synchronized void flush() throws IOException {
+		flushPending();
+		data.force(false);
+		if(!clean) {
+			index.putInt(INDEX_COUNT, count);
+			index.putLong(INDEX_DATA_LENGTH, dataEnd);
+			index.force();
+			/* the index is only marked clean once the rest of it is on disk */
+			index.putInt(INDEX_CLEAN, 1);
+			index.force();
+			clean = true;
+		}
+	}
+
+	/**
+	 * Writes all changes to disk and closes the database.
+	 *
+	 * @throws IOException if the database could not be written.
+	 */
+	public synchronized void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			data.close();
+			if(indexChannel != null)
+				indexChannel.close();
+		}
+	}
+
+	/**
+	 * Prints command line usage information.
+	 */
+	public static void printUsage() {
+		System.err.println(Othello.getVersionInfo());
+		System.err.println("Usage: PositionDatabase database [options] [record ...]");
+		System.err.println();
+		System.err.println("  database          The database file, which is created if it does not exist");
+		System.err.println("  record            A game record (see -record) to add to the database, or a");
+		System.err.println("                    directory of them");
+		System.err.println();
+		System.err.println("OPTIONS:");
+		System.err.println("         -q  position");
+		System.err.println("                    After adding the records, prints the statistics of the");
+		System.err.println("                    position (as printed by GameState.toFEN(), in quotes),");
+		System.err.println("                    of each of its moves, and its most recent games.");
+	}
+
+	/**
+	 * Adds game records to a database and queries it.
+	 */
+	public static void main(String[] args) {
+		if(args.length < 1) {
+			printUsage();
+			System.exit(1);
+		}
+		GameState query = null;
+		ArrayList<File> records = new ArrayList<File>();
+		try {
+			for(int i=1; i<args.length; i++) {
+				if(args[i].equals("-q"))
+					query = GameState.fromFEN(args[++i]);
+				else
+					records.add(new File(args[i]));
+			}
+		} catch(RuntimeException re) {
+			System.err.println("Error: " + re.getMessage() + "\n");
+			printUsage();
+			System.exit(1);
+		}
+		try {
+			PositionDatabase db = new PositionDatabase(new File(args[0]));
+			try {
+				long start = System.currentTimeMillis();
+				int added = 0;
+				for(File f : records)
+					added += db.load(f);
+				db.flush();
+				if(!records.isEmpty()) {
+					long millis = Math.max(1, System.currentTimeMillis() - start);
+					System.out.println("Added " + added + " games in " + millis + "ms (" + (added * 1000L / millis) + " games per second); the database has " + db.getPositionCount() + " positions.");
+				}
+				if(query != null) {
+					System.out.println(query);
+					System.out.println("Position: " + db.getStatistics(query));
+					for(Map.Entry<Square,Statistics> e : db.getMoveStatistics(query).entrySet())
+						System.out.println("Move " + e.getKey() + ": " + e.getValue());
+					for(long id : db.getGames(query, 10)) {
+						GameRecord game = db.getGame(id);
+						System.out.println("Game " + id + ": " + game.getPlayerName(1) + " " + game.getScore(1) + " - " + game.getScore(2) + " " + game.getPlayerName(2) + " (seed " + game.getSeed() + ")");
+					}
+				}
+			} finally {
+				db.close();
+			}
+		} catch(IOException ioe) {
+			System.err.println("Error: " + ioe.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,516 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The parameters of the (Multi-)ProbCut selective search used by
+ * {@link AlphaBetaSearch}.  ProbCut relies on the value of a deep
+ * search being well predicted by that of a shallow one: for each
+ * game phase and depth <i>d</i>, there is a linear fit
+ * <i>v<sub>d</sub></i> &asymp; <i>a</i>&nbsp;<i>v<sub>s</sub></i> +
+ * <i>b</i> to the value of a shallow search of depth <i>s</i>, with
+ * residuals of standard deviation <i>&sigma;</i>.  A node whose
+ * shallow value predicts, with a confidence given by the {@link
+ * #getThreshold() threshold} (in standard deviations), that the deep
+ * search would fail high or low is cut without searching it deeply.
+ * With several checks for the same depth (Multi-ProbCut) they are
+ * tried from the shallowest up.
+ *
+ * <p>The fits are computed by this class's main method, which runs
+ * searches of every depth over a corpus of positions (self-play
+ * shards or game records) and writes them to a text file that {@link
+ * #read(File)} loads.  The {@link #setDefault(ProbCutParameters)
+ * default} parameters, used by {@link AlphaBetaOthelloPlayer}, are
+ * loaded with the <code>-probcut</code> command line option.</p>
+ */
+public final class ProbCutParameters {
+	/**
+	 * The number of game phases, each spanning ten moves.
+	 */
+	public static final int PHASES = 6;
+	/**
+	 * The deepest search for which there can be checks.
+	 */
+	public static final int MAX_DEPTH = 32;
+	/* fits based on fewer positions than this are not written */
+	private static final int MIN_SAMPLES = 30;
+	private static final Check NO_CHECKS[] = new Check[0];
+
+	private static volatile ProbCutParameters defaultParameters = null;
+
+	/**
+	 * A fit of the value of a search of a given depth to that of a
+	 * shallower search.
+	 */
+	public static final class Check {
+		private final int shallowDepth;
+		private final double a;
+		private final double b;
+		private final double sigma;
+		private final int samples;
+
+		Check(int shallowDepth, double a, double b, double sigma, int samples) {
+			this.shallowDepth = shallowDepth;
+			this.a = a;
+			this.b = b;
+			this.sigma = sigma;
+			this.samples = samples;
+		}
+
+		/**
+		 * Returns the depth of the shallow search.
+		 */
+		public int getShallowDepth() {
+			return shallowDepth;
+		}
+
+		/**
+		 * Returns the slope of the fit.
+		 */
+		public double getSlope() {
+			return a;
+		}
+
+		/**
+		 * Returns the intercept of the fit.
+		 */
+		public double getIntercept() {
+			return b;
+		}
+
+		/**
+		 * Returns the standard deviation of the residuals of the fit.
+		 */
+		public double getSigma() {
+			return sigma;
+		}
+
+		/**
+		 * Returns the number of positions the fit is based on.
+		 */
+		public int getSamples() {
+			return samples;
+		}
+	}
+
+	private final Check checks[][][];
+	private double threshold;
+
+	/**
+	 * Creates a set of parameters without any checks, and with a
+	 * threshold of 1.5 standard deviations.
+	 */
+	public ProbCutParameters() {
+		checks = new Check[PHASES][MAX_DEPTH + 1][];
+		for(Check phase[][] : checks)
+			Arrays.fill(phase, NO_CHECKS);
+		threshold = 1.5;
+	}
+
+	/**
+	 * Sets the parameters used by new {@link AlphaBetaOthelloPlayer}s
+	 * (or <code>null</code> to search without ProbCut).
+	 */
+	public static void setDefault(ProbCutParameters parameters) {
+		defaultParameters = parameters;
+	}
+
+	/**
+	 * Returns the default parameters, or <code>null</code> if there
+	 * are none.
+	 */
+	public static ProbCutParameters getDefault() {
+		return defaultParameters;
+	}
+
+	/**
+	 * Returns the phase of a position with <code>empties</code> empty
+	 * squares.
+	 */
+	public static int getPhase(int empties) {
+		return Math.max(0, Math.min(PHASES - 1, (60 - empties) / 10));
+	}
+
+	/**
+	 * Returns the number of standard deviations by which a shallow
+	 * value must predict a cut.  Lower thresholds cut more often, and
+	 * err more often.
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Sets the number of standard deviations by which a shallow value
+	 * must predict a cut.
+	 */
+	public void setThreshold(double threshold) {
+		if(threshold <= 0)
+			throw new IllegalArgumentException("The threshold must be positive!");
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Returns the checks for a search of the given depth in the given
+	 * phase, from the shallowest up.  The array is empty if there are
+	 * none; it must not be modified.
+	 */
+	public Check[] getChecks(int phase, int depth) {
+		if(depth < 0 || depth > MAX_DEPTH)
+			return NO_CHECKS;
+		return checks[phase][depth];
+	}
+
+	/**
+	 * Adds (or replaces) the check of a search of depth
+	 * <code>depth</code> against one of depth
+	 * <code>shallowDepth</code>.
+	 *
+	 * @throws IllegalArgumentException if the phase or depths are out of range, or the slope is not positive.
+	 */
+	public void addCheck(int phase, int depth, int shallowDepth, double a, double b, double sigma, int samples) {
+		if(phase < 0 || phase >= PHASES)
+			throw new IllegalArgumentException("invalid phase " + phase);
+		if(depth > MAX_DEPTH || shallowDepth < 0 || shallowDepth >= depth)
+			throw new IllegalArgumentException("invalid depths " + depth + " and " + shallowDepth);
+		if(!(a > 0) || !(sigma >= 0))
+			throw new IllegalArgumentException("invalid fit");
+		ArrayList<Check> list = new ArrayList<Check>();
+		for(Check check : checks[phase][depth])
+			if(check.shallowDepth != shallowDepth)
+				list.add(check);
+		Check check = new Check(shallowDepth, a, b, sigma, samples);
+		int i = 0;
+		while(i < list.size() && list.get(i).shallowDepth < shallowDepth)
+			i++;
+		list.add(i, check);
+		checks[phase][depth] = list.toArray(NO_CHECKS);
+	}
+
+	/**
+	 * Writes the parameters to a file.
+	 *
+	 * @throws IOException if there was an error writing the file.
+	 */
+	public void write(File file) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println("# " + Othello.getVersionInfo().trim().replace("\n", "\n# "));
+			out.println("threshold " + threshold);
+			out.println("# check phase depth shallow a b sigma samples");
+			for(int p=0; p<PHASES; p++)
+				for(int d=0; d<=MAX_DEPTH; d++)
+					for(Check c : checks[p][d])
+						out.println("check " + p + " " + d + " " + c.shallowDepth + " " + c.a + " " + c.b + " " + c.sigma + " " + c.samples);
+		} finally {
+			out.close();
+		}
+		if(out.checkError())
+			throw new IOException("Error writing " + file);
+	}
+
+	/**
+	 * Reads parameters from a file.
+	 *
+	 * @throws IOException if the file could not be read or is not properly formatted.
+	 */
+	public static ProbCutParameters read(File file) throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			ProbCutParameters parameters = new ProbCutParameters();
+			String line;
+			int lineNumber = 0;
+			while((line = in.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if(line.length() == 0 || line.startsWith("#"))
+					continue;
+				StringTokenizer st = new StringTokenizer(line);
+				String key = st.nextToken();
+				try {
+					if(key.equals("threshold"))
+						parameters.setThreshold(Double.parseDouble(st.nextToken()));
+					else if(key.equals("check")) {
+						int phase = Integer.parseInt(st.nextToken());
+						int depth = Integer.parseInt(st.nextToken());
+						int shallowDepth = Integer.parseInt(st.nextToken());
+						double a = Double.parseDouble(st.nextToken());
+						double b = Double.parseDouble(st.nextToken());
+						double sigma = Double.parseDouble(st.nextToken());
+						int samples = Integer.parseInt(st.nextToken());
+						parameters.addCheck(phase, depth, shallowDepth, a, b, sigma, samples);
+					} else
+						throw new IllegalArgumentException("unknown item \"" + key + "\"");
+				} catch(RuntimeException re) {
+					throw new IOException(file + ":" + lineNumber + ": " + re.toString());
+				}
+			}
+			return parameters;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Chooses a fixed-size, uniformly random sample of the positions
+	 * of a corpus (reservoir sampling), storing the discs of the
+	 * player to move and of its opponent.
+	 */
+	private static final class Corpus {
+		final long own[];
+		final long opponent[];
+		final int minEmpties;
+		final Random random;
+		long seen;
+
+		Corpus(int size, int minEmpties) {
+			own = new long[size];
+			opponent = new long[size];
+			this.minEmpties = minEmpties;
+			random = new Random(0);
+			seen = 0;
+		}
+
+		int size() {
+			return (int)Math.min(seen, own.length);
+		}
+
+		void add(GameState state) {
+			if(state.getStatus() != GameState.GameStatus.PLAYING || state.getEmptyCount() < minEmpties)
+				return;
+			long i = seen++;
+			if(i >= own.length) {
+				i = (long)(random.nextDouble() * seen);
+				if(i >= own.length)
+					return;
+			}
+			GameState.Player player = state.getCurrentPlayer();
+			own[(int)i] = state.getDiscs(player);
+			opponent[(int)i] = state.getDiscs(state.getOpponent(player));
+		}
+
+		/* adds the positions of a self-play shard, a game record, or (recursively) a directory of them */
+		void load(File file) {
+			if(file.isDirectory()) {
+				String names[] = file.list();
+				if(names != null) {
+					Arrays.sort(names);
+					for(String name : names)
+						load(new File(file, name));
+				}
+			} else if(file.getName().endsWith(".bin.gz")) {
+				try {
+					DataInputStream in = new DataInputStream(new GZIPInputStream(new FileInputStream(file), 1 << 16));
+					try {
+						byte sample[] = new byte[SelfPlayGenerator.SAMPLE_SIZE];
+						while(true) {
+							try {
+								in.readFully(sample);
+							} catch(EOFException eofe) {
+								break;
+							}
+							add(GameState.readFrom(ByteBuffer.wrap(sample)));
+						}
+					} finally {
+						in.close();
+					}
+				} catch(IOException ioe) {
+					System.err.println("Warning: Skipping the rest of " + file + ": " + ioe.getMessage());
+				}
+			} else {
+				GameRecord record;
+				try {
+					record = GameRecord.read(file);
+				} catch(IOException ioe) {
+					System.err.println("Warning: Skipping " + file + ": " + ioe.getMessage());
+					return;
+				}
+				GameState state = new GameState(record.getSeed());
+				try {
+					for(GameRecord.Move move : record.getMoves()) {
+						add(state);
+						state = state.applyMove(move.getSquare(), false);
+					}
+				} catch(InvalidMoveException ime) {
+					System.err.println("Warning: " + file + " contains an invalid move: " + ime.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fits the checks of every depth from <code>3</code> to
+	 * <code>maxDepth</code> against shallow searches two and four plies
+	 * shallower, from plain alpha-beta searches of the positions of
+	 * <code>corpus</code> on <code>workers</code> threads.
+	 */
+	private static ProbCutParameters calibrate(final Corpus corpus, final int maxDepth, int workers, final PrintWriter report) throws InterruptedException, ExecutionException {
+		final int size = corpus.size();
+		/* the values of the searches of every depth, by position */
+		final int values[][] = new int[size][maxDepth + 1];
+		final AtomicInteger next = new AtomicInteger(0);
+		final AtomicInteger done = new AtomicInteger(0);
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		try {
+			ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+			for(int w=0; w<workers; w++) {
+				futures.add(pool.submit(new Runnable() {
+					public void run() {
+						AlphaBetaSearch search = new AlphaBetaSearch(null);
+						for(int i=next.getAndIncrement(); i<size; i=next.getAndIncrement()) {
+							for(int d=1; d<=maxDepth; d++) {
+								/* results of other depths must not leak into this one */
+								search.clear();
+								values[i][d] = search.search(corpus.own[i], corpus.opponent[i], d);
+							}
+							int n = done.incrementAndGet();
+							if(n % 100 == 0 || n == size) {
+								synchronized(report) {
+									report.println("Searched " + n + " of " + size + " positions");
+									report.flush();
+								}
+							}
+						}
+					}
+				}));
+			}
+			for(Future<?> future : futures)
+				future.get();
+		} finally {
+			pool.shutdownNow();
+		}
+
+		ProbCutParameters parameters = new ProbCutParameters();
+		for(int p=0; p<PHASES; p++) {
+			for(int d=3; d<=maxDepth; d++) {
+				for(int s=d-4; s<=d-2; s+=2) {
+					if(s < 1)
+						continue;
+					/* least squares fit of the deep values to the shallow ones */
+					int n = 0;
+					double sx = 0, sy = 0, sxx = 0, sxy = 0, syy = 0;
+					for(int i=0; i<size; i++) {
+						if(getPhase(64 - Long.bitCount(corpus.own[i] | corpus.opponent[i])) != p)
+							continue;
+						double x = values[i][s];
+						double y = values[i][d];
+						n++;
+						sx += x;
+						sy += y;
+						sxx += x * x;
+						sxy += x * y;
+						syy += y * y;
+					}
+					if(n < MIN_SAMPLES)
+						continue;
+					double varX = sxx - sx * sx / n;
+					if(varX <= 0)
+						continue;
+					double a = (sxy - sx * sy / n) / varX;
+					double b = (sy - a * sx) / n;
+					double residuals = syy - 2 * a * sxy - 2 * b * sy + a * a * sxx + 2 * a * b * sx + n * b * b;
+					double sigma = Math.sqrt(Math.max(0, residuals) / Math.max(1, n - 2));
+					if(a > 0)
+						parameters.addCheck(p, d, s, a, b, sigma, n);
+				}
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Prints command line usage information.
+	 */
+	public static void printUsage() {
+		System.err.println(Othello.getVersionInfo());
+		System.err.println("Usage: ProbCutParameters [options] output corpus ...");
+		System.err.println();
+		System.err.println("  output            The file to which to write the parameters");
+		System.err.println("  corpus            A self-play shard (see SelfPlayGenerator), a game record");
+		System.err.println("                    (see -record), or a directory of them");
+		System.err.println();
+		System.err.println("OPTIONS:");
+		System.err.println("         -d  depth  The deepest search to calibrate (the default is 8).");
+		System.err.println("         -n  number The number of positions to sample from the corpus (the");
+		System.err.println("                    default is 2000).");
+		System.err.println("         -e  number Only samples positions with at least this many empty");
+		System.err.println("                    squares (the default is 16).");
+		System.err.println("         -t  number The threshold, in standard deviations (the default is");
+		System.err.println("                    1.5).");
+		System.err.println("         -w  number The number of threads to search on (the default is the");
+		System.err.println("                    number of processors).");
+	}
+
+	/**
+	 * Calibrates the parameters from a corpus of positions.
+	 */
+	public static void main(String[] args) {
+		int maxDepth = 8;
+		int positions = 2000;
+		int minEmpties = 16;
+		double threshold = 1.5;
+		int workers = Runtime.getRuntime().availableProcessors();
+		int i = 0;
+		try {
+			for(; i<args.length && args[i].startsWith("-"); i++) {
+				if(args[i].equals("-d"))
+					maxDepth = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-n"))
+					positions = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-e"))
+					minEmpties = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-t"))
+					threshold = Double.parseDouble(args[++i]);
+				else if(args[i].equals("-w"))
+					workers = Integer.parseInt(args[++i]);
+				else
+					throw new IllegalArgumentException("unexpected argument \"" + args[i] + "\"");
+			}
+			if(args.length - i < 2)
+				throw new IllegalArgumentException("expected an output file and at least one corpus");
+			if(maxDepth < 3 || maxDepth > MAX_DEPTH || positions < 1 || workers < 1 || threshold <= 0)
+				throw new IllegalArgumentException("invalid option value");
+		} catch(RuntimeException re) {
+			System.err.println("Error: " + re.getMessage() + "\n");
+			printUsage();
+			System.exit(1);
+		}
+		Corpus corpus = new Corpus(positions, minEmpties);
+		for(int j=i+1; j<args.length; j++)
+			corpus.load(new File(args[j]));
+		if(corpus.size() == 0) {
+			System.err.println("Error: The corpus does not contain any positions with at least " + minEmpties + " empty squares");
+			System.exit(1);
+		}
+		System.out.println("Sampled " + corpus.size() + " of " + corpus.seen + " positions");
+		try {
+			long start = System.currentTimeMillis();
+			ProbCutParameters parameters = calibrate(corpus, maxDepth, workers, new PrintWriter(System.out));
+			parameters.setThreshold(threshold);
+			parameters.write(new File(args[i]));
+			System.out.println("Wrote " + args[i] + " in " + (System.currentTimeMillis() - start) + "ms");
+		} catch(Exception e) {
+			System.err.println("Error: " + e.toString());
+			System.exit(1);
+		}
+	}
+}
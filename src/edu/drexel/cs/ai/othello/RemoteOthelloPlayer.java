@@ -0,0 +1,159 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.StringTokenizer;
+
+/**
+ * An agent whose moves are chosen by a remote process that is
+ * connected to a {@link GameServer} through a simple line protocol.
+ *
+ * <p>The protocol is as follows.  Every message is a single line of
+ * text.  After connecting, the client sends
+ * <pre>
+HELLO <i>name</i>
+</pre>
+ * Whenever it is the client's turn, the server sends
+ * <pre>
+MOVE <i>id</i> <i>board</i> <i>player</i> <i>millis</i>
+</pre>
+ * where <i>id</i> is a number identifying the request, <i>board</i>
+ * is 64 characters (one for each square in row-major order: <code>@</code>
+ * for player 1, <code>O</code> for player 2 and <code>.</code> for
+ * empty), <i>player</i> is the player to move (<code>@</code> or
+ * <code>O</code>), and <i>millis</i> is the number of milliseconds
+ * until the deadline (<code>-1</code> if there is none).  The client
+ * replies with
+ * <pre>
+<i>id</i> <i>square</i>
+</pre>
+ * (<i>e.g.</i> "<code>17 c3</code>"), or with "<code><i>id</i> ?</code>"
+ * if it could not choose a move.  Replies to requests whose deadline
+ * has passed are ignored.  When a game ends the server sends
+ * <pre>
+END <i>player1score</i> <i>player2score</i>
+</pre>
+ * after which the client may be paired into another game.</p>
+ *
+ * @see RemotePlayerClient
+ */
+final class RemoteOthelloPlayer extends OthelloPlayer {
+	private final LineConnection connection;
+	private long nextRequestId;
+
+	RemoteOthelloPlayer(String name, LineConnection connection) {
+		super(name);
+		this.connection = connection;
+		nextRequestId = 0;
+	}
+
+	LineConnection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Asks the remote agent for its move, waiting until the deadline
+	 * (or forever if there is none).  Returns <code>null</code> if the
+	 * remote agent did not reply in time or disconnected.
+	 */
+	public Square getMove(GameState currentState, Date deadline) {
+		long id = nextRequestId++;
+		long millis = (deadline == null ? -1 : Math.max(0, getMillisUntilDeadline()));
+		try {
+			connection.send("MOVE " + id + " " + encodeBoard(currentState) + " " + encodePlayer(currentState.getCurrentPlayer()) + " " + millis);
+			while(true) {
+				long remaining = (deadline == null ? -1 : getMillisUntilDeadline());
+				if(deadline != null && remaining <= 0)
+					return null;
+				String line = connection.receive(remaining);
+				if(line == null)
+					return null;
+				/* this runs in the agent's restricted thread, in which
+				 * String.split(...) is not permitted to bootstrap its
+				 * regular expressions */
+				StringTokenizer reply = new StringTokenizer(line);
+				if(reply.countTokens() != 2) {
+					log("Ignoring malformed reply: " + line);
+					continue;
+				}
+				String replyId = reply.nextToken();
+				String replyMove = reply.nextToken();
+				try {
+					if(Long.parseLong(replyId) != id)
+						continue; /* a late reply to an earlier request */
+				} catch(NumberFormatException nfe) {
+					log("Ignoring malformed reply: " + line);
+					continue;
+				}
+				try {
+					return new Square(replyMove);
+				} catch(IllegalArgumentException iae) {
+					/* the remote agent could not decide on a move */
+					return null;
+				}
+			}
+		} catch(IOException ioe) {
+			log("Lost the connection: " + ioe.getMessage());
+			return null;
+		} catch(InterruptedException ie) {
+			return null;
+		}
+	}
+
+	/**
+	 * Notifies the remote agent that the game has ended.
+	 */
+	void gameOver(GameState finalState) {
+		try {
+			connection.send("END " + finalState.getScore(GameState.Player.PLAYER1) + " " + finalState.getScore(GameState.Player.PLAYER2));
+		} catch(IOException ioe) {}
+	}
+
+	static String encodePlayer(GameState.Player player) {
+		return (player == GameState.Player.PLAYER1 ? "@" : "O");
+	}
+
+	static GameState.Player decodePlayer(String player) {
+		if(player.equals("@"))
+			return GameState.Player.PLAYER1;
+		else if(player.equals("O"))
+			return GameState.Player.PLAYER2;
+		else
+			throw new IllegalArgumentException("Unknown player \"" + player + "\"");
+	}
+
+	static String encodeBoard(GameState state) {
+		char board[] = new char[64];
+		for(int i=0; i<8; i++) {
+			for(int j=0; j<8; j++) {
+				GameState.Player p = state.getSquare(i, j);
+				board[i*8 + j] = (p == GameState.Player.PLAYER1 ? '@' : (p == GameState.Player.PLAYER2 ? 'O' : '.'));
+			}
+		}
+		return new String(board);
+	}
+
+	/**
+	 * Reconstructs a state from its encoded board and the player to
+	 * move.
+	 *
+	 * @throws IllegalArgumentException if the board is not properly formatted.
+	 */
+	static GameState decodeState(String encodedBoard, String player) {
+		if(encodedBoard.length() != 64)
+			throw new IllegalArgumentException("A board must have exactly 64 squares!");
+		GameState.Player board[][] = new GameState.Player[8][8];
+		for(int i=0; i<64; i++) {
+			char c = encodedBoard.charAt(i);
+			if(c == '@')
+				board[i / 8][i % 8] = GameState.Player.PLAYER1;
+			else if(c == 'O')
+				board[i / 8][i % 8] = GameState.Player.PLAYER2;
+			else if(c == '.')
+				board[i / 8][i % 8] = GameState.Player.EMPTY;
+			else
+				throw new IllegalArgumentException("Unknown square '" + c + "'");
+		}
+		return new GameState(board, decodePlayer(player));
+	}
+}
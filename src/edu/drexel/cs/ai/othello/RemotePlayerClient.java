@@ -0,0 +1,85 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Date;
+import java.util.concurrent.Executors;
+
+/**
+ * Connects an {@link OthelloPlayer} to a {@link GameServer} and plays
+ * every game the server pairs it into.  See {@link
+ * RemoteOthelloPlayer} for a description of the protocol.
+ */
+public class RemotePlayerClient implements Runnable {
+	private final OthelloPlayer player;
+	private final LineConnection connection;
+
+	RemotePlayerClient(OthelloPlayer player, LineConnection connection) {
+		this.player = player;
+		this.connection = connection;
+	}
+
+	/**
+	 * Connects <code>player</code> to the server listening at
+	 * <code>host</code>:<code>port</code>.
+	 */
+	public RemotePlayerClient(OthelloPlayer player, String host, int port) throws IOException {
+		this(player, LineConnection.forSocket(new Socket(host, port), Executors.defaultThreadFactory()));
+	}
+
+	/**
+	 * Plays games until the server closes the connection, and then
+	 * {@link OthelloPlayer#close() closes} the agent.
+	 */
+	public void run() {
+		try {
+			connection.send("HELLO " + player.getName());
+			while(true) {
+				String line = connection.receive(-1);
+				String message[] = line.trim().split("\\s+");
+				if(message.length == 5 && message[0].equals("MOVE")) {
+					long millis = Long.parseLong(message[4]);
+					Date deadline = (millis < 0 ? null : new Date(System.currentTimeMillis() + millis));
+					Square move = null;
+					try {
+						GameState state = RemoteOthelloPlayer.decodeState(message[2], message[3]);
+						move = player.getMoveInternal(state, deadline);
+					} catch(RuntimeException re) {
+						player.log(re.toString());
+					}
+					connection.send(message[1] + " " + (move == null ? "?" : move.toString()));
+				} else if(message[0].equals("END")) {
+					player.log("Game over: " + line.substring(3).trim());
+				}
+			}
+		} catch(IOException ioe) {
+			/* the server closed the connection */
+		} catch(InterruptedException ie) {
+		} finally {
+			connection.close();
+			player.close();
+		}
+	}
+
+	/**
+	 * Connects an agent to a game server.
+	 * <p>Usage: <code>RemotePlayerClient host port playerclass [playername]</code></p>
+	 */
+	public static void main(String[] args) {
+		if(args.length < 3 || args.length > 4) {
+			System.err.println("Usage: RemotePlayerClient host port playerclass [playername]");
+			System.exit(1);
+		}
+		String playerClass = Othello.getPlayerClassName(args[2]);
+		if(playerClass == null)
+			System.exit(1);
+		String name = (args.length > 3 ? args[3] : Othello.getSimplifiedClassName(playerClass));
+		try {
+			OthelloPlayer player = Othello.instantiatePlayer(playerClass, name);
+			new RemotePlayerClient(player, args[0], Integer.parseInt(args[1])).run();
+		} catch(Exception e) {
+			System.err.println("Error: " + e.toString());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package edu.drexel.cs.ai.othello;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * An agent that replays the moves of one of the players of a {@link
+ * GameRecord}.
+ */
+final class ReplayOthelloPlayer extends OthelloPlayer {
+	private final List<GameRecord.Move> moves;
+
+	ReplayOthelloPlayer(String name, GameRecord record) {
+		super(name);
+		moves = record.getMoves();
+	}
+
+	/**
+	 * Returns the recorded move for <code>currentState</code>, or
+	 * <code>null</code> if the game has diverged from the record.
+	 */
+	public Square getMove(GameState currentState, Date deadline) {
+		/* every move places exactly one disc, so the move number indexes the record */
+		int index = currentState.getMoveNumber();
+		if(index >= moves.size()) {
+			log("The record ends before the game does!");
+			return null;
+		}
+		GameRecord.Move move = moves.get(index);
+		if(move.getPlayer() != currentState.getCurrentPlayer()) {
+			log("The game has diverged from the record at move " + index + "!");
+			return null;
+		}
+		String decision = "";
+		if(move.getDecision() == GameRecord.Decision.BEST)
+			decision = ", timed out and used its best move";
+		else if(move.getDecision() == GameRecord.Decision.RANDOM)
+			decision = ", moved randomly";
+		log("Recorded move " + move.getSquare() + " (" + move.getMillis() + "ms, " + move.getNodes() + " nodes" + decision + ")");
+		return move.getSquare();
+	}
+}
@@ -0,0 +1,15 @@
+package edu.drexel.cs.ai.othello;
+
+/**
+ * An interface for user interfaces that wish to receive the CPU time
+ * and memory used by the agents.
+ */
+public interface ResourceUsageListener {
+	/**
+	 * Callback function for updating the total CPU time (in
+	 * milliseconds) used by a player's threads and the total number of
+	 * bytes they have allocated thus far in the game.  Either value is
+	 * <code>-1</code> if the JVM cannot measure it.
+	 */
+	public void updateResourcesUsed(OthelloPlayer player, long cpuMillisUsed, long bytesAllocated);
+}
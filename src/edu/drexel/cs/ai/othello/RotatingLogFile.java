@@ -0,0 +1,78 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * A log file that is rotated once it reaches a maximum size: the
+ * file is renamed to <code>file.1</code> (the previous
+ * <code>file.1</code> to <code>file.2</code>, and so on), the oldest
+ * backup is deleted, and a new file is started.  Lines are buffered
+ * until {@link #flush()} is called.
+ */
+final class RotatingLogFile {
+	private final File file;
+	private final long maxBytes;
+	private final int backups;
+	private Writer out;
+	private long bytes;
+
+	/**
+	 * Opens (appending to) <code>file</code>.
+	 *
+	 * @param maxBytes the size at which the file is rotated.
+	 * @param backups the number of rotated files to keep.
+	 */
+	RotatingLogFile(File file, long maxBytes, int backups) throws IOException {
+		this.file = file;
+		this.maxBytes = maxBytes;
+		this.backups = backups;
+		open();
+	}
+
+	private void open() throws IOException {
+		bytes = file.length();
+		out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+	}
+
+	private void rotate() throws IOException {
+		out.close();
+		File oldest = new File(file.getPath() + "." + backups);
+		if(oldest.exists() && !oldest.delete())
+			throw new IOException("Could not delete " + oldest);
+		for(int i=backups-1; i>=1; i--) {
+			File f = new File(file.getPath() + "." + i);
+			if(f.exists() && !f.renameTo(new File(file.getPath() + "." + (i+1))))
+				throw new IOException("Could not rename " + f);
+		}
+		if(backups <= 0) {
+			if(!file.delete())
+				throw new IOException("Could not delete " + file);
+		} else if(!file.renameTo(new File(file.getPath() + ".1")))
+			throw new IOException("Could not rename " + file);
+		open();
+	}
+
+	/**
+	 * Appends a line to the file, rotating it first if it is full.
+	 */
+	void println(String line) throws IOException {
+		if(bytes > 0 && bytes + line.length() + 1 > maxBytes)
+			rotate();
+		out.write(line);
+		out.write('\n');
+		bytes += line.length() + 1; /* approximate; exact for ASCII */
+	}
+
+	void flush() throws IOException {
+		out.flush();
+	}
+
+	void close() throws IOException {
+		out.close();
+	}
+}
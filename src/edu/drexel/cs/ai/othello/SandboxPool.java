@@ -0,0 +1,267 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A pool of pre-spawned worker processes in which agents are run.
+ * Every agent gets its own JVM with its own heap limit, and is killed
+ * if it exceeds its CPU time limit or misses its deadline by too much,
+ * so an agent that exhausts its heap or never returns cannot take the
+ * game engine (or the other agent) down with it.
+ *
+ * <p>The process boundary alone does not keep an agent from reading
+ * or writing files, opening connections or starting processes with
+ * the privileges of the user running the game.  The workers therefore
+ * install the same security manager that restricts in-process agents,
+ * but only if their JVM still supports one; on JVMs that do not, a
+ * warning is printed and agents are confined only in memory and CPU
+ * time.</p>
+ *
+ * <p>Spawning a JVM takes far longer than a move, so the pool keeps
+ * <code>size</code> idle workers ready; whenever one is handed out, a
+ * replacement is spawned in the background.  Moves are exchanged over
+ * the workers' standard input and output using a compact binary
+ * protocol (see {@link SandboxWorker}).</p>
+ */
+public class SandboxPool {
+	private final String classpath;
+	private final int maxHeapMegabytes;
+	private final long cpuLimitMillis;
+	private final List<String> workerArguments;
+	private final LinkedList<Worker> idle;
+	private final ArrayList<Worker> workers;
+	private final ScheduledThreadPoolExecutor scheduler;
+	private boolean closed;
+
+	/**
+	 * A worker process.
+	 */
+	static final class Worker {
+		private final Process process;
+		private final ProcessHandle handle;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+
+		Worker(Process process) {
+			this.process = process;
+			/* the handle must be obtained here, since doing so from an agent's thread is not permitted */
+			handle = process.toHandle();
+			in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+		}
+
+		DataInputStream getInput() {
+			return in;
+		}
+
+		DataOutputStream getOutput() {
+			return out;
+		}
+
+		/**
+		 * Returns the total CPU time used by the worker, or
+		 * <code>null</code> if it is not available.
+		 */
+		Duration getCpuTime() {
+			return handle.info().totalCpuDuration().orElse(null);
+		}
+
+		void kill() {
+			process.destroyForcibly();
+		}
+
+		void quit() {
+			try {
+				out.writeByte(SandboxWorker.QUIT);
+				out.flush();
+			} catch(IOException ioe) {
+				kill();
+			}
+		}
+	}
+
+	/**
+	 * Creates a new pool of workers and starts <code>size</code> of
+	 * them.
+	 *
+	 * @param size the number of idle workers to keep ready.
+	 * @param classpath the classpath of the workers, which must contain the agents' classes.
+	 * @param maxHeapMegabytes the maximum heap size of each worker.
+	 * @param cpuLimitMillis the total amount of CPU time (in milliseconds) each worker may use, or <code>0</code> for no limit.
+	 * @param workerArguments the command line arguments of the workers (see {@link SandboxWorker#main(String[])}).
+	 * @throws IOException if the workers could not be started.
+	 */
+	public SandboxPool(int size, String classpath, int maxHeapMegabytes, long cpuLimitMillis, List<String> workerArguments) throws IOException {
+		this.classpath = classpath;
+		this.maxHeapMegabytes = maxHeapMegabytes;
+		this.cpuLimitMillis = cpuLimitMillis;
+		this.workerArguments = new ArrayList<String>(workerArguments);
+		idle = new LinkedList<Worker>();
+		workers = new ArrayList<Worker>();
+		closed = false;
+		scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SandboxPool");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		/* the thread must exist before any agent's (restricted) thread schedules a watchdog */
+		scheduler.prestartAllCoreThreads();
+		for(int i=0; i<size; i++)
+			idle.add(spawn());
+	}
+
+	/**
+	 * Creates a new pool of workers without any command line
+	 * arguments.
+	 *
+	 * @see #SandboxPool(int, String, int, long, List)
+	 */
+	public SandboxPool(int size, String classpath, int maxHeapMegabytes, long cpuLimitMillis) throws IOException {
+		this(size, classpath, maxHeapMegabytes, cpuLimitMillis, new ArrayList<String>());
+	}
+
+	/**
+	 * Creates a new pool of workers whose classpath is the same as
+	 * this JVM's.
+	 *
+	 * @see #SandboxPool(int, String, int, long, List)
+	 */
+	public SandboxPool(int size, int maxHeapMegabytes, long cpuLimitMillis) throws IOException {
+		this(size, System.getProperty("java.class.path"), maxHeapMegabytes, cpuLimitMillis);
+	}
+
+	private Worker spawn() throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(java);
+		command.add("-Xmx" + maxHeapMegabytes + "M");
+		command.add("-XX:+ExitOnOutOfMemoryError");
+		command.add("-XX:+UseSerialGC");
+		command.add("-XX:ActiveProcessorCount=1");
+		/* from Java 18 on, the worker may only install its security manager if this is given (Java 12 and later understand it) */
+		if(Runtime.version().feature() >= 12)
+			command.add("-Djava.security.manager=allow");
+		command.add("-cp");
+		command.add(classpath);
+		command.add(SandboxWorker.class.getName());
+		command.addAll(workerArguments);
+		ProcessBuilder pb = new ProcessBuilder(command);
+		pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+		Worker worker = new Worker(pb.start());
+		synchronized(workers) {
+			workers.add(worker);
+		}
+		return worker;
+	}
+
+	ScheduledThreadPoolExecutor getScheduler() {
+		return scheduler;
+	}
+
+	long getCpuLimitMillis() {
+		return cpuLimitMillis;
+	}
+
+	/**
+	 * Returns whether <code>worker</code> has used more CPU time than
+	 * it may.
+	 */
+	boolean exceededCpuLimit(Worker worker) {
+		if(cpuLimitMillis <= 0)
+			return false;
+		Duration cpu = worker.getCpuTime();
+		return cpu != null && cpu.toMillis() > cpuLimitMillis;
+	}
+
+	private Worker take() throws IOException {
+		Worker worker = null;
+		synchronized(idle) {
+			if(closed)
+				throw new IllegalStateException("The pool has been closed!");
+			if(!idle.isEmpty())
+				worker = idle.removeFirst();
+		}
+		if(worker == null)
+			return spawn();
+		/* replace the worker in the background */
+		scheduler.execute(new Runnable() {
+			public void run() {
+				try {
+					Worker replacement = spawn();
+					synchronized(idle) {
+						if(closed)
+							replacement.quit();
+						else
+							idle.add(replacement);
+					}
+				} catch(IOException ioe) {
+					System.err.println("Error: Could not start a sandbox worker: " + ioe.toString());
+				}
+			}
+		});
+		return worker;
+	}
+
+	/**
+	 * Instantiates the agent <code>className</code> in an idle worker
+	 * and returns a proxy for it.
+	 *
+	 * @throws IOException if the worker could not be started or contacted.
+	 * @throws InstantiationException if the worker could not instantiate the agent.
+	 */
+	public OthelloPlayer newPlayer(String className, String playerName) throws IOException, InstantiationException {
+		Worker worker = take();
+		boolean initialized = false;
+		try {
+			DataOutputStream out = worker.getOutput();
+			out.writeByte(SandboxWorker.INIT);
+			out.writeUTF(className);
+			out.writeUTF(playerName);
+			out.flush();
+			if(worker.getInput().readByte() != SandboxWorker.OK)
+				throw new InstantiationException(worker.getInput().readUTF());
+			initialized = true;
+		} finally {
+			/* a worker that failed to instantiate its agent is of no further use */
+			if(!initialized)
+				discard(worker);
+		}
+		return new SandboxedOthelloPlayer(playerName, this, worker);
+	}
+
+	private void discard(Worker worker) {
+		worker.quit();
+		synchronized(workers) {
+			workers.remove(worker);
+		}
+	}
+
+	/**
+	 * Shuts down all of the workers.
+	 */
+	public void close() {
+		synchronized(idle) {
+			closed = true;
+			idle.clear();
+		}
+		synchronized(workers) {
+			for(Worker worker : workers)
+				worker.quit();
+			workers.clear();
+		}
+		scheduler.shutdown();
+	}
+}
@@ -0,0 +1,209 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * The main class of a sandbox worker process.  A worker hosts a single
+ * agent and answers move requests from a {@link SandboxPool} over its
+ * standard input and output using a compact binary protocol:
+ *
+ * <table>
+ * <tr><th align="left">Request</th><th align="left">Reply</th></tr>
+ * <tr><td><code>INIT</code> <i>className</i> <i>playerName</i></td><td><code>OK</code> or <code>ERROR</code> <i>message</i></td></tr>
+ * <tr><td><code>MOVE</code> <i>length</i> <i>state</i> <i>millis</i> <i>budget</i> <i>seed</i></td><td><i>square</i> <i>nodes</i></td></tr>
+ * <tr><td><code>QUIT</code></td><td>(none)</td></tr>
+ * </table>
+ *
+ * <p>Opcodes and squares are single bytes, the state is encoded with
+ * its history by {@link GameState#writeTo(java.nio.ByteBuffer,
+ * boolean)} and preceded by its length (an unsigned
+ * <code>short</code>), the time until the deadline and the node budget
+ * are <code>long</code>s (<code>-1</code> if there is none), the seed
+ * of the decoded state's random number generators is a <code>long</code>
+ * drawn from the driver's game so that seeded games stay reproducible,
+ * and strings are modified UTF-8.  The reply to a move is the square index
+ * <code>row*8+col</code>, or <code>-1</code> if the agent did not choose
+ * a move, followed by the number of nodes the agent generated as a
+ * <code>long</code> (<code>-1</code> if it is still running).  If the
+ * agent exceeded its budget, the square is its best registered move
+ * and the number of nodes exceeds the budget.</p>
+ *
+ * <p>The agent's standard output is redirected to standard error so
+ * that it cannot corrupt the protocol.  The agent is instantiated with
+ * {@link Othello#instantiatePlayer(String, String)}, which installs the
+ * security manager that restricts in-process agents if the JVM
+ * supports it, and its moves are made in its own thread group so that
+ * they are restricted too.</p>
+ */
+final class SandboxWorker {
+	static final byte QUIT  = 0;
+	static final byte INIT  = 1;
+	static final byte MOVE  = 2;
+	static final byte OK    = 0;
+	static final byte ERROR = 1;
+
+	private final DataInputStream in;
+	private final DataOutputStream out;
+	private OthelloPlayer player;
+	private Thread agentThread;
+
+	private SandboxWorker(DataInputStream in, DataOutputStream out) {
+		this.in = in;
+		this.out = out;
+		player = null;
+		agentThread = null;
+	}
+
+	private void init() throws IOException {
+		String className = in.readUTF();
+		String playerName = in.readUTF();
+		try {
+			player = Othello.instantiatePlayer(className, playerName);
+			out.writeByte(OK);
+		} catch(Exception e) {
+			out.writeByte(ERROR);
+			out.writeUTF(e.toString());
+		}
+		out.flush();
+	}
+
+	private void move() throws IOException {
+		byte encoded[] = new byte[in.readUnsignedShort()];
+		in.readFully(encoded);
+		long millis = in.readLong();
+		final long budget = in.readLong();
+		long seed = in.readLong();
+		final Date deadline = (millis < 0 ? null : new Date(System.currentTimeMillis() + millis));
+		final GameState state;
+		try {
+			state = GameState.readFrom(ByteBuffer.wrap(encoded));
+			state.setRandomSeed(seed);
+		} catch(RuntimeException re) {
+			throw new IOException("invalid state: " + re.getMessage());
+		}
+		final Square result[] = new Square[1];
+		final long nodes[] = {-1};
+
+		if(player == null || (agentThread != null && agentThread.isAlive())) {
+			/* we were never initialized, or the agent is still running from the last move */
+			out.writeByte(-1);
+			out.writeLong(-1);
+			out.flush();
+			return;
+		}
+
+		/* the agent's thread group is restricted by the security manager installed when it was instantiated */
+		agentThread = new Thread(player.getThreadGroup(), new Runnable() {
+			public void run() {
+				if(budget >= 0)
+					NodeBudget.begin(player.getThreadGroup(), budget);
+				try {
+					result[0] = player.getMoveInternal(state, deadline);
+				} catch(NodeBudgetExceededError nbee) {
+					result[0] = player.getCurrentBestMove();
+				} catch(Throwable t) {
+					t.printStackTrace();
+				} finally {
+					nodes[0] = (budget >= 0 ? NodeBudget.end() : 0);
+				}
+			}
+		}, player.getName());
+		agentThread.setDaemon(true);
+		agentThread.start();
+		try {
+			if(deadline == null)
+				agentThread.join();
+			else
+				agentThread.join(Math.max(1, millis));
+		} catch(InterruptedException ie) {}
+
+		Square move;
+		long used;
+		if(agentThread.isAlive()) {
+			/* the agent missed its deadline, so use the best move it registered (if any) */
+			move = player.getCurrentBestMove();
+			used = -1;
+			agentThread.interrupt();
+		} else {
+			move = result[0];
+			used = nodes[0];
+		}
+		out.writeByte(move == null ? -1 : move.getRow() * 8 + move.getCol());
+		out.writeLong(used);
+		out.flush();
+	}
+
+	private void serve() throws IOException {
+		while(true) {
+			byte opcode;
+			try {
+				opcode = in.readByte();
+			} catch(EOFException eofe) {
+				return; /* the pool went away, and the process exits with it */
+			}
+			switch(opcode) {
+			case INIT:
+				init();
+				break;
+			case MOVE:
+				move();
+				break;
+			default:
+				if(player != null)
+					player.close();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Runs a worker.  Agents use the defaults of the JVM in which they
+	 * run, so the options <code>-endgame</code> <i>file</i> and
+	 * <code>-probcut</code> <i>file</i> set the worker's default {@link
+	 * EndgameDatabase} and {@link ProbCutParameters}, as they do for a
+	 * game (see {@link Othello#main(String[])}).
+	 */
+	public static void main(String[] args) {
+		EndgameDatabase endgames = null;
+		try {
+			for(int i=0; i<args.length; i++) {
+				if(args[i].equals("-endgame") && i + 1 < args.length) {
+					endgames = new EndgameDatabase(new File(args[++i]), 64);
+					EndgameDatabase.setDefault(endgames);
+				} else if(args[i].equals("-probcut") && i + 1 < args.length)
+					ProbCutParameters.setDefault(ProbCutParameters.read(new File(args[++i])));
+				else {
+					System.err.println("Error: unexpected argument \"" + args[i] + "\"");
+					System.exit(1);
+				}
+			}
+		} catch(IOException ioe) {
+			System.err.println("Error: " + ioe.getMessage());
+			System.exit(1);
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(FileDescriptor.in)));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+		/* keep the agent from writing to the protocol stream */
+		System.setOut(new PrintStream(new FileOutputStream(FileDescriptor.err), true));
+		try {
+			new SandboxWorker(in, out).serve();
+		} catch(IOException ioe) {
+			System.err.println(ioe.toString());
+		}
+		if(endgames != null)
+			endgames.flush();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,111 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An agent that runs in a separate worker process of a {@link
+ * SandboxPool}.  Each call to {@link #getMove(GameState, Date)} is
+ * forwarded to the worker (see {@link SandboxWorker} for the
+ * protocol).  While the worker is thinking, a watchdog on the pool's
+ * scheduler polls its CPU time.  If the worker does not reply shortly
+ * after the deadline, exceeds its CPU time limit, or dies (<i>e.g.</i>
+ * because it ran out of memory), it is killed and this agent forfeits
+ * all of its remaining moves, which are then chosen at random.
+ */
+final class SandboxedOthelloPlayer extends OthelloPlayer {
+	/* how long to wait past the deadline before killing the worker */
+	private static final long GRACE_MILLIS = 1000;
+	/* the worker's deadline is this much earlier than ours, so that its reply arrives in time */
+	private static final long MARGIN_MILLIS = 25;
+	/* how often the watchdog checks the worker */
+	private static final long WATCHDOG_PERIOD_MILLIS = 50;
+
+	private final SandboxPool pool;
+	private final SandboxPool.Worker worker;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+	private boolean forfeited;
+
+	SandboxedOthelloPlayer(String name, SandboxPool pool, SandboxPool.Worker worker) {
+		super(name);
+		this.pool = pool;
+		this.worker = worker;
+		in = worker.getInput();
+		out = worker.getOutput();
+		forfeited = false;
+	}
+
+	private void forfeit(String reason) {
+		if(!forfeited)
+			log("Forfeiting: " + reason);
+		forfeited = true;
+		worker.kill();
+	}
+
+	public Square getMove(GameState currentState, Date deadline) {
+		if(forfeited)
+			return null;
+		long millis = (deadline == null ? -1 : Math.max(0, getMillisUntilDeadline() - MARGIN_MILLIS));
+		final long killTime = (deadline == null ? Long.MAX_VALUE : System.currentTimeMillis() + millis + GRACE_MILLIS);
+		/* the reason the watchdog killed the worker, if it did */
+		final AtomicReference<String> killed = new AtomicReference<String>();
+		ScheduledFuture<?> watchdog = pool.getScheduler().scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				String reason = null;
+				if(System.currentTimeMillis() >= killTime)
+					reason = "the worker missed its deadline";
+				else if(pool.exceededCpuLimit(worker))
+					reason = "the worker exceeded its CPU time limit of " + pool.getCpuLimitMillis() + "ms";
+				if(reason != null && killed.compareAndSet(null, reason))
+					worker.kill();
+			}
+		}, WATCHDOG_PERIOD_MILLIS, WATCHDOG_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+		try {
+			out.writeByte(SandboxWorker.MOVE);
+			/* the history is included so the agent can look at the previous states, as it could in-process */
+			ByteBuffer encoded = ByteBuffer.allocate(currentState.getEncodedSize(true));
+			currentState.writeTo(encoded, true);
+			out.writeShort(encoded.position());
+			out.write(encoded.array(), 0, encoded.position());
+			out.writeLong(millis);
+			/* the worker enforces the node budget, which is then charged here */
+			out.writeLong(getNodeBudget());
+			/* the worker's state has its own generators, seeded from ours so that seeded games are reproducible */
+			out.writeLong(currentState.splitRandom().nextLong());
+			out.flush();
+			int square = in.readByte();
+			long nodes = in.readLong();
+			watchdog.cancel(false);
+			/* the worker may have gone over its limit since the watchdog last looked */
+			if(pool.exceededCpuLimit(worker))
+				forfeit("the worker exceeded its CPU time limit of " + pool.getCpuLimitMillis() + "ms");
+			Square move = (square < 0 ? null : new Square(square / 8, square % 8));
+			if(nodes > 0) {
+				countNodes(nodes);
+				/* if the worker's agent exceeded its budget, this move is used by the driver like any best move */
+				registerCurrentBestMove(move);
+				NodeBudget.charge(nodes);
+			}
+			return move;
+		} catch(IOException ioe) {
+			watchdog.cancel(false);
+			String reason = killed.get();
+			forfeit(reason == null ? "the worker process died" : reason);
+			return null;
+		}
+	}
+
+	/**
+	 * Shuts down the worker process.
+	 */
+	public void close() {
+		worker.quit();
+	}
+}
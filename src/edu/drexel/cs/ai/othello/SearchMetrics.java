@@ -0,0 +1,168 @@
+package edu.drexel.cs.ai.othello;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Counters that an {@link OthelloPlayer} may use to publish
+ * statistics about its search (<i>e.g.</i> the number of nodes
+ * searched or the depth reached).  The counters are striped, so they
+ * are cheap to increment even if the agent searches with multiple
+ * threads.
+ *
+ * <p>Agents do not access this class directly; they should instead
+ * use the <code>count...</code> and <code>report...</code> methods
+ * of {@link OthelloPlayer}.  The game engine resets the counters
+ * before each move and aggregates them for each game.</p>
+ */
+public final class SearchMetrics {
+	private final LongAdder nodes;
+	private final LongAdder transpositionHits;
+	private final LongAdder bestMoveChanges;
+	private final LongAccumulator maxDepth;
+
+	private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+		public long applyAsLong(long left, long right) {
+			return Math.max(left, right);
+		}
+	};
+
+	SearchMetrics() {
+		nodes = new LongAdder();
+		transpositionHits = new LongAdder();
+		bestMoveChanges = new LongAdder();
+		maxDepth = new LongAccumulator(MAX, 0);
+	}
+
+	void addNodes(long count) {
+		nodes.add(count);
+	}
+
+	void addTranspositionHits(long count) {
+		transpositionHits.add(count);
+	}
+
+	void addBestMoveChange() {
+		bestMoveChanges.increment();
+	}
+
+	void reportDepth(int depth) {
+		maxDepth.accumulate(depth);
+	}
+
+	void reset() {
+		nodes.reset();
+		transpositionHits.reset();
+		bestMoveChanges.reset();
+		maxDepth.reset();
+	}
+
+	/**
+	 * Returns an immutable copy of the current values of the
+	 * counters, attributing them to a move that took
+	 * <code>elapsedMillis</code> milliseconds.
+	 */
+	Snapshot snapshot(long elapsedMillis) {
+		return new Snapshot(1, nodes.sum(), (int)maxDepth.get(), transpositionHits.sum(), bestMoveChanges.sum(), elapsedMillis);
+	}
+
+	/**
+	 * An immutable set of search statistics, either for a single
+	 * move or aggregated over all of the moves of a game.
+	 */
+	public static final class Snapshot {
+		/**
+		 * A snapshot in which every counter is zero.
+		 */
+		public static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, 0);
+
+		private final int moves;
+		private final long nodes;
+		private final int depth;
+		private final long transpositionHits;
+		private final long bestMoveChanges;
+		private final long elapsedMillis;
+
+		Snapshot(int moves, long nodes, int depth, long transpositionHits, long bestMoveChanges, long elapsedMillis) {
+			this.moves = moves;
+			this.nodes = nodes;
+			this.depth = depth;
+			this.transpositionHits = transpositionHits;
+			this.bestMoveChanges = bestMoveChanges;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		/**
+		 * Returns the number of moves over which these statistics
+		 * were collected.
+		 */
+		public int getMoves() { return moves; }
+
+		/**
+		 * Returns the number of nodes the agent reported searching.
+		 */
+		public long getNodes() { return nodes; }
+
+		/**
+		 * Returns the maximum search depth the agent reported.
+		 */
+		public int getDepth() { return depth; }
+
+		/**
+		 * Returns the number of transposition table hits the agent
+		 * reported.
+		 */
+		public long getTranspositionHits() { return transpositionHits; }
+
+		/**
+		 * Returns the number of times the agent changed its
+		 * {@link OthelloPlayer#registerCurrentBestMove(Square) best move}.
+		 */
+		public long getBestMoveChanges() { return bestMoveChanges; }
+
+		/**
+		 * Returns the wall-clock time (in milliseconds) spent on the
+		 * move(s).
+		 */
+		public long getElapsedMillis() { return elapsedMillis; }
+
+		/**
+		 * Returns the number of nodes searched per second, or zero if
+		 * no time elapsed.
+		 */
+		public long getNodesPerSecond() {
+			if(elapsedMillis <= 0)
+				return 0;
+			else
+				return nodes * 1000 / elapsedMillis;
+		}
+
+		/**
+		 * Returns the sum of this snapshot and <code>other</code>.
+		 * The depth of the result is the maximum of the two depths.
+		 */
+		public Snapshot add(Snapshot other) {
+			return new Snapshot(moves + other.moves,
+					nodes + other.nodes,
+					Math.max(depth, other.depth),
+					transpositionHits + other.transpositionHits,
+					bestMoveChanges + other.bestMoveChanges,
+					elapsedMillis + other.elapsedMillis);
+		}
+
+		/**
+		 * Returns a machine-readable representation of this snapshot
+		 * consisting of tab-delimited <code>key=value</code> pairs.
+		 */
+		public String toString() {
+			return "moves=" + moves +
+					"\tnodes=" + nodes +
+					"\tdepth=" + depth +
+					"\tttHits=" + transpositionHits +
+					"\tbestMoveChanges=" + bestMoveChanges +
+					"\tmillis=" + elapsedMillis +
+					"\tnps=" + getNodesPerSecond();
+		}
+	}
+}
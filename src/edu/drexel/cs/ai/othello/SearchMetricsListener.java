@@ -0,0 +1,16 @@
+package edu.drexel.cs.ai.othello;
+
+/**
+ * An interface for user interfaces that wish to receive the
+ * {@link SearchMetrics search statistics} published by the agents.
+ */
+public interface SearchMetricsListener {
+	/**
+	 * Callback function for receiving the search statistics of
+	 * <code>player</code> after each of its moves.
+	 *
+	 * @param moveMetrics the statistics for the move that was just made.
+	 * @param gameMetrics the statistics aggregated over all of <code>player</code>'s moves thus far in the game.
+	 */
+	public void updateSearchMetrics(OthelloPlayer player, SearchMetrics.Snapshot moveMetrics, SearchMetrics.Snapshot gameMetrics);
+}
@@ -0,0 +1,437 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Plays many games between two agents concurrently and writes every
+ * position of every game, labeled with the game's outcome, to
+ * compressed files (<i>e.g.</i> to train evaluation functions, or to
+ * build opening books).
+ *
+ * <p>Each worker thread owns one instance of each agent and plays its
+ * games one after another with its own {@link Othello} driver; game
+ * <code>i</code> starts from the {@link GameState#GameState(long)
+ * seeded} state <code>seed + i</code>, so a run can be reproduced
+ * (as far as the agents themselves are deterministic).  Finished games
+ * are handed to writer threads through a bounded queue, so the
+ * workers never wait for the disk or for compression unless the
+ * writers fall behind by more than the whole queue, in which case the
+ * workers slow down rather than exhausting the heap.</p>
+ *
+ * <p>Each writer writes its own <em>shards</em>,
+ * <code>selfplay-00000.bin.gz</code>, <code>selfplay-00001.bin.gz</code>,
+ * and so on, each holding at most a fixed number of positions.  A
+ * shard is a gzip stream of samples, one per position (including the
+ * initial and final position of each game, in the order they were
+ * played): the position as encoded by {@link
+ * GameState#writeTo(ByteBuffer, boolean) writeTo(buffer, false)},
+ * followed by a <code>byte</code> holding the final disc differential
+ * from the point of view of the player to move.</p>
+ */
+public class SelfPlayGenerator {
+	/**
+	 * The size of each sample in the shards, in bytes.
+	 */
+	public static final int SAMPLE_SIZE = 18 + 1;
+
+	private final File directory;
+	private final String player1Class;
+	private final String player2Class;
+	private int workers;
+	private int writers;
+	private int queueCapacity;
+	private int shardPositions;
+	private int turnDuration;
+	private long nodeBudget;
+	private long seed;
+	private int reportSeconds;
+	private PrintStream report;
+
+	private final AtomicLong nextGame;
+	private final AtomicLong gamesCompleted;
+	private final AtomicLong positionsWritten;
+	private final AtomicLong bytesWritten;
+	private final AtomicInteger nextShard;
+	private ArrayBlockingQueue<byte[]> queue;
+	private volatile IOException failure;
+
+	/* tells a writer that there are no more games */
+	private static final byte END[] = new byte[0];
+
+	/**
+	 * Creates a new generator of games between agents of the given
+	 * classes that writes its shards to <code>directory</code>.  By
+	 * default there is a worker per processor, a single writer, a
+	 * deadline of one second per move, and one million positions per
+	 * shard.
+	 */
+	public SelfPlayGenerator(File directory, String player1Class, String player2Class) {
+		this.directory = directory;
+		this.player1Class = player1Class;
+		this.player2Class = player2Class;
+		workers = Runtime.getRuntime().availableProcessors();
+		writers = 1;
+		queueCapacity = 1024;
+		shardPositions = 1000000;
+		turnDuration = 1;
+		nodeBudget = 0;
+		seed = 0;
+		reportSeconds = 5;
+		report = System.err;
+		nextGame = new AtomicLong(0);
+		gamesCompleted = new AtomicLong(0);
+		positionsWritten = new AtomicLong(0);
+		bytesWritten = new AtomicLong(0);
+		nextShard = new AtomicInteger(0);
+	}
+
+	/**
+	 * Sets the number of games that are played concurrently.
+	 */
+	public void setWorkers(int workers) {
+		this.workers = Math.max(1, workers);
+	}
+
+	/**
+	 * Sets the number of threads that compress and write the shards
+	 * (each writing its own shards).
+	 */
+	public void setWriters(int writers) {
+		this.writers = Math.max(1, writers);
+	}
+
+	/**
+	 * Sets the number of finished games that may wait to be written
+	 * before the workers have to wait for the writers.
+	 */
+	public void setQueueCapacity(int games) {
+		queueCapacity = Math.max(1, games);
+	}
+
+	/**
+	 * Sets the maximum number of positions in each shard.
+	 */
+	public void setShardPositions(int positions) {
+		shardPositions = Math.max(1, positions);
+	}
+
+	/**
+	 * Sets the deadline (in seconds) of every move.
+	 *
+	 * @see Othello#setTurnDuration(int)
+	 */
+	public void setTurnDuration(int seconds) {
+		turnDuration = seconds;
+	}
+
+	/**
+	 * Sets the number of nodes the agents may generate each move.
+	 *
+	 * @see Othello#setNodeBudget(long)
+	 */
+	public void setNodeBudget(long nodes) {
+		nodeBudget = nodes;
+	}
+
+	/**
+	 * Sets the seed of the first game; game <code>i</code> is seeded
+	 * with <code>seed + i</code>.
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the stream to which the progress is reported every
+	 * <code>seconds</code> seconds, or <code>null</code> for no
+	 * reports.
+	 */
+	public void setReport(PrintStream report, int seconds) {
+		this.report = report;
+		reportSeconds = Math.max(1, seconds);
+	}
+
+	/**
+	 * Returns the number of games that have been played.
+	 */
+	public long getGamesCompleted() {
+		return gamesCompleted.get();
+	}
+
+	/**
+	 * Returns the number of positions that have been written.
+	 */
+	public long getPositionsWritten() {
+		return positionsWritten.get();
+	}
+
+	/* encodes every position of a finished game, labeled with its outcome */
+	private static byte[] encode(long seed, GameRecord record) {
+		GameState state = new GameState(seed);
+		int positions = record.getMoves().size() + 1;
+		GameState states[] = new GameState[positions];
+		states[0] = state;
+		for(int i=1; i<positions; i++) {
+			state = state.applyMove(record.getMoves().get(i - 1).getSquare(), false);
+			states[i] = state;
+		}
+		int player1Differential = state.getScore(GameState.Player.PLAYER1) - state.getScore(GameState.Player.PLAYER2);
+		ByteBuffer samples = ByteBuffer.allocate(positions * SAMPLE_SIZE);
+		for(GameState s : states) {
+			s.writeTo(samples, false);
+			samples.put((byte)(s.getCurrentPlayer() == GameState.Player.PLAYER1 ? player1Differential : -player1Differential));
+		}
+		return samples.array();
+	}
+
+	/* hands a game to the writers, waiting if they are behind; returns false if they failed */
+	private boolean enqueue(byte game[]) throws InterruptedException {
+		while(failure == null) {
+			if(queue.offer(game, 100, TimeUnit.MILLISECONDS))
+				return true;
+		}
+		return false;
+	}
+
+	private final class Worker implements Runnable {
+		private final int id;
+		private final long games;
+
+		Worker(int id, long games) {
+			this.id = id;
+			this.games = games;
+		}
+
+		public void run() {
+			OthelloPlayer player1, player2;
+			try {
+				player1 = Othello.instantiatePlayer(player1Class, Othello.getSimplifiedClassName(player1Class) + "-" + id + "a");
+				player2 = Othello.instantiatePlayer(player2Class, Othello.getSimplifiedClassName(player2Class) + "-" + id + "b");
+			} catch(Exception e) {
+				failure = new IOException("Could not instantiate the agents: " + e.toString());
+				return;
+			}
+			try {
+				long game;
+				while((game = nextGame.getAndIncrement()) < games && failure == null) {
+					long gameSeed = seed + game;
+					ServerUserInterface ui = new ServerUserInterface(game, player1, player2, null);
+					player1.setLogger(ui);
+					player2.setLogger(ui);
+					GameRecord record = new GameRecord(gameSeed, turnDuration, player1Class, player1.getName(), player2Class, player2.getName());
+					Othello othello = new Othello(player1, player2, ui, gameSeed);
+					othello.setTurnDuration(turnDuration);
+					othello.setNodeBudget(nodeBudget);
+					othello.setCollectGarbageBeforeMoves(false);
+					othello.setGameRecord(record);
+					try {
+						othello.play();
+					} catch(RuntimeException re) {
+						if(report != null)
+							report.println("Warning: Game " + game + " failed: " + re.toString());
+						continue;
+					}
+					if(!enqueue(encode(gameSeed, record)))
+						return;
+					gamesCompleted.incrementAndGet();
+				}
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			} finally {
+				player1.close();
+				player2.close();
+			}
+		}
+	}
+
+	private final class Writer implements Runnable {
+		private OutputStream out;
+		private int shardSize;
+
+		private void rotate() throws IOException {
+			if(out != null)
+				out.close();
+			String name = Integer.toString(nextShard.getAndIncrement());
+			while(name.length() < 5)
+				name = "0" + name;
+			out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, "selfplay-" + name + ".bin.gz")), 1 << 16), 1 << 16);
+			shardSize = 0;
+		}
+
+		public void run() {
+			try {
+				try {
+					while(true) {
+						byte game[] = queue.take();
+						if(game == END)
+							break;
+						int positions = game.length / SAMPLE_SIZE;
+						if(out == null || (shardSize > 0 && shardSize + positions > shardPositions))
+							rotate();
+						out.write(game);
+						shardSize += positions;
+						positionsWritten.addAndGet(positions);
+						bytesWritten.addAndGet(game.length);
+					}
+				} finally {
+					if(out != null)
+						out.close();
+				}
+			} catch(IOException ioe) {
+				failure = ioe;
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static String rate(long count, long millis) {
+		return Long.toString(count * 1000L / Math.max(1, millis));
+	}
+
+	private void report(long startMillis) {
+		long millis = System.currentTimeMillis() - startMillis;
+		long games = gamesCompleted.get();
+		long positions = positionsWritten.get();
+		report.println(games + " games (" + rate(games, millis) + "/s), " + positions + " positions (" + rate(positions, millis) + "/s), " + (bytesWritten.get() >> 20) + "MB uncompressed, " + queue.size() + " games waiting to be written");
+	}
+
+	/**
+	 * Plays <code>games</code> games and writes their positions,
+	 * returning once all of them have been written.
+	 *
+	 * @throws IOException if the agents could not be instantiated or the shards could not be written.
+	 */
+	public void run(long games) throws IOException, InterruptedException {
+		if(!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Could not create " + directory);
+		queue = new ArrayBlockingQueue<byte[]>(queueCapacity);
+		failure = null;
+		nextGame.set(0);
+		long start = System.currentTimeMillis();
+		Thread workerThreads[] = new Thread[workers];
+		Thread writerThreads[] = new Thread[writers];
+		for(int i=0; i<writers; i++) {
+			writerThreads[i] = new Thread(new Writer(), "SelfPlayGenerator-writer-" + i);
+			writerThreads[i].start();
+		}
+		for(int i=0; i<workers; i++) {
+			workerThreads[i] = new Thread(new Worker(i, games), "SelfPlayGenerator-" + i);
+			workerThreads[i].setDaemon(true);
+			workerThreads[i].start();
+		}
+		for(Thread t : workerThreads) {
+			while(t.isAlive()) {
+				t.join(reportSeconds * 1000L);
+				if(t.isAlive() && report != null)
+					report(start);
+			}
+		}
+		/* tell each writer to finish (unless they have all failed) */
+		for(int i=0; i<writers; i++) {
+			while(!queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+				boolean alive = false;
+				for(Thread t : writerThreads)
+					alive |= t.isAlive();
+				if(!alive)
+					break;
+			}
+		}
+		for(Thread t : writerThreads)
+			t.join();
+		if(failure != null)
+			throw failure;
+		if(report != null)
+			report(start);
+	}
+
+	/**
+	 * Prints command line usage information.
+	 */
+	public static void printUsage() {
+		System.err.println(Othello.getVersionInfo());
+		System.err.println("Usage: SelfPlayGenerator [options] directory games player1class player2class");
+		System.err.println();
+		System.err.println("OPTIONS:");
+		System.err.println("         -w  number The number of games to play concurrently (the default is");
+		System.err.println("                    one per processor).");
+		System.err.println("         -W  number The number of threads that write the shards (the default");
+		System.err.println("                    is 1).");
+		System.err.println("         -d  number The deadline of each move in seconds (the default is 1).");
+		System.err.println("         -n  number The number of nodes (game states) an agent may generate");
+		System.err.println("                    each move (the default is no limit).");
+		System.err.println("         -s  number The seed of the first game (the default is 0).");
+		System.err.println("         -p  number The maximum number of positions per shard (the default");
+		System.err.println("                    is 1000000).");
+	}
+
+	/**
+	 * Generates self-play games from the command line.
+	 */
+	public static void main(String[] args) {
+		SelfPlayGenerator generator = null;
+		long games = 0;
+		try {
+			int i = 0;
+			int workers = -1, writers = -1, turnDuration = 1, shardPositions = -1;
+			long nodeBudget = 0, seed = 0;
+			for(; i<args.length && args[i].startsWith("-"); i++) {
+				if(args[i].equals("-w"))
+					workers = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-W"))
+					writers = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-d"))
+					turnDuration = Integer.parseInt(args[++i]);
+				else if(args[i].equals("-n"))
+					nodeBudget = Long.parseLong(args[++i]);
+				else if(args[i].equals("-s"))
+					seed = Long.parseLong(args[++i]);
+				else if(args[i].equals("-p"))
+					shardPositions = Integer.parseInt(args[++i]);
+				else
+					throw new IllegalArgumentException("unexpected argument \"" + args[i] + "\"");
+			}
+			if(args.length - i != 4)
+				throw new IllegalArgumentException("expected a directory, a number of games, and two agents");
+			games = Long.parseLong(args[i + 1]);
+			String classes[] = new String[2];
+			for(int p=0; p<2; p++) {
+				classes[p] = Othello.getPlayerClassName(args[i + 2 + p]);
+				if(classes[p] == null)
+					System.exit(1);
+			}
+			generator = new SelfPlayGenerator(new File(args[i]), classes[0], classes[1]);
+			if(workers > 0)
+				generator.setWorkers(workers);
+			if(writers > 0)
+				generator.setWriters(writers);
+			if(shardPositions > 0)
+				generator.setShardPositions(shardPositions);
+			generator.setTurnDuration(turnDuration);
+			generator.setNodeBudget(nodeBudget);
+			generator.setSeed(seed);
+		} catch(RuntimeException re) {
+			System.err.println("Error: " + re.getMessage() + "\n");
+			printUsage();
+			System.exit(1);
+		}
+		try {
+			generator.run(games);
+		} catch(Exception e) {
+			System.err.println("Error: " + e.toString());
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+}
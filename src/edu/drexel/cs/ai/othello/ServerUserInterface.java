@@ -0,0 +1,70 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.PrintStream;
+
+/**
+ * A headless user interface for a single game hosted by a {@link
+ * GameServer}.  Log messages are prefixed with the game's identifier
+ * so that the output of many concurrent games can share one stream.
+ */
+class ServerUserInterface implements UserInterface, Logger {
+	private final long gameId;
+	private final PrintStream out;
+	private OthelloPlayer player1, player2;
+	private long p1timeUsed, p2timeUsed;
+
+	/**
+	 * @param player1 the first player the server assigned to the game.
+	 * @param player2 the second player the server assigned to the game.
+	 * @param out the stream to which to log, or <code>null</code> if log messages should be discarded.
+	 */
+	ServerUserInterface(long gameId, OthelloPlayer player1, OthelloPlayer player2, PrintStream out) {
+		this.gameId = gameId;
+		this.out = out;
+		this.player1 = player1;
+		this.player2 = player2;
+		p1timeUsed = 0;
+		p2timeUsed = 0;
+	}
+
+	public void handleStateUpdate(GameState newState) {}
+
+	/**
+	 * Returns the players the server assigned to the game.
+	 */
+	public OthelloPlayer[] getPlayers() {
+		OthelloPlayer players[] = new OthelloPlayer[2];
+		players[0] = player1;
+		players[1] = player2;
+		return players;
+	}
+
+	public void setPlayers(OthelloPlayer player1, OthelloPlayer player2) {
+		this.player1 = player1;
+		this.player2 = player2;
+	}
+
+	public void updateTimeRemaining(OthelloPlayer player, int secondsRemaining) {}
+
+	public void updateTimeUsed(OthelloPlayer player, long millisUsed) {
+		if(player == player1)
+			p1timeUsed = millisUsed;
+		else if(player == player2)
+			p2timeUsed = millisUsed;
+	}
+
+	long getTimeUsed(OthelloPlayer player) {
+		return (player == player1 ? p1timeUsed : p2timeUsed);
+	}
+
+	public void log(String message, Object source) {
+		if(out == null)
+			return;
+		String prefix = "[game " + gameId + "] ";
+		if(source instanceof OthelloPlayer)
+			prefix += source + ": ";
+		synchronized(out) {
+			out.println(prefix + message);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashMap;
+
+/**
+ * Watches the games streamed by a {@link SpectatorPublisher},
+ * reconstructing their boards from the keyframes and deltas it sends.
+ * Subclasses override {@link #update(long, GameState, Square)} and
+ * {@link #gameOver(long, GameState)}; by default every board is
+ * printed.
+ */
+public class SpectatorClient implements Runnable {
+	private final Socket socket;
+	private final DataInputStream in;
+	/* the discs of player 1 and player 2, and the player to move, of each game */
+	private final HashMap<Long,long[]> boards;
+
+	/**
+	 * Connects to a publisher on the given port of the loopback
+	 * interface.
+	 */
+	public SpectatorClient(int port) throws IOException {
+		socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		boards = new HashMap<Long,long[]>();
+		byte header[] = new byte[SpectatorPublisher.MAGIC.length + 1];
+		in.readFully(header);
+		for(int i=0; i<SpectatorPublisher.MAGIC.length; i++)
+			if(header[i] != SpectatorPublisher.MAGIC[i])
+				throw new IOException("not a spectator stream");
+		if(header[SpectatorPublisher.MAGIC.length] != SpectatorPublisher.VERSION)
+			throw new IOException("unsupported spectator stream version " + header[SpectatorPublisher.MAGIC.length]);
+	}
+
+	private static GameState toGameState(long board[]) {
+		return GameState.fromDiscs(board[0], board[1], (board[2] == 1 ? GameState.Player.PLAYER1 : GameState.Player.PLAYER2));
+	}
+
+	/**
+	 * Reads the next frame and applies it, calling {@link #update(long,
+	 * GameState, Square)} or {@link #gameOver(long, GameState)}.
+	 *
+	 * @return <code>false</code> if the publisher closed the connection.
+	 */
+	public boolean readFrame() throws IOException {
+		byte type;
+		try {
+			type = in.readByte();
+		} catch(EOFException eofe) {
+			return false;
+		}
+		long gameId = in.readLong();
+		if(type == SpectatorPublisher.KEYFRAME || type == SpectatorPublisher.END) {
+			long board[] = new long[] {in.readLong(), in.readLong(), in.readByte()};
+			if(type == SpectatorPublisher.END) {
+				boards.remove(gameId);
+				gameOver(gameId, toGameState(board));
+			} else {
+				boards.put(gameId, board);
+				update(gameId, toGameState(board), null);
+			}
+		} else if(type == SpectatorPublisher.DELTA) {
+			int square = in.readByte();
+			long flips = in.readLong();
+			byte toMove = in.readByte();
+			long board[] = boards.get(gameId);
+			if(board == null)
+				throw new IOException("received a move for unknown game " + gameId);
+			/* the player that was to move placed the disc */
+			int mover = (board[2] == 1 ? 0 : 1);
+			board[mover] |= flips | (1L << square);
+			board[1 - mover] &= ~flips;
+			board[2] = toMove;
+			update(gameId, toGameState(board), new Square(square / 8, square % 8));
+		} else
+			throw new IOException("unknown frame type " + type);
+		return true;
+	}
+
+	/**
+	 * Applies frames until the publisher closes the connection.
+	 */
+	public void run() {
+		try {
+			while(readFrame());
+		} catch(IOException ioe) {
+			System.err.println("Error: " + ioe.getMessage());
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Disconnects from the publisher.
+	 */
+	public void close() {
+		try {
+			socket.close();
+		} catch(IOException ioe) {}
+	}
+
+	/**
+	 * Called with the new state of a game.
+	 *
+	 * @param move the move that led to the state, or <code>null</code> if the state was sent in full (when the spectator first sees the game, or after it fell behind).
+	 */
+	protected void update(long gameId, GameState state, Square move) {
+		System.out.println("[game " + gameId + "]" + (move == null ? "" : " " + move));
+		System.out.println(state);
+	}
+
+	/**
+	 * Called with the final state of a game.
+	 */
+	protected void gameOver(long gameId, GameState finalState) {
+		System.out.println("[game " + gameId + "] Game over: " + finalState.getScore(GameState.Player.PLAYER1) + " - " + finalState.getScore(GameState.Player.PLAYER2));
+	}
+
+	/**
+	 * Prints the games streamed to the given local port.
+	 */
+	public static void main(String[] args) {
+		if(args.length != 1) {
+			System.err.println(Othello.getVersionInfo());
+			System.err.println("Usage: SpectatorClient port");
+			System.exit(1);
+		}
+		try {
+			new SpectatorClient(Integer.parseInt(args[0])).run();
+		} catch(Exception e) {
+			System.err.println("Error: " + e.toString());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,439 @@
+package edu.drexel.cs.ai.othello;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams live games to any number of spectators over local sockets.
+ * Games call {@link #publish(long, GameState)} with every new state
+ * (see {@link Othello#setSpectatorPublisher(SpectatorPublisher,
+ * long)}); a single thread writes the updates to the spectators with
+ * non-blocking I/O, so a slow spectator never delays a game.
+ *
+ * <p>The stream starts with the four bytes <code>OTHS</code> and a
+ * version byte, followed by frames of three kinds (all integers are
+ * big-endian, and squares and discs are represented as in {@link
+ * GameState#getDiscs(GameState.Player)}):</p>
+ * <ul>
+ * <li><code>'K'</code>, a <em>keyframe</em>: the game's identifier
+ * (<code>long</code>), the discs of player 1 and of player 2 (two
+ * <code>long</code>s), and the player to move (a <code>byte</code>,
+ * <code>1</code> or <code>2</code>);</li>
+ * <li><code>'D'</code>, a <em>delta</em> from the game's previous
+ * frame: the game's identifier, the square on which the previous
+ * player to move placed its disc (a <code>byte</code>), the discs it
+ * flipped (a <code>long</code>), and the player to move next;</li>
+ * <li><code>'E'</code>, the end of a game, laid out like a keyframe
+ * of its final position.</li>
+ * </ul>
+ * <p>A spectator first receives a keyframe for every game in
+ * progress.  Each spectator has a fixed-size buffer; if it fills up
+ * because the spectator cannot keep up, the oldest game in the buffer
+ * has its frames dropped and replaced by a single keyframe of its
+ * latest position (or by its end), so spectators always see a
+ * consistent board.  The ends of games are only dropped if nothing
+ * else is left to drop.  See
+ * {@link SpectatorClient}.</p>
+ */
+public class SpectatorPublisher {
+	static final byte MAGIC[] = {'O', 'T', 'H', 'S'};
+	static final byte VERSION = 1;
+	static final byte KEYFRAME = 'K';
+	static final byte DELTA = 'D';
+	static final byte END = 'E';
+	static final int KEYFRAME_SIZE = 1 + 8 + 8 + 8 + 1;
+	static final int DELTA_SIZE = 1 + 8 + 1 + 8 + 1;
+	/* how long close() lets the spectators receive the frames that are already queued for them */
+	static final long CLOSE_TIMEOUT_MILLIS = 2000;
+
+	/* an immutable position of a game, numbered in the order it was published */
+	private static final class Position {
+		final long seq;
+		final long player1, player2;
+		final byte toMove;
+		final boolean over;
+
+		Position(long seq, long player1, long player2, byte toMove, boolean over) {
+			this.seq = seq;
+			this.player1 = player1;
+			this.player2 = player2;
+			this.toMove = toMove;
+			this.over = over;
+		}
+
+		ByteBuffer encodeKeyframe(long gameId) {
+			ByteBuffer b = ByteBuffer.allocate(KEYFRAME_SIZE);
+			b.put(over ? END : KEYFRAME).putLong(gameId).putLong(player1).putLong(player2).put(toMove);
+			b.flip();
+			return b;
+		}
+
+		/* returns the delta from previous to this position, or null if it is not a single move */
+		ByteBuffer encodeDelta(long gameId, Position previous) {
+			if(over)
+				return null;
+			long placed = (player1 | player2) & ~(previous.player1 | previous.player2);
+			if(Long.bitCount(placed) != 1)
+				return null;
+			boolean player1Moved = (previous.toMove == 1);
+			long flips = (player1Moved ? player1 & previous.player2 : player2 & previous.player1);
+			long mover = (player1Moved ? previous.player1 : previous.player2) | flips | placed;
+			long opponent = (player1Moved ? previous.player2 : previous.player1) & ~flips;
+			if(mover != (player1Moved ? player1 : player2) || opponent != (player1Moved ? player2 : player1))
+				return null;
+			ByteBuffer b = ByteBuffer.allocate(DELTA_SIZE);
+			b.put(DELTA).putLong(gameId).put((byte)Long.numberOfTrailingZeros(placed)).putLong(flips).put(toMove);
+			b.flip();
+			return b;
+		}
+	}
+
+	/* a frame waiting to be sent to a spectator */
+	private static final class Frame {
+		final long gameId;
+		final ByteBuffer data;
+		final boolean end;
+
+		Frame(long gameId, ByteBuffer data, boolean end) {
+			this.gameId = gameId;
+			this.data = data;
+			this.end = end;
+		}
+	}
+
+	/* a connected spectator; its fields are guarded by the spectator itself, except for current, which only the I/O thread uses */
+	private final class Spectator {
+		final SocketChannel channel;
+		final ArrayDeque<Frame> queue;
+		/* the last position of each game the spectator was sent */
+		final HashMap<Long,Position> sent;
+		int queuedBytes;
+		ByteBuffer current;
+		boolean writing;
+
+		Spectator(SocketChannel channel) {
+			this.channel = channel;
+			queue = new ArrayDeque<Frame>();
+			sent = new HashMap<Long,Position>();
+			queuedBytes = 0;
+			ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 1);
+			header.put(MAGIC).put(VERSION);
+			header.flip();
+			current = header;
+			writing = false;
+		}
+
+		/* queues the position of a game; returns whether the I/O thread needs to be woken */
+		synchronized boolean enqueue(long gameId, Position position) {
+			Position previous = sent.get(gameId);
+			if(previous != null && position.seq <= previous.seq)
+				return false; /* the spectator already has this position */
+			ByteBuffer data = null;
+			if(previous != null && position.seq == previous.seq + 1)
+				data = position.encodeDelta(gameId, previous);
+			if(data == null)
+				data = position.encodeKeyframe(gameId);
+			sent.put(gameId, position);
+			add(new Frame(gameId, data, position.over));
+			if(position.over)
+				sent.remove(gameId);
+			if(writing)
+				return false;
+			writing = true;
+			return true;
+		}
+
+		private void add(Frame frame) {
+			queue.addLast(frame);
+			queuedBytes += frame.data.remaining();
+			while(queuedBytes > bufferSize && queue.size() > 1)
+				dropOldestGame();
+		}
+
+		/* drops every queued frame of the oldest game that has not ended, replacing them with its latest position */
+		private void dropOldestGame() {
+			Frame oldest = null;
+			for(Frame f : queue) {
+				if(!f.end) {
+					oldest = f;
+					break;
+				}
+			}
+			if(oldest == null) {
+				/* only the ends of games are left, so the spectator misses the oldest one */
+				queuedBytes -= queue.pollFirst().data.remaining();
+				return;
+			}
+			long gameId = oldest.gameId;
+			Frame end = null;
+			int dropped = 0;
+			boolean onlyKeyframe = true;
+			for(Iterator<Frame> i = queue.iterator(); i.hasNext();) {
+				Frame f = i.next();
+				if(f.gameId == gameId) {
+					if(f.end)
+						end = f;
+					else if(f.data.get(0) == DELTA)
+						onlyKeyframe = false;
+					dropped++;
+					queuedBytes -= f.data.remaining();
+					i.remove();
+				}
+			}
+			Frame replacement;
+			if(end != null)
+				replacement = end;
+			else if(dropped == 1 && onlyKeyframe) {
+				/* the game was already reduced to a keyframe, so it is skipped until its next move */
+				sent.remove(gameId);
+				return;
+			} else
+				replacement = new Frame(gameId, sent.get(gameId).encodeKeyframe(gameId), false);
+			queue.addLast(replacement);
+			queuedBytes += replacement.data.remaining();
+		}
+
+		/* returns the next frame to write, or null (and stops writing) if there is none */
+		synchronized ByteBuffer next() {
+			Frame f = queue.pollFirst();
+			if(f == null) {
+				writing = false;
+				return null;
+			}
+			queuedBytes -= f.data.remaining();
+			return f.data;
+		}
+	}
+
+	private final int bufferSize;
+	private final ServerSocketChannel server;
+	private final Selector selector;
+	private final CopyOnWriteArrayList<Spectator> spectators;
+	private final ConcurrentLinkedQueue<Spectator> ready;
+	private final ConcurrentHashMap<Long,Position> games;
+	private final Thread thread;
+	private volatile boolean closed;
+	private volatile long closeDeadline;
+
+	/**
+	 * Starts accepting spectators on the given port of the loopback
+	 * interface.
+	 *
+	 * @param bufferSize the number of bytes that may be waiting to be sent to each spectator.
+	 */
+	public SpectatorPublisher(int port, int bufferSize) throws IOException {
+		this.bufferSize = Math.max(bufferSize, 2 * KEYFRAME_SIZE);
+		spectators = new CopyOnWriteArrayList<Spectator>();
+		ready = new ConcurrentLinkedQueue<Spectator>();
+		games = new ConcurrentHashMap<Long,Position>();
+		closed = false;
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		thread = new Thread(new Runnable() {
+			public void run() {
+				serve();
+			}
+		}, "SpectatorPublisher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Starts accepting spectators with a buffer of 64KB per spectator.
+	 */
+	public SpectatorPublisher(int port) throws IOException {
+		this(port, 64 << 10);
+	}
+
+	/**
+	 * Returns the port on which spectators are accepted.
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+
+	/**
+	 * Returns the number of connected spectators.
+	 */
+	public int getSpectatorCount() {
+		return spectators.size();
+	}
+
+	/**
+	 * Publishes the current state of a game.  The states of each game
+	 * must be published in order from a single thread, but different
+	 * games may publish concurrently.  Publishing the same position
+	 * again has no effect.  Once a state is published in which the
+	 * game is over, the game is forgotten.
+	 */
+	public void publish(long gameId, GameState state) {
+		if(closed)
+			return;
+		Position previous = games.get(gameId);
+		long p1 = state.getDiscs(GameState.Player.PLAYER1);
+		long p2 = state.getDiscs(GameState.Player.PLAYER2);
+		byte toMove = (byte)(state.getCurrentPlayer() == GameState.Player.PLAYER1 ? 1 : 2);
+		boolean over = (state.getStatus() != GameState.GameStatus.PLAYING);
+		if(previous != null && previous.player1 == p1 && previous.player2 == p2 && previous.toMove == toMove && previous.over == over)
+			return;
+		Position position = new Position(previous == null ? 1 : previous.seq + 1, p1, p2, toMove, over);
+		if(over)
+			games.remove(gameId);
+		else
+			games.put(gameId, position);
+		boolean wake = false;
+		for(Spectator s : spectators) {
+			if(s.enqueue(gameId, position)) {
+				ready.add(s);
+				wake = true;
+			}
+		}
+		if(wake)
+			selector.wakeup();
+	}
+
+	/**
+	 * Stops publishing and accepting new spectators, and disconnects
+	 * the spectators once they have been sent every frame already
+	 * queued for them (such as the ends of the games), or after two
+	 * seconds, whichever comes first.
+	 */
+	public void close() {
+		closeDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join(CLOSE_TIMEOUT_MILLIS + 1000);
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while((channel = server.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			Spectator s = new Spectator(channel);
+			synchronized(s) {
+				s.writing = true; /* the header is written first */
+			}
+			spectators.add(s);
+			/* send the games in progress; publish() only sends positions newer than these */
+			for(Map.Entry<Long,Position> e : games.entrySet())
+				s.enqueue(e.getKey(), e.getValue());
+			channel.register(selector, SelectionKey.OP_WRITE, s);
+		}
+	}
+
+	/* writes as much as possible to a spectator without blocking */
+	private void write(SelectionKey key, Spectator s) throws IOException {
+		while(true) {
+			if(s.current == null || !s.current.hasRemaining()) {
+				ByteBuffer next = s.next();
+				if(next == null) {
+					s.current = null;
+					key.interestOps(0);
+					return;
+				}
+				s.current = next.duplicate();
+			}
+			s.channel.write(s.current);
+			if(s.current.hasRemaining()) {
+				key.interestOps(SelectionKey.OP_WRITE);
+				return;
+			}
+		}
+	}
+
+	/* returns whether every spectator has been sent everything that was queued for it */
+	private boolean drained() {
+		for(Spectator s : spectators) {
+			if(s.current != null && s.current.hasRemaining())
+				return false;
+			synchronized(s) {
+				if(s.writing || !s.queue.isEmpty())
+					return false;
+			}
+		}
+		return true;
+	}
+
+	private void disconnect(Spectator s) {
+		spectators.remove(s);
+		try {
+			s.channel.close();
+		} catch(IOException ioe) {}
+	}
+
+	private void serve() {
+		try {
+			boolean draining = false;
+			while(true) {
+				if(closed && !draining) {
+					/* no more spectators, but the connected ones should still get the frames they are owed */
+					draining = true;
+					server.close();
+				}
+				if(draining) {
+					long remaining = closeDeadline - System.nanoTime();
+					if(remaining <= 0 || drained())
+						break;
+					selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+				} else
+					selector.select();
+				Spectator s;
+				while((s = ready.poll()) != null) {
+					SelectionKey key = s.channel.keyFor(selector);
+					if(key != null && key.isValid())
+						key.interestOps(SelectionKey.OP_WRITE);
+				}
+				for(Iterator<SelectionKey> i = selector.selectedKeys().iterator(); i.hasNext();) {
+					SelectionKey key = i.next();
+					i.remove();
+					if(!key.isValid())
+						continue;
+					if(key.isAcceptable()) {
+						accept();
+					} else if(key.isWritable()) {
+						s = (Spectator)key.attachment();
+						try {
+							write(key, s);
+						} catch(IOException ioe) {
+							disconnect(s);
+						}
+					}
+				}
+			}
+		} catch(ClosedChannelException cce) {
+			/* we are shutting down */
+		} catch(IOException ioe) {
+			System.err.println("The spectator publisher failed: " + ioe);
+		} finally {
+			for(Spectator s : spectators)
+				disconnect(s);
+			try {
+				server.close();
+				selector.close();
+			} catch(IOException ioe) {}
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package edu.drexel.cs.ai.othello;
+
+import java.util.Arrays;
+
+/**
+ * A reusable, caller-owned buffer into which successor states are
+ * generated without allocating an object per state.  Each entry of
+ * the arena is a position stored in parallel primitive arrays: the
+ * discs of both players, the player to move, the move that led to it,
+ * the discs that move flipped, and the index of the entry it was
+ * expanded from (or <code>-1</code> if it was added by {@link
+ * #expand(GameState)}).
+ *
+ * <p>Successors are always generated in increasing order of their
+ * move's square index (<code>row*8+col</code>), so expansion is
+ * deterministic.  Entries are appended; an entry can itself be
+ * expanded with {@link #expand(int)}, which makes the arena suitable
+ * for breadth-oriented searches such as beam search or the expansion
+ * step of Monte Carlo tree search.  Call {@link #clear()} to reuse the
+ * arena; its storage grows as needed but is never released.</p>
+ *
+ * <p>Squares and discs are represented as in {@link
+ * GameState#getDiscs(GameState.Player)}.  Like {@link
+ * GameState#applyMove(Square)}, if the opponent has no valid moves
+ * after a move, the same player moves again.  An arena is not
+ * thread-safe.</p>
+ */
+public final class SuccessorArena {
+	private long player1[];
+	private long player2[];
+	private long flips[];
+	private byte moves[];
+	private byte toMove[];
+	private int parents[];
+	private int size;
+
+	/**
+	 * Creates a new arena with room for 64 entries.
+	 */
+	public SuccessorArena() {
+		this(64);
+	}
+
+	/**
+	 * Creates a new arena with room for <code>capacity</code> entries
+	 * before it must grow.
+	 */
+	public SuccessorArena(int capacity) {
+		capacity = Math.max(capacity, 1);
+		player1 = new long[capacity];
+		player2 = new long[capacity];
+		flips = new long[capacity];
+		moves = new byte[capacity];
+		toMove = new byte[capacity];
+		parents = new int[capacity];
+		size = 0;
+	}
+
+	/**
+	 * Removes all of the entries from the arena.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of entries in the arena.
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if(capacity <= player1.length)
+			return;
+		int newCapacity = Math.max(capacity, player1.length * 2);
+		player1 = Arrays.copyOf(player1, newCapacity);
+		player2 = Arrays.copyOf(player2, newCapacity);
+		flips = Arrays.copyOf(flips, newCapacity);
+		moves = Arrays.copyOf(moves, newCapacity);
+		toMove = Arrays.copyOf(toMove, newCapacity);
+		parents = Arrays.copyOf(parents, newCapacity);
+	}
+
+	/**
+	 * Appends all of the successors of <code>state</code> to the
+	 * arena.
+	 *
+	 * @return the number of successors appended.
+	 * @throws NodeBudgetExceededError if the agent that is moving has exhausted its node budget.
+	 */
+	public int expand(GameState state) {
+		return expand(state.getDiscs(GameState.Player.PLAYER1), state.getDiscs(GameState.Player.PLAYER2), state.getCurrentPlayer(), -1);
+	}
+
+	/**
+	 * Appends all of the successors of the entry at
+	 * <code>index</code> to the arena.
+	 *
+	 * @return the number of successors appended.
+	 * @throws NodeBudgetExceededError if the agent that is moving has exhausted its node budget.
+	 */
+	public int expand(int index) {
+		return expand(player1[index], player2[index], getCurrentPlayer(index), index);
+	}
+
+	private int expand(long p1, long p2, GameState.Player player, int parent) {
+		boolean isPlayer1 = (player == GameState.Player.PLAYER1);
+		long own = (isPlayer1 ? p1 : p2);
+		long opponent = (isPlayer1 ? p2 : p1);
+		long valid = BitBoard.moves(own, opponent);
+		int count = Long.bitCount(valid);
+		NodeBudget.charge(count);
+		ensureCapacity(size + count);
+		while(valid != 0) {
+			long move = Long.lowestOneBit(valid);
+			valid ^= move;
+			long f = BitBoard.flips(own, opponent, move);
+			long newOwn = own | f | move;
+			long newOpponent = opponent & ~f;
+			/* the opponent moves next, unless it has no valid moves */
+			boolean pass = (BitBoard.moves(newOpponent, newOwn) == 0);
+			player1[size] = (isPlayer1 ? newOwn : newOpponent);
+			player2[size] = (isPlayer1 ? newOpponent : newOwn);
+			flips[size] = f;
+			moves[size] = (byte)Long.numberOfTrailingZeros(move);
+			toMove[size] = (byte)(isPlayer1 != pass ? 2 : 1);
+			parents[size] = parent;
+			size++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the discs of <code>player</code> in the entry at
+	 * <code>index</code>.
+	 */
+	public long getDiscs(int index, GameState.Player player) {
+		if(player == GameState.Player.PLAYER1)
+			return player1[index];
+		else if(player == GameState.Player.PLAYER2)
+			return player2[index];
+		else
+			return ~(player1[index] | player2[index]);
+	}
+
+	/**
+	 * Returns the player to move in the entry at <code>index</code>.
+	 */
+	public GameState.Player getCurrentPlayer(int index) {
+		return (toMove[index] == 1 ? GameState.Player.PLAYER1 : GameState.Player.PLAYER2);
+	}
+
+	/**
+	 * Returns the square index (<code>row*8+col</code>) of the move
+	 * that led to the entry at <code>index</code>.
+	 */
+	public int getMove(int index) {
+		return moves[index];
+	}
+
+	/**
+	 * Returns the move that led to the entry at <code>index</code>.
+	 */
+	public Square getMoveSquare(int index) {
+		return new Square(moves[index] / 8, moves[index] % 8);
+	}
+
+	/**
+	 * Returns the discs that were flipped by the move that led to the
+	 * entry at <code>index</code>.
+	 */
+	public long getFlips(int index) {
+		return flips[index];
+	}
+
+	/**
+	 * Returns the index of the entry that the entry at
+	 * <code>index</code> was expanded from, or <code>-1</code> if it
+	 * is a successor of a {@link GameState}.
+	 */
+	public int getParent(int index) {
+		return parents[index];
+	}
+
+	/**
+	 * Returns the Zobrist hash of the entry at <code>index</code>,
+	 * which is equal to that of the corresponding {@link GameState}.
+	 *
+	 * @see GameState#getZobristHash()
+	 */
+	public long getZobristHash(int index) {
+		return BitBoard.zobrist(player1[index], player2[index], toMove[index] == 1);
+	}
+
+	/**
+	 * Returns whether the game is over in the entry at
+	 * <code>index</code> (<i>i.e.</i> neither player can move).
+	 */
+	public boolean isGameOver(int index) {
+		return BitBoard.moves(player1[index], player2[index]) == 0 && BitBoard.moves(player2[index], player1[index]) == 0;
+	}
+
+	/**
+	 * Creates a {@link GameState} for the entry at <code>index</code>.
+	 * The state has no history.
+	 */
+	public GameState toGameState(int index) {
+		return GameState.fromDiscs(player1[index], player2[index], getCurrentPlayer(index));
+	}
+}
@@ -0,0 +1,130 @@
+package edu.drexel.cs.ai.othello;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Utility functions for measuring the CPU time and memory allocated
+ * by threads.  Unlike wall-clock time, these are not affected by the
+ * thread being descheduled, so they give fair measurements even when
+ * many games share a host.  Every function returns <code>-1</code> if
+ * the JVM does not support the measurement.
+ */
+final class ThreadResources {
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private static final com.sun.management.ThreadMXBean extendedThreads;
+
+	static {
+		boolean cpu = false;
+		try {
+			if(threads.isThreadCpuTimeSupported()) {
+				if(!threads.isThreadCpuTimeEnabled())
+					threads.setThreadCpuTimeEnabled(true);
+				cpu = true;
+			}
+		} catch(SecurityException se) {}
+		CPU_TIME_SUPPORTED = cpu;
+		com.sun.management.ThreadMXBean extended = null;
+		try {
+			if(threads instanceof com.sun.management.ThreadMXBean) {
+				extended = (com.sun.management.ThreadMXBean)threads;
+				if(!extended.isThreadAllocatedMemorySupported())
+					extended = null;
+				else if(!extended.isThreadAllocatedMemoryEnabled())
+					extended.setThreadAllocatedMemoryEnabled(true);
+			}
+		} catch(SecurityException se) {
+			extended = null;
+		}
+		extendedThreads = extended;
+	}
+
+	private static final boolean CPU_TIME_SUPPORTED;
+
+	private ThreadResources() {}
+
+	/**
+	 * Returns the CPU time (in nanoseconds) used by the current thread.
+	 */
+	static long getCpuTimeNanos() {
+		if(!CPU_TIME_SUPPORTED)
+			return -1;
+		return threads.getCurrentThreadCpuTime();
+	}
+
+	/**
+	 * Returns the CPU time (in nanoseconds) used by the given thread,
+	 * or <code>-1</code> if the thread is no longer alive.
+	 */
+	static long getCpuTimeNanos(Thread thread) {
+		if(!CPU_TIME_SUPPORTED)
+			return -1;
+		return threads.getThreadCpuTime(thread.getId());
+	}
+
+	/**
+	 * Returns the total number of bytes allocated by the current
+	 * thread.
+	 */
+	static long getAllocatedBytes() {
+		if(extendedThreads == null)
+			return -1;
+		return extendedThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Returns the total number of bytes allocated by the given thread,
+	 * or <code>-1</code> if the thread is no longer alive.
+	 */
+	static long getAllocatedBytes(Thread thread) {
+		if(extendedThreads == null)
+			return -1;
+		return extendedThreads.getThreadAllocatedBytes(thread.getId());
+	}
+
+	/**
+	 * Returns the total CPU time (in nanoseconds) used by the live
+	 * threads of the given group and its subgroups.  Threads that have
+	 * terminated are no longer counted.
+	 */
+	static long getCpuTimeNanos(ThreadGroup group) {
+		if(!CPU_TIME_SUPPORTED)
+			return -1;
+		long total = 0;
+		for(Thread thread : getThreads(group)) {
+			long cpu = threads.getThreadCpuTime(thread.getId());
+			if(cpu > 0)
+				total += cpu;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the total number of bytes allocated by the live threads
+	 * of the given group and its subgroups.  Threads that have
+	 * terminated are no longer counted.
+	 */
+	static long getAllocatedBytes(ThreadGroup group) {
+		if(extendedThreads == null)
+			return -1;
+		long total = 0;
+		for(Thread thread : getThreads(group)) {
+			long allocated = extendedThreads.getThreadAllocatedBytes(thread.getId());
+			if(allocated > 0)
+				total += allocated;
+		}
+		return total;
+	}
+
+	private static Thread[] getThreads(ThreadGroup group) {
+		Thread list[];
+		int count;
+		/* the group may grow while it is enumerated, in which case the array is filled */
+		do {
+			list = new Thread[group.activeCount() + 4];
+			count = group.enumerate(list, true);
+		} while(count == list.length);
+		return Arrays.copyOf(list, count);
+	}
+}
@@ -1,6 +1,9 @@
 package edu.drexel.cs.ai.othello;
 
-public class TournamentUserInterface extends ConsoleUserInterface implements Logger {
+public class TournamentUserInterface extends ConsoleUserInterface implements Logger, SearchMetricsListener {
+	private SearchMetrics.Snapshot p1metrics = SearchMetrics.Snapshot.EMPTY;
+	private SearchMetrics.Snapshot p2metrics = SearchMetrics.Snapshot.EMPTY;
+
 	@Override
 	public void setPlayers(OthelloPlayer player1, OthelloPlayer player2) {
 		if(player1 instanceof HumanOthelloPlayer || player2 instanceof HumanOthelloPlayer)
@@ -9,11 +12,13 @@ public class TournamentUserInterface extends ConsoleUserInterface implements Log
 	}
 		
 	public void handleStateUpdate(GameState newState) {
-		int move = newState.getScore(newState.getCurrentPlayer()) + newState.getScore(newState.getOpponent(newState.getCurrentPlayer())) - 4;
-		System.out.println("Move " + move);
+		System.out.println("Move " + newState.getMoveNumber());
 		System.out.println("Player " + (newState.getCurrentPlayer() == GameState.Player.PLAYER1 ? "1" : "2"));
-		if(!newState.getStatus().equals(GameState.GameStatus.PLAYING))
+		if(!newState.getStatus().equals(GameState.GameStatus.PLAYING)) {
 			System.out.println(newState.getScore(GameState.Player.PLAYER1) + "\t" + newState.getScore(GameState.Player.PLAYER2));
+			System.out.println("GameMetrics1\t" + p1metrics);
+			System.out.println("GameMetrics2\t" + p2metrics);
+		}
 	}
 	
 	@Override
@@ -22,6 +27,31 @@ public class TournamentUserInterface extends ConsoleUserInterface implements Log
 		System.out.println("TimeUsed" + (player == getPlayer1() ? "1" : "2") + " " + secondsUsed);
 	}
 
+	@Override
+	public void updateResourcesUsed(OthelloPlayer player, long cpuMillisUsed, long bytesAllocated) {
+		String p = (player == getPlayer1() ? "1" : "2");
+		System.out.println("CpuTimeUsed" + p + " " + (cpuMillisUsed < 0 ? "-1" : Double.toString((double)cpuMillisUsed / 1000.0)));
+		System.out.println("Allocated" + p + " " + bytesAllocated);
+	}
+
+	/**
+	 * Prints the search statistics of the move as a line of
+	 * tab-delimited <code>key=value</code> pairs, prefixed by
+	 * <code>Metrics1</code> or <code>Metrics2</code>.  The statistics
+	 * aggregated over the entire game are printed when the game
+	 * ends, prefixed by <code>GameMetrics1</code> and
+	 * <code>GameMetrics2</code>.
+	 */
+	public void updateSearchMetrics(OthelloPlayer player, SearchMetrics.Snapshot moveMetrics, SearchMetrics.Snapshot gameMetrics) {
+		if(player == getPlayer1()) {
+			p1metrics = gameMetrics;
+			System.out.println("Metrics1\t" + moveMetrics);
+		} else {
+			p2metrics = gameMetrics;
+			System.out.println("Metrics2\t" + moveMetrics);
+		}
+	}
+
 	@Override
 	public void log(String message, Object source) {}
 }